@@ -0,0 +1,147 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.openmrs.maven.plugins.packager.config.ConstantProperties;
+
+/**
+ * Generates synthetic configurations resembling those used with Initializer, so that benchmarks can be run offline
+ * with reproducible results.  The same seed always produces the same constants and files.
+ *   - constants are grouped by domain, each with a uuid and a name, and may be generated as yml
+ *   - files are csv files in domain directories, with rows that reference constants, along with some png files
+ *     that are not filtered
+ */
+public class ConfigurationTreeGenerator {
+
+	private static final String[] DOMAINS = { "concepts", "encountertypes", "locations", "programs", "attributetypes",
+			"globalproperties", "htmlforms", "appointmentservices", "orderfrequencies", "roles" };
+
+	private final Random random;
+
+	public ConfigurationTreeGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return the given number of constants, named domain.entityN.uuid and domain.entityN.name
+	 */
+	public Properties generateConstants(int numConstants) {
+		Properties constants = new ConstantProperties();
+		for (int i = 0; constants.size() < numConstants; i++) {
+			String prefix = DOMAINS[i % DOMAINS.length] + ".entity" + i;
+			constants.setProperty(prefix + ".uuid", nextUuid());
+			if (constants.size() < numConstants) {
+				constants.setProperty(prefix + ".name", "Entity " + i + " " + nextWord());
+			}
+		}
+		return constants;
+	}
+
+	/**
+	 * @return a yml document with the given number of constants, nested by domain and entity, with a list of
+	 * names for every tenth entity
+	 */
+	public String generateYaml(int numConstants) {
+		StringBuilder yaml = new StringBuilder();
+		int numAdded = 0;
+		for (int d = 0; d < DOMAINS.length && numAdded < numConstants; d++) {
+			yaml.append(DOMAINS[d]).append(":\n");
+			int entitiesPerDomain = (numConstants / DOMAINS.length) / 2 + 1;
+			for (int i = 0; i < entitiesPerDomain && numAdded < numConstants; i++) {
+				yaml.append("  entity").append(i).append(":\n");
+				yaml.append("    uuid: \"").append(nextUuid()).append("\"\n");
+				numAdded++;
+				if (i % 10 == 0) {
+					yaml.append("    names:\n");
+					yaml.append("      - \"").append(nextWord()).append("\"\n");
+					yaml.append("      - \"").append(nextWord()).append("\"\n");
+					numAdded += 2;
+				}
+				else {
+					yaml.append("    name: \"").append(nextWord()).append("\"\n");
+					numAdded++;
+				}
+			}
+		}
+		return yaml.toString();
+	}
+
+	/**
+	 * Writes the given number of csv files into the given directory, spread across domain directories, each of
+	 * approximately the given size, and with rows that reference the given constants.  One in every twenty files
+	 * is instead a png file of random bytes.
+	 * @return the relative paths of the files written
+	 */
+	public List<String> generateTree(File dir, int numFiles, int fileSize, Properties constants) throws IOException {
+		List<String> keys = new ArrayList<>(new TreeSet<>(constants.stringPropertyNames()));
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < numFiles; i++) {
+			String domain = DOMAINS[i % DOMAINS.length];
+			String path = domain + "/" + domain + "-" + i + (i % 20 == 19 ? ".png" : ".csv");
+			File file = new File(dir, path);
+			Files.createDirectories(file.getParentFile().toPath());
+			if (path.endsWith(".png")) {
+				byte[] bytes = new byte[fileSize];
+				random.nextBytes(bytes);
+				try (OutputStream out = Files.newOutputStream(file.toPath())) {
+					out.write(bytes);
+				}
+			}
+			else {
+				writeCsv(file, fileSize, keys);
+			}
+			paths.add(path);
+		}
+		return paths;
+	}
+
+	private void writeCsv(File file, int fileSize, List<String> keys) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write("Uuid,Void/Retire,Name,Description,Reference\n");
+			int written = 0;
+			while (written < fileSize) {
+				StringBuilder row = new StringBuilder();
+				row.append(nextUuid()).append(",,").append(nextWord()).append(',');
+				row.append("Description of ").append(nextWord()).append(',');
+				if (!keys.isEmpty()) {
+					row.append("${").append(keys.get(random.nextInt(keys.size()))).append('}');
+				}
+				row.append('\n');
+				out.write(row.toString());
+				written += row.length();
+			}
+		}
+	}
+
+	private String nextUuid() {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+
+	private String nextWord() {
+		char[] chars = new char[4 + random.nextInt(8)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.packager.config.ConstantProperties;
+
+/**
+ * Measures the sorting of constants by key, and writing them as a properties file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConstantPropertiesBenchmark {
+
+	@Param({ "100", "10000" })
+	private int numConstants;
+
+	private ConstantProperties constants;
+
+	@Setup
+	public void setup() {
+		Properties generated = new ConfigurationTreeGenerator(1).generateConstants(numConstants);
+		constants = new ConstantProperties();
+		constants.putAll(generated);
+	}
+
+	@Benchmark
+	public int sortKeys() {
+		int numKeys = 0;
+		for (Enumeration<Object> e = constants.keys(); e.hasMoreElements(); e.nextElement()) {
+			numKeys++;
+		}
+		return numKeys;
+	}
+
+	@Benchmark
+	public int store() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		constants.store(out, null);
+		return out.size();
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.packager.config.ConstantProperties;
+
+/**
+ * Measures merging the constants files of a number of dependencies in order, followed by the constants of the
+ * project, and writing the result, as done by compile-configurations
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConstantsMergeBenchmark {
+
+	@Param({ "1", "10", "50" })
+	private int numDependencies;
+
+	@Param({ "1000" })
+	private int constantsPerDependency;
+
+	private File workDir;
+
+	private List<File> constantsFiles;
+
+	private File compiledConstantsFile;
+
+	@Setup
+	public void setup() throws IOException {
+		workDir = Files.createTempDirectory("constants-merge-benchmark").toFile();
+		constantsFiles = new ArrayList<>();
+		// Each dependency is generated from its own seed, so that dependencies both add and override constants
+		for (int i = 0; i <= numDependencies; i++) {
+			Properties constants = new ConfigurationTreeGenerator(i % 5).generateConstants(constantsPerDependency + i * 10);
+			File file = new File(workDir, "constants-" + i + ".properties");
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				constants.store(out, null);
+			}
+			constantsFiles.add(file);
+		}
+		compiledConstantsFile = new File(workDir, "constants.properties");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Benchmark
+	public int merge() throws IOException {
+		Properties finalConstants = new ConstantProperties();
+		for (File file : constantsFiles) {
+			Properties constants = new ConstantProperties();
+			try (FileInputStream in = new FileInputStream(file)) {
+				constants.load(in);
+			}
+			finalConstants.putAll(constants);
+		}
+		try (FileOutputStream out = new FileOutputStream(compiledConstantsFile)) {
+			finalConstants.store(out, null);
+		}
+		return finalConstants.size();
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.packager.config.ResourceFilter;
+
+/**
+ * Measures copying and filtering a configuration natively, either as many small files, as in a typical Initializer
+ * configuration, or as a few large files, such as a large concepts csv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ResourceFilterBenchmark {
+
+	public static final String MANY_SMALL_FILES = "manySmallFiles";
+	public static final String FEW_LARGE_FILES = "fewLargeFiles";
+
+	@Param({ MANY_SMALL_FILES, FEW_LARGE_FILES })
+	private String shape;
+
+	@Param({ "1000" })
+	private int numConstants;
+
+	private File workDir;
+
+	private File sourceDir;
+
+	private File targetDir;
+
+	private ResourceFilter filter;
+
+	@Setup
+	public void setup() throws IOException {
+		workDir = Files.createTempDirectory("resource-filter-benchmark").toFile();
+		sourceDir = new File(workDir, "source");
+		targetDir = new File(workDir, "target");
+		ConfigurationTreeGenerator generator = new ConfigurationTreeGenerator(1);
+		Properties constants = generator.generateConstants(numConstants);
+		if (MANY_SMALL_FILES.equals(shape)) {
+			generator.generateTree(sourceDir, 5000, 2 * 1024, constants);
+		}
+		else {
+			generator.generateTree(sourceDir, 10, 20 * 1024 * 1024, constants);
+		}
+		filter = new ResourceFilter(constants);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Benchmark
+	public List<String> copyDirectory() throws IOException {
+		return filter.copyDirectory(sourceDir, targetDir);
+	}
+}
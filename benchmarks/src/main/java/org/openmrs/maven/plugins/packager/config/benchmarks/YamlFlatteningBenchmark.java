@@ -0,0 +1,67 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.packager.config.YamlPropertiesFlattener;
+
+/**
+ * Measures the flattening of a constants.yml file into properties, as done by generate-resource-filters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class YamlFlatteningBenchmark {
+
+	@Param({ "100", "10000" })
+	private int numConstants;
+
+	private String yaml;
+
+	private YAMLFactory factory;
+
+	private YamlPropertiesFlattener flattener;
+
+	@Setup
+	public void setup() {
+		yaml = new ConfigurationTreeGenerator(1).generateYaml(numConstants);
+		factory = new YAMLFactory();
+		flattener = new YamlPropertiesFlattener(new SystemStreamLog());
+	}
+
+	@Benchmark
+	public Properties flatten() throws IOException {
+		Properties properties = new Properties();
+		try (JsonParser parser = factory.createParser(yaml)) {
+			flattener.flatten(parser, properties);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.packager.config.ZipArchiver;
+
+/**
+ * Measures writing a configuration into a zip file, on one or several threads, and incrementally from a previous
+ * zip file in which nothing has changed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ZipArchiverBenchmark {
+
+	@Param({ "1", "4" })
+	private int threads;
+
+	@Param({ "false", "true" })
+	private boolean incremental;
+
+	private File workDir;
+
+	private File sourceDir;
+
+	private File zipFile;
+
+	private ZipArchiver archiver;
+
+	@Setup
+	public void setup() throws IOException {
+		workDir = Files.createTempDirectory("zip-archiver-benchmark").toFile();
+		sourceDir = new File(workDir, "source");
+		zipFile = new File(workDir, "configuration.zip");
+		ConfigurationTreeGenerator generator = new ConfigurationTreeGenerator(1);
+		Properties constants = generator.generateConstants(1000);
+		generator.generateTree(sourceDir, 2000, 8 * 1024, constants);
+		archiver = new ZipArchiver();
+		archiver.setThreads(threads);
+		if (incremental) {
+			archiver.setManifestFile(new File(workDir, "configuration.json"));
+			archiver.archive(sourceDir, zipFile);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Benchmark
+	public ZipArchiver.Result archive() throws IOException {
+		return archiver.archive(sourceDir, zipFile);
+	}
+}
@@ -0,0 +1,36 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CielCacheTest {
+
+	@Test
+	public void testEntryWithUnreadableLastUsedDateIsEvictedByItsExtractionDate() throws Exception {
+		File cacheDir = Files.createTempDirectory("ciel-cache").toFile();
+		try {
+			File entriesDir = new File(cacheDir, "entries");
+			File recentEntry = new File(entriesDir, "recent");
+			File oldEntry = new File(entriesDir, "old");
+			for (File entry : new File[] { recentEntry, oldEntry }) {
+				FileUtils.writeStringToFile(new File(entry, "ciel.sql"), "select 1;", "UTF-8");
+				FileUtils.writeStringToFile(new File(entriesDir, entry.getName() + ".lastUsed"), "not a date", "UTF-8");
+			}
+			Assert.assertTrue(oldEntry.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(60)));
+
+			new CielCache(cacheDir, new SystemStreamLog()).evict();
+			Assert.assertTrue(recentEntry.isDirectory());
+			Assert.assertFalse(oldEntry.exists());
+			Assert.assertFalse(new File(entriesDir, "old.lastUsed").exists());
+		}
+		finally {
+			FileUtils.deleteDirectory(cacheDir);
+		}
+	}
+}
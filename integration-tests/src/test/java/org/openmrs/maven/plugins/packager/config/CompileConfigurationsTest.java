@@ -7,6 +7,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.Collection;
 import java.util.Properties;
 
 public class CompileConfigurationsTest {
@@ -81,6 +82,124 @@ public class CompileConfigurationsTest {
 		Assert.assertTrue(expectedContents.contains("\"textConstant\" : \"testValueFromChild\""));
 	}
 
+	@Test
+	public void testDependenciesAreUnpackedConcurrently() throws Exception {
+		childProject.executeGoal("clean", "-N", "-X");
+		childProject.executeGoal("compile", "-N", "-X", "-DdependencyThreads=4");
+		childProject.testFileExists("dependencies/org.openmrs.maven.plugins_openmrs-packager-maven-plugin-config-test-parent_1.0.0-SNAPSHOT/domain2/file-from-parent.txt");
+		childProject.testFileExists("configuration/domain2/file-from-parent.txt");
+		File overrideFile = childProject.testFileExists("configuration/domain2/file-override.png");
+		childProject.testFileContains(overrideFile, "override file");
+	}
+
+	@Test
+	public void testDependenciesAreUnpackedFromCache() throws Exception {
+		File cacheDir = new File(childProject.getConfigDir(), "unpack-cache");
+		for (int i = 0; i < 2; i++) {
+			childProject.executeGoal("compile", "-N", "-X", "-DunpackCache=true", "-DunpackCacheDir=" + cacheDir.getAbsolutePath());
+			childProject.testFileExists("dependencies/org.openmrs.maven.plugins_openmrs-packager-maven-plugin-config-test-parent_1.0.0-SNAPSHOT.sha256");
+			childProject.testFileExists("configuration/domain2/file-from-parent.txt");
+		}
+		String[] cacheEntries = new File(cacheDir, "entries").list((dir, name) -> new File(dir, name).isDirectory());
+		Assert.assertEquals(1, cacheEntries.length);
+	}
+
+	@Test
+	public void testDependenciesUnpackedWithoutCacheAreNotLinkedToIt() throws Exception {
+		File cacheDir = new File(childProject.getConfigDir(), "unpack-cache");
+		String dependencyDir = "dependencies/org.openmrs.maven.plugins_openmrs-packager-maven-plugin-config-test-parent_1.0.0-SNAPSHOT";
+		childProject.executeGoal("compile", "-N", "-X", "-DunpackCache=true", "-DunpackCacheDir=" + cacheDir.getAbsolutePath());
+		childProject.executeGoal("compile", "-N", "-X");
+		childProject.testFileDoesNotExist(dependencyDir + ".sha256");
+
+		// Changing the unpacked files must not change the files in the cache
+		File unpackedFile = childProject.testFileExists(dependencyDir + "/domain2/file-from-parent.txt");
+		FileUtils.writeStringToFile(unpackedFile, "changed", "UTF-8");
+		for (File cachedFile : FileUtils.listFiles(new File(cacheDir, "entries"), null, true)) {
+			if (cachedFile.getName().equals("file-from-parent.txt")) {
+				Assert.assertNotEquals("changed", FileUtils.readFileToString(cachedFile, "UTF-8"));
+			}
+		}
+	}
+
+	@Test
+	public void testIncrementalCompilationOnlyProcessesChangedFiles() throws Exception {
+		childProject.executeGoal("clean", "-N", "-X");
+		childProject.executeGoal("compile", "-N", "-X", "-Dincremental=true");
+		childProject.testFileExists("compile-manifest.json");
+		childProject.testFileExists("configuration/domain2/file-from-parent.txt");
+		File overrideFile = childProject.testFileExists("configuration/domain2/file-override.png");
+		childProject.testFileContains(overrideFile, "override file");
+
+		File unchangedFile = childProject.testFileExists("configuration/domain3/domain-not-in-parent.txt");
+		unchangedFile.setLastModified(1000);
+		File removedSource = new File(childProject.getConfigDir(), "configuration/domain2/file-from-child.txt");
+		Assert.assertTrue(removedSource.delete());
+
+		childProject.executeGoal("compile", "-N", "-X", "-Dincremental=true");
+		Assert.assertEquals(1000, unchangedFile.lastModified());
+		childProject.testFileDoesNotExist("configuration/domain2/file-from-child.txt");
+	}
+
+	@Test
+	public void testNativeFilteringMatchesMavenFiltering() throws Exception {
+		File mavenCompiled = new File(childProject.getConfigDir(), "maven-compiled-configuration");
+		FileUtils.copyDirectory(new File(childProject.getPluginBuildDir(), "configuration"), mavenCompiled);
+
+		childProject.executeGoal("clean", "-N", "-X");
+		childProject.executeGoal("compile", "-N", "-X", "-DfilteringEngine=native");
+
+		File nativeCompiled = new File(childProject.getPluginBuildDir(), "configuration");
+		Collection<File> mavenFiles = FileUtils.listFiles(mavenCompiled, null, true);
+		Assert.assertEquals(mavenFiles.size(), FileUtils.listFiles(nativeCompiled, null, true).size());
+		for (File mavenFile : mavenFiles) {
+			String path = mavenCompiled.toPath().relativize(mavenFile.toPath()).toString();
+			Assert.assertTrue("Checking contents of " + path, FileUtils.contentEquals(mavenFile, new File(nativeCompiled, path)));
+		}
+	}
+
+	@Test
+	public void testVariantsKeepTheirOwnGeneratedConstants() throws Exception {
+		File sitesDir = new File(childProject.getConfigDir(), "sites");
+		childProject.executeGoal("clean", "-N", "-X");
+		childProject.executeGoal("compile", "-N", "-X", "-DvariantsSourceDir=" + sitesDir.getAbsolutePath());
+
+		// The compiled configuration and each variant have their own constants, none overwriting another's
+		String[][] expected = {
+				{ "configuration", "testValueFromChild" },
+				{ "variants/site-a/configuration", "siteAValue" },
+				{ "variants/site-b/configuration", "siteBValue" }
+		};
+		for (String[] e : expected) {
+			File json = childProject.testFileExists(e[0] + "/jsonkeyvalues/constants.json");
+			childProject.testFileContains(json, "\"textConstant\" : \"" + e[1] + "\"");
+			Properties p = new Properties();
+			try (FileInputStream in = new FileInputStream(childProject.testFileExists(e[0] + "/constants.properties"))) {
+				p.load(in);
+			}
+			Assert.assertEquals(e[1], p.getProperty("textConstant"));
+			Assert.assertEquals("propertyValue1", p.getProperty("constantWithProperties.property1"));
+		}
+		childProject.testFileExists("variants/site-a/configuration/domain2/file-from-parent.txt");
+		childProject.testFileExists("variants/site-b/configuration/domain3/domain-not-in-parent.txt");
+	}
+
+	@Test
+	public void testVariantZipsAreInstalledWithTheirIdsAsClassifiers() throws Exception {
+		File sitesDir = new File(childProject.getConfigDir(), "sites");
+		childProject.executeGoal("clean", "-N", "-X");
+		childProject.executeGoal("install", "-N", "-X", "-DvariantsSourceDir=" + sitesDir.getAbsolutePath(), "-DvariantThreads=2");
+
+		File zipFile = new File(childProject.getVerifier().getArtifactPath("org.openmrs.maven.plugins",
+				"openmrs-packager-maven-plugin-config-test-child", "1.0.0-SNAPSHOT", "zip"));
+		Assert.assertTrue(zipFile.exists());
+		for (String variantId : new String[] { "site-a", "site-b" }) {
+			String variantZipName = zipFile.getName().replace(".zip", "-" + variantId + ".zip");
+			Assert.assertTrue(variantZipName + " is installed", new File(zipFile.getParentFile(), variantZipName).exists());
+			Assert.assertTrue(new File(childProject.getTargetDir(), "openmrs-packager-maven-plugin-config-test-child-1.0.0-SNAPSHOT-" + variantId + ".zip").exists());
+		}
+	}
+
 	// TBD: Test copy to server
 	// TBD: Test watch
 }
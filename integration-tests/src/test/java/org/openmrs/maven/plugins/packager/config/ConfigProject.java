@@ -34,6 +34,23 @@ public class ConfigProject {
 		}
 	}
 
+	/**
+	 * Sets up a test config project using an existing directory as the simulated project, such as one generated
+	 * by a ConfigProjectGenerator.  Artifacts previously installed from the project are left in place.
+	 */
+	public ConfigProject(File configDir) {
+		this.configDirName = configDir.getName();
+		this.configDir = configDir;
+		try {
+			verifier = new Verifier(configDir.getAbsolutePath());
+			targetDir = new File(configDir, "target");
+			pluginBuildDir = new File(targetDir, "openmrs-packager-config");
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Unable to setup Config Project from " + configDir, e);
+		}
+	}
+
 	/**
 	 * Executes the specified mvn goal on the config project, with optional command line options
 	 */
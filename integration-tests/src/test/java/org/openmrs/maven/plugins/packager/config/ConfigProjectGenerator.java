@@ -0,0 +1,225 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates chains of config projects of any size, in which each project depends on the one before it, so that the
+ * plugin can be exercised against configurations as large as real distributions.  The same settings always generate
+ * the same projects.
+ *   - each project has its own constants, half of which are shared by every project, so that they override the
+ *     constants of the project it depends on
+ *   - each project has csv files spread across Initializer domains, which reference constants, and one in every
+ *     twenty is instead a png file that is not filtered
+ *   - one in every ten files has a path that is shared by every project, so that it overrides the file of the
+ *     project it depends on
+ */
+public class ConfigProjectGenerator {
+
+	public static final String GROUP_ID = "org.openmrs.maven.plugins.perf";
+
+	private static final String[] DOMAINS = { "concepts", "encountertypes", "locations", "programs", "attributetypes",
+			"globalproperties", "htmlforms", "appointmentservices", "orderfrequencies", "roles" };
+
+	private int depth = 2;
+
+	private int numFiles = 10000;
+
+	private int fileSize = 2048;
+
+	private int numConstants = 1000;
+
+	private String pluginVersion;
+
+	private long seed = 1;
+
+	public ConfigProjectGenerator(String pluginVersion) {
+		this.pluginVersion = pluginVersion;
+	}
+
+	/**
+	 * Generates the chain of projects into the given directory, replacing any that were generated before
+	 * @return the directories of the projects, starting with the project that has no dependencies
+	 */
+	public List<File> generate(File baseDir) throws IOException {
+		Random random = new Random(seed);
+		FileUtils.deleteDirectory(baseDir);
+		List<File> projectDirs = new ArrayList<>();
+		for (int level = 0; level < depth; level++) {
+			File projectDir = new File(baseDir, getArtifactId(level));
+			Files.createDirectories(projectDir.toPath());
+			writePom(projectDir, level);
+			if (level > 0) {
+				writeDependencies(projectDir, level - 1);
+			}
+			List<String> keys = writeConstants(projectDir, level, random);
+			writeConfiguration(new File(projectDir, "configuration"), level, keys, random);
+			projectDirs.add(projectDir);
+		}
+		return projectDirs;
+	}
+
+	public String getArtifactId(int level) {
+		return "perf-config-" + level;
+	}
+
+	private void writePom(File projectDir, int level) throws IOException {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n");
+		pom.append("    <modelVersion>4.0.0</modelVersion>\n");
+		pom.append("    <groupId>").append(GROUP_ID).append("</groupId>\n");
+		pom.append("    <artifactId>").append(getArtifactId(level)).append("</artifactId>\n");
+		pom.append("    <name>Generated config ").append(level).append("</name>\n");
+		pom.append("    <version>1.0.0-SNAPSHOT</version>\n");
+		pom.append("    <packaging>pom</packaging>\n");
+		pom.append("    <build>\n");
+		pom.append("        <plugins>\n");
+		pom.append("            <plugin>\n");
+		pom.append("                <groupId>org.openmrs.maven.plugins</groupId>\n");
+		pom.append("                <artifactId>openmrs-packager-maven-plugin</artifactId>\n");
+		pom.append("                <version>").append(pluginVersion).append("</version>\n");
+		pom.append("                <executions>\n");
+		appendExecution(pom, "generate-resource-filters", "generate-resources",
+				"<sourceFile>${project.basedir}/constants.properties</sourceFile>");
+		appendExecution(pom, "compile-configurations", "compile", null);
+		appendExecution(pom, "package-configurations", "package", null);
+		pom.append("                </executions>\n");
+		pom.append("            </plugin>\n");
+		pom.append("        </plugins>\n");
+		pom.append("    </build>\n");
+		pom.append("</project>\n");
+		FileUtils.writeStringToFile(new File(projectDir, "pom.xml"), pom.toString(), StandardCharsets.UTF_8);
+	}
+
+	private void appendExecution(StringBuilder pom, String goal, String phase, String configuration) {
+		pom.append("                    <execution>\n");
+		pom.append("                        <id>").append(goal).append("</id>\n");
+		pom.append("                        <phase>").append(phase).append("</phase>\n");
+		pom.append("                        <goals>\n");
+		pom.append("                            <goal>").append(goal).append("</goal>\n");
+		pom.append("                        </goals>\n");
+		if (configuration != null) {
+			pom.append("                        <configuration>").append(configuration).append("</configuration>\n");
+		}
+		pom.append("                    </execution>\n");
+	}
+
+	private void writeDependencies(File projectDir, int dependencyLevel) throws IOException {
+		String dependencies = "- groupId: \"" + GROUP_ID + "\"\n" +
+				"  artifactId: \"" + getArtifactId(dependencyLevel) + "\"\n" +
+				"  version: \"1.0.0-SNAPSHOT\"\n";
+		FileUtils.writeStringToFile(new File(projectDir, "dependencies.yml"), dependencies, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the constants of the project at the given level
+	 * @return the keys of the constants written
+	 */
+	private List<String> writeConstants(File projectDir, int level, Random random) throws IOException {
+		Properties constants = new ConstantProperties();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < numConstants; i++) {
+			String owner = (i % 2 == 0 ? "shared" : "level" + level);
+			String key = DOMAINS[i % DOMAINS.length] + "." + owner + ".entity" + i;
+			constants.setProperty(key, new UUID(random.nextLong(), random.nextLong()).toString());
+			keys.add(key);
+		}
+		try (OutputStream out = new FileOutputStream(new File(projectDir, "constants.properties"))) {
+			constants.store(out, null);
+		}
+		return keys;
+	}
+
+	private void writeConfiguration(File configurationDir, int level, List<String> keys, Random random) throws IOException {
+		for (int i = 0; i < numFiles; i++) {
+			String domain = DOMAINS[i % DOMAINS.length];
+			String owner = (i % 10 == 0 ? "shared" : "level" + level);
+			String path = domain + "/" + domain + "-" + owner + "-" + i + (i % 20 == 19 ? ".png" : ".csv");
+			File file = new File(configurationDir, path);
+			Files.createDirectories(file.getParentFile().toPath());
+			if (path.endsWith(".png")) {
+				byte[] bytes = new byte[fileSize];
+				random.nextBytes(bytes);
+				Files.write(file.toPath(), bytes);
+			}
+			else {
+				writeCsv(file, keys, random);
+			}
+		}
+	}
+
+	private void writeCsv(File file, List<String> keys, Random random) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write("Uuid,Void/Retire,Name,Description,Reference\n");
+			int written = 0;
+			while (written < fileSize) {
+				String row = new UUID(random.nextLong(), random.nextLong()) + ",,Name " + random.nextInt() +
+						",Description " + random.nextInt() + ",${" + keys.get(random.nextInt(keys.size())) + "}\n";
+				out.write(row);
+				written += row.length();
+			}
+		}
+	}
+
+	//***** PROPERTY ACCESSORS
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public int getNumFiles() {
+		return numFiles;
+	}
+
+	public void setNumFiles(int numFiles) {
+		this.numFiles = numFiles;
+	}
+
+	public int getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(int fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public int getNumConstants() {
+		return numConstants;
+	}
+
+	public void setNumConstants(int numConstants) {
+		this.numConstants = numConstants;
+	}
+
+	public String getPluginVersion() {
+		return pluginVersion;
+	}
+
+	public void setPluginVersion(String pluginVersion) {
+		this.pluginVersion = pluginVersion;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
@@ -0,0 +1,195 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Builds a generated chain of large config projects, and fails if compiling, packaging, rebuilding while watching,
+ * or creating a content package of the last project in the chain exceeds its budgets of wall time and peak heap.
+ * Budgets are in performance-budgets.properties, with wall time per thousand files in the chain.
+ * Results are written to perf.resultsFile, and if perf.baselineFile gives the results of an earlier run with the
+ * same settings, any result which is worse than the baseline by more than perf.tolerance also fails.
+ * This only runs with the performance-tests profile, eg: mvn verify -Pintegration-tests,performance-tests
+ */
+public class ConfigurationPerformanceTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private static ConfigProjectGenerator generator;
+
+	private static ConfigProject project;
+
+	private static Properties budgets;
+
+	private static JsonNode baseline;
+
+	private static final Map<String, Map<String, Long>> results = Collections.synchronizedMap(new TreeMap<>());
+
+	@BeforeClass
+	public static void generateProjects() throws Exception {
+		generator = new ConfigProjectGenerator(System.getProperty("perf.pluginVersion"));
+		generator.setDepth(Integer.getInteger("perf.depth", generator.getDepth()));
+		generator.setNumFiles(Integer.getInteger("perf.numFiles", generator.getNumFiles()));
+		generator.setFileSize(Integer.getInteger("perf.fileSize", generator.getFileSize()));
+		generator.setNumConstants(Integer.getInteger("perf.numConstants", generator.getNumConstants()));
+		List<File> projectDirs = generator.generate(new File("target/perf-projects"));
+
+		// Install every project that the last one depends on, directly or indirectly
+		for (File projectDir : projectDirs.subList(0, projectDirs.size() - 1)) {
+			new ConfigProject(projectDir).executeGoal("install", "-N");
+		}
+		project = new ConfigProject(projectDirs.get(projectDirs.size() - 1));
+
+		budgets = new Properties();
+		try (InputStream in = ConfigurationPerformanceTest.class.getResourceAsStream("/performance-budgets.properties")) {
+			budgets.load(in);
+		}
+		String baselineFile = System.getProperty("perf.baselineFile");
+		if (baselineFile != null && new File(baselineFile).exists()) {
+			JsonNode node = MAPPER.readTree(new File(baselineFile));
+			if (MAPPER.valueToTree(getSettings()).equals(node.get("settings"))) {
+				baseline = node.get("results");
+			}
+			else {
+				new SystemStreamLog().warn("Ignoring baseline " + baselineFile + " as it was recorded with different settings");
+			}
+		}
+	}
+
+	@AfterClass
+	public static void writeResults() throws Exception {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("settings", getSettings());
+		report.put("results", results);
+		File resultsFile = new File(System.getProperty("perf.resultsFile", "target/perf-results.json"));
+		FileUtils.forceMkdirParent(resultsFile);
+		MAPPER.writeValue(resultsFile, report);
+	}
+
+	@Test
+	public void testCompile() throws Exception {
+		project.executeGoal("clean", "-N");
+		project.executeGoal("compile", "-N");
+		assertWithinBudget("compile", readMetricsReport("compile-configurations"));
+	}
+
+	@Test
+	public void testPackage() throws Exception {
+		project.executeGoal("clean", "-N");
+		project.executeGoal("package", "-N");
+		assertWithinBudget("package", readMetricsReport("package-configurations"));
+	}
+
+	@Test
+	public void testContentPackage() throws Exception {
+		project.executeGoal("clean", "-N");
+		project.executeGoal("compile", "-N");
+		File packageFile = new File(project.getTargetDir(), "content-package.zip");
+		project.executeGoal("org.openmrs.maven.plugins:openmrs-packager-maven-plugin:" + generator.getPluginVersion() +
+				":create-content-package", "-N", "-DpackageFile=" + packageFile.getAbsolutePath());
+		Assert.assertTrue(packageFile.exists());
+		assertWithinBudget("contentPackage", readMetricsReport("create-content-package"));
+	}
+
+	/**
+	 * Changes one in every hundred files after a full build, and compiles them as the watch goal does in hot mode
+	 */
+	@Test
+	public void testWatchRebuild() throws Exception {
+		project.executeGoal("clean", "-N");
+		project.executeGoal("compile", "-N", "-Dincremental=true");
+
+		File sourceDir = new File(project.getConfigDir(), "configuration");
+		List<String> changedPaths = new ArrayList<>();
+		List<String> sourcePaths = ResourceFilter.scanDirectory(sourceDir);
+		for (int i = 0; i < sourcePaths.size(); i += 100) {
+			String path = sourcePaths.get(i);
+			if (path.endsWith(".csv")) {
+				FileUtils.writeStringToFile(new File(sourceDir, path), "changed,,Changed,Changed,changed\n", StandardCharsets.UTF_8, true);
+				changedPaths.add(path);
+			}
+		}
+
+		List<File> unpackDirs = new ArrayList<>();
+		if (generator.getDepth() > 1) {
+			ConfigDependency dependency = new ConfigDependency(ConfigProjectGenerator.GROUP_ID,
+					generator.getArtifactId(generator.getDepth() - 2), "1.0.0-SNAPSHOT");
+			unpackDirs.add(new File(project.getPluginBuildDir(), "dependencies/" + dependency.toString("_")));
+		}
+
+		BuildMetrics metrics = new BuildMetrics();
+		try (BuildMetrics.Timer timer = metrics.time("hotBuild")) {
+			File compiledDir = new File(project.getPluginBuildDir(), "configuration");
+			Properties constants = new Properties();
+			try (InputStream in = new FileInputStream(new File(compiledDir, "constants.properties"))) {
+				constants.load(in);
+			}
+			IncrementalCompiler compiler = new IncrementalCompiler(compiledDir,
+					new File(project.getPluginBuildDir(), "compile-manifest.json"), new SystemStreamLog());
+			IncrementalCompiler.Result result = compiler.compile(changedPaths, unpackDirs, sourceDir, new ResourceFilter(constants));
+			Assert.assertEquals(changedPaths.size(), result.getUpdated().size());
+		}
+		assertWithinBudget("watchRebuild", metrics.getPhaseMillis("hotBuild"), metrics.getPeakHeapBytes());
+	}
+
+	private JsonNode readMetricsReport(String goal) throws Exception {
+		return MAPPER.readTree(new File(project.getPluginBuildDir(), "metrics/" + goal + ".json"));
+	}
+
+	private void assertWithinBudget(String scenario, JsonNode metricsReport) {
+		assertWithinBudget(scenario, metricsReport.get("totalMillis").asLong(), metricsReport.get("peakHeapBytes").asLong());
+	}
+
+	private void assertWithinBudget(String scenario, long millis, long peakHeapBytes) {
+		Map<String, Long> result = new LinkedHashMap<>();
+		result.put("millis", millis);
+		result.put("peakHeapBytes", peakHeapBytes);
+		results.put(scenario, result);
+
+		double thousandsOfFiles = Math.max(1, generator.getNumFiles() * (double) generator.getDepth() / 1000);
+		long millisBudget = (long) (Long.parseLong(budgets.getProperty(scenario + ".millisPerThousandFiles")) * thousandsOfFiles);
+		long peakHeapBudget = Long.parseLong(budgets.getProperty(scenario + ".peakHeapMegabytes")) * 1024 * 1024;
+		Assert.assertTrue(scenario + " took " + millis + "ms, over its budget of " + millisBudget + "ms", millis <= millisBudget);
+		Assert.assertTrue(scenario + " used a peak heap of " + peakHeapBytes + " bytes, over its budget of " + peakHeapBudget,
+				peakHeapBytes <= peakHeapBudget);
+
+		JsonNode baselineResult = (baseline == null ? null : baseline.get(scenario));
+		if (baselineResult != null) {
+			double tolerance = 1 + Double.parseDouble(System.getProperty("perf.tolerance", "0.25"));
+			long baselineMillis = baselineResult.get("millis").asLong();
+			long baselinePeakHeapBytes = baselineResult.get("peakHeapBytes").asLong();
+			Assert.assertTrue(scenario + " took " + millis + "ms, slower than the baseline of " + baselineMillis + "ms",
+					millis <= baselineMillis * tolerance);
+			Assert.assertTrue(scenario + " used a peak heap of " + peakHeapBytes + " bytes, more than the baseline of " +
+					baselinePeakHeapBytes, peakHeapBytes <= baselinePeakHeapBytes * tolerance);
+		}
+	}
+
+	private static Map<String, Object> getSettings() {
+		Map<String, Object> settings = new LinkedHashMap<>();
+		settings.put("depth", generator.getDepth());
+		settings.put("numFiles", generator.getNumFiles());
+		settings.put("fileSize", generator.getFileSize());
+		settings.put("numConstants", generator.getNumConstants());
+		return settings;
+	}
+}
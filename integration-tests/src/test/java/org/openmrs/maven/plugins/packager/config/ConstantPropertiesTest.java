@@ -0,0 +1,29 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConstantPropertiesTest {
+
+	@Test
+	public void testPropertiesAreStoredSortedAndEscapedAsByProperties() throws Exception {
+		ConstantProperties properties = new ConstantProperties();
+		properties.setProperty("b.key", "value");
+		properties.setProperty(" a key:with=special#chars!\\", "  value = : # ! \\ \t\n\r\f \u00e9 \u20ac \u0001 end ");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		properties.store(out, null);
+		String stored = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+
+		Assert.assertEquals("\\ a\\ key\\:with\\=special\\#chars\\!\\\\=\\  value \\= \\: \\# \\! \\\\ \\t\\n\\r\\f \\u00E9 \\u20AC \\u0001 end \n"
+				+ "b.key=value\n", stored);
+
+		Properties loaded = new Properties();
+		loaded.load(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals(properties, loaded);
+	}
+}
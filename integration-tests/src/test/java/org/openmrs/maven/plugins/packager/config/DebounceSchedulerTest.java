@@ -0,0 +1,133 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+public class DebounceSchedulerTest {
+
+	/**
+	 * A build which records the changes it is given, and blocks until it is released or cancelled
+	 */
+	private static class TestBuild implements DebounceScheduler.Build {
+
+		private final boolean cancellable;
+
+		private final List<Set<Path>> builtPaths = Collections.synchronizedList(new ArrayList<>());
+
+		private final List<Boolean> cancelled = Collections.synchronizedList(new ArrayList<>());
+
+		private final CountDownLatch started = new CountDownLatch(1);
+
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		TestBuild(boolean cancellable) {
+			this.cancellable = cancellable;
+		}
+
+		public void build(ChangeSet changes, BooleanSupplier cancelled) throws Exception {
+			builtPaths.add(new HashSet<>(changes.getPaths()));
+			started.countDown();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!cancelled.getAsBoolean() && released.getCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			this.cancelled.add(cancelled.getAsBoolean());
+		}
+
+		public boolean isCancellable(ChangeSet changes) {
+			return cancellable;
+		}
+	}
+
+	private static final Path FIRST = Paths.get("configuration", "first.csv");
+
+	private static final Path SECOND = Paths.get("configuration", "second.csv");
+
+	@Test
+	public void testCancelledBuildIsRequeuedWithNewChanges() throws Exception {
+		TestBuild build = new TestBuild(true);
+		DebounceScheduler scheduler = new DebounceScheduler(build, 0, 0, 0, new SystemStreamLog());
+		scheduler.changed(ENTRY_MODIFY, FIRST);
+		Assert.assertTrue(scheduler.dispatchIfDue());
+		Assert.assertTrue(build.started.await(10, TimeUnit.SECONDS));
+
+		scheduler.changed(ENTRY_MODIFY, SECOND);
+		build.released.countDown();
+		awaitBuilds(scheduler, 2);
+
+		Assert.assertEquals(1, scheduler.getNumCancelled());
+		Assert.assertEquals(1, scheduler.getNumBuilds());
+		Assert.assertEquals(Arrays.asList(true, false), build.cancelled);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(FIRST)), build.builtPaths.get(0));
+		Assert.assertEquals(new HashSet<>(Arrays.asList(FIRST, SECOND)), build.builtPaths.get(1));
+		Assert.assertFalse(scheduler.isBuilding());
+		Assert.assertEquals(-1, scheduler.getMillisUntilDue());
+	}
+
+	@Test
+	public void testChangesDuringBuildThatCannotBeCancelledAreBuiltAfterIt() throws Exception {
+		TestBuild build = new TestBuild(false);
+		DebounceScheduler scheduler = new DebounceScheduler(build, 0, 0, 0, new SystemStreamLog());
+		scheduler.changed(ENTRY_MODIFY, FIRST);
+		Assert.assertTrue(scheduler.dispatchIfDue());
+		Assert.assertTrue(build.started.await(10, TimeUnit.SECONDS));
+
+		scheduler.changed(ENTRY_MODIFY, SECOND);
+		Assert.assertFalse(scheduler.isCancelRequested());
+		Assert.assertFalse(scheduler.dispatchIfDue());
+		build.released.countDown();
+		awaitBuilds(scheduler, 2);
+
+		Assert.assertEquals(0, scheduler.getNumCancelled());
+		Assert.assertEquals(2, scheduler.getNumBuilds());
+		Assert.assertEquals(Arrays.asList(false, false), build.cancelled);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(SECOND)), build.builtPaths.get(1));
+	}
+
+	@Test
+	public void testDueChangesAreNotCheckedContinuouslyDuringBuild() throws Exception {
+		TestBuild build = new TestBuild(false);
+		DebounceScheduler scheduler = new DebounceScheduler(build, 250, 5000, 10, new SystemStreamLog());
+		Assert.assertEquals(5000, scheduler.getMillisUntilNextCheck(5000));
+		scheduler.changed(ENTRY_MODIFY, FIRST);
+		Assert.assertTrue(scheduler.getMillisUntilNextCheck(5000) > 0);
+		Thread.sleep(300);
+		Assert.assertEquals(1, scheduler.getMillisUntilNextCheck(5000));
+		Assert.assertTrue(scheduler.dispatchIfDue());
+		Assert.assertTrue(build.started.await(10, TimeUnit.SECONDS));
+
+		scheduler.changed(ENTRY_MODIFY, SECOND);
+		Thread.sleep(300);
+		Assert.assertEquals(0, scheduler.getMillisUntilDue());
+		Assert.assertEquals(250, scheduler.getMillisUntilNextCheck(5000));
+		build.released.countDown();
+		awaitBuilds(scheduler, 2);
+		Assert.assertEquals(2, scheduler.getNumBuilds());
+	}
+
+	/**
+	 * Waits for the given number of builds to complete or be cancelled, and then stops the scheduler
+	 */
+	private void awaitBuilds(DebounceScheduler scheduler, int numBuilds) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (scheduler.getNumBuilds() + scheduler.getNumCancelled() < numBuilds && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		scheduler.shutdown();
+	}
+}
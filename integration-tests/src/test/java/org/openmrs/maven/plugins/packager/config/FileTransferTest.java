@@ -0,0 +1,88 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileTransferTest {
+
+	private File sourceDir;
+
+	private File targetDir;
+
+	@Before
+	public void createDirectories() throws Exception {
+		sourceDir = Files.createTempDirectory("transfer-source").toFile();
+		targetDir = Files.createTempDirectory("transfer-target").toFile();
+	}
+
+	@After
+	public void deleteDirectories() throws Exception {
+		FileUtils.deleteDirectory(sourceDir);
+		FileUtils.deleteDirectory(targetDir);
+	}
+
+	@Test
+	public void testOnlyChangedFilesAreTransferred() throws Exception {
+		File source = new File(sourceDir, "domain/file.csv");
+		FileUtils.writeStringToFile(source, "first", "UTF-8");
+		File target = new File(targetDir, "domain/file.csv");
+		FileTransfer fileTransfer = new FileTransfer();
+		Assert.assertTrue(fileTransfer.transfer(source, target));
+		Assert.assertEquals("first", FileUtils.readFileToString(target, "UTF-8"));
+		Assert.assertEquals(source.lastModified(), target.lastModified());
+		Assert.assertFalse(fileTransfer.transfer(source, target));
+
+		// A target of the same size with a different last modified date is only transferred if its content differs
+		Assert.assertTrue(target.setLastModified(source.lastModified() - 60000));
+		Assert.assertFalse(fileTransfer.transfer(source, target));
+		FileUtils.writeStringToFile(source, "secon", "UTF-8");
+		Assert.assertTrue(source.setLastModified(target.lastModified() + 120000));
+		Assert.assertTrue(fileTransfer.transfer(source, target));
+		Assert.assertEquals("secon", FileUtils.readFileToString(target, "UTF-8"));
+	}
+
+	@Test
+	public void testTargetOfSameSizeAndLastModifiedDateIsNotTransferred() throws Exception {
+		File source = new File(sourceDir, "file.csv");
+		FileUtils.writeStringToFile(source, "source", "UTF-8");
+		File target = new File(targetDir, "file.csv");
+		FileUtils.writeStringToFile(target, "target", "UTF-8");
+		Assert.assertTrue(target.setLastModified(source.lastModified()));
+		Assert.assertFalse(new FileTransfer().transfer(source, target));
+		Assert.assertEquals("target", FileUtils.readFileToString(target, "UTF-8"));
+	}
+
+	@Test
+	public void testLinkedTargetIsReplacedRatherThanWrittenThrough() throws Exception {
+		File source = new File(sourceDir, "file.csv");
+		FileUtils.writeStringToFile(source, "source", "UTF-8");
+		File target = new File(targetDir, "file.csv");
+		FileTransfer linkingTransfer = new FileTransfer(true);
+		Assert.assertTrue(linkingTransfer.transfer(source, target));
+		Assert.assertEquals("source", FileUtils.readFileToString(target, "UTF-8"));
+
+		File otherSource = new File(sourceDir, "other.csv");
+		FileUtils.writeStringToFile(otherSource, "a different source", "UTF-8");
+		Assert.assertTrue(new FileTransfer().transfer(otherSource, target));
+		Assert.assertEquals("a different source", FileUtils.readFileToString(target, "UTF-8"));
+		Assert.assertEquals("source", FileUtils.readFileToString(source, "UTF-8"));
+	}
+
+	@Test
+	public void testDirectoryIsTransferredWithoutExcludedFiles() throws Exception {
+		FileUtils.writeStringToFile(new File(sourceDir, "backend/file.csv"), "backend", "UTF-8");
+		FileUtils.writeStringToFile(new File(sourceDir, "frontend/config.json"), "frontend", "UTF-8");
+		FileTransfer fileTransfer = new FileTransfer();
+		Assert.assertEquals(1, fileTransfer.transferDirectory(sourceDir, targetDir, "frontend/**/*"));
+		Assert.assertTrue(new File(targetDir, "backend/file.csv").isFile());
+		Assert.assertFalse(new File(targetDir, "frontend/config.json").exists());
+		Assert.assertEquals(0, fileTransfer.transferDirectory(sourceDir, targetDir, "frontend/**/*"));
+		Assert.assertEquals(0, fileTransfer.transferDirectory(new File(sourceDir, "missing"), targetDir));
+	}
+}
@@ -0,0 +1,137 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IgnoreRulesTest {
+
+	private Path root;
+
+	private IgnoreRules rules;
+
+	@Before
+	public void setup() throws Exception {
+		root = Files.createTempDirectory("ignore-rules");
+		rules = new IgnoreRules();
+		rules.addRoot(root);
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		FileUtils.deleteDirectory(root.toFile());
+	}
+
+	private void writeGitignore(String dir, String... patterns) throws Exception {
+		FileUtils.writeLines(new File(root.resolve(dir).toFile(), IgnoreRules.GITIGNORE_FILE_NAME), "UTF-8", Arrays.asList(patterns));
+	}
+
+	private boolean isIgnored(String path) {
+		return rules.isIgnored(root.resolve(path), false);
+	}
+
+	private boolean isDirectoryIgnored(String path) {
+		return rules.isIgnored(root.resolve(path), true);
+	}
+
+	@Test
+	public void testGitignoreIsOnlyUsedIfEnabled() throws Exception {
+		writeGitignore("", "*.log");
+		Assert.assertFalse(isIgnored("build.log"));
+		rules.setUseGitignore(true);
+		Assert.assertTrue(isIgnored("build.log"));
+		Assert.assertFalse(isIgnored("concepts.csv"));
+	}
+
+	@Test
+	public void testDefaultAndHiddenPathsAreIgnored() throws Exception {
+		Assert.assertTrue(isIgnored("configuration/concepts.csv~"));
+		Assert.assertTrue(isIgnored("configuration/.concepts.csv.swp"));
+		Assert.assertTrue(isDirectoryIgnored("frontend/node_modules"));
+		Assert.assertTrue(isIgnored("frontend/node_modules/package/index.js"));
+		Assert.assertTrue(isIgnored(".git/HEAD"));
+		Assert.assertFalse(rules.isIgnored(root, true));
+	}
+
+	@Test
+	public void testGitignoreNegationReincludesLaterMatches() throws Exception {
+		writeGitignore("", "*.csv", "!keep*.csv");
+		rules.setUseGitignore(true);
+		Assert.assertTrue(isIgnored("configuration/concepts.csv"));
+		Assert.assertFalse(isIgnored("configuration/keep-concepts.csv"));
+		writeGitignore("configuration", "keep-concepts.csv");
+		rules.invalidate();
+		Assert.assertTrue(isIgnored("configuration/keep-concepts.csv"));
+		Assert.assertFalse(isIgnored("keep-concepts.csv"));
+	}
+
+	@Test
+	public void testGitignorePatternsWithSlashesAreAnchoredToTheirDirectory() throws Exception {
+		writeGitignore("", "/generated", "configuration/drafts/*.csv");
+		writeGitignore("configuration", "local/*.yml");
+		rules.setUseGitignore(true);
+		Assert.assertTrue(isDirectoryIgnored("generated"));
+		Assert.assertTrue(isIgnored("generated/constants.yml"));
+		Assert.assertFalse(isDirectoryIgnored("configuration/generated"));
+		Assert.assertTrue(isIgnored("configuration/drafts/concepts.csv"));
+		Assert.assertFalse(isIgnored("configuration/drafts/nested/concepts.csv"));
+		Assert.assertTrue(isIgnored("configuration/local/site.yml"));
+		Assert.assertFalse(isIgnored("local/site.yml"));
+	}
+
+	@Test
+	public void testGitignorePatternsEndingInSlashOnlyMatchDirectories() throws Exception {
+		writeGitignore("", "tmp/");
+		rules.setUseGitignore(true);
+		Assert.assertTrue(isDirectoryIgnored("tmp"));
+		Assert.assertTrue(isDirectoryIgnored("configuration/tmp"));
+		Assert.assertTrue(isIgnored("configuration/tmp/concepts.csv"));
+		Assert.assertFalse(isIgnored("configuration/tmp"));
+	}
+
+	@Test
+	public void testModifiedGitignoreIsReloadedOnRefresh() throws Exception {
+		writeGitignore("", "*.log");
+		rules.setUseGitignore(true);
+		Assert.assertTrue(isIgnored("build.log"));
+		Assert.assertFalse(rules.refresh());
+		File gitignore = root.resolve(IgnoreRules.GITIGNORE_FILE_NAME).toFile();
+		writeGitignore("", "*.tmp");
+		Assert.assertTrue(gitignore.setLastModified(gitignore.lastModified() + 2000));
+		Assert.assertTrue(rules.refresh());
+		Assert.assertFalse(isIgnored("build.log"));
+		Assert.assertTrue(isIgnored("build.tmp"));
+	}
+
+	@Test
+	public void testConfiguredExcludesAndIncludes() throws Exception {
+		rules.addExclude("configuration/drafts/**");
+		rules.addExclude("regex:.*\\.bak");
+		rules.addInclude("*.csv");
+		Assert.assertTrue(isIgnored("configuration/drafts/concepts.csv"));
+		Assert.assertTrue(isIgnored("configuration/concepts.csv.bak"));
+		Assert.assertFalse(isIgnored("configuration/concepts.csv"));
+		Assert.assertTrue(isIgnored("configuration/concepts.yml"));
+		Assert.assertFalse(isDirectoryIgnored("configuration/locations"));
+	}
+
+	@Test
+	public void testGlobsAreConvertedToRegularExpressions() throws Exception {
+		Assert.assertEquals("[^/]*\\.csv", IgnoreRules.PathPattern.globToRegex("*.csv"));
+		Assert.assertEquals("(?:.*/)?drafts/.*", IgnoreRules.PathPattern.globToRegex("**/drafts/**"));
+		Assert.assertEquals("site-[^/]\\.yml", IgnoreRules.PathPattern.globToRegex("site-?.yml"));
+		Assert.assertEquals("[^a-c]x", IgnoreRules.PathPattern.globToRegex("[!a-c]x"));
+		Assert.assertEquals("\\[x", IgnoreRules.PathPattern.globToRegex("[x"));
+		Assert.assertEquals("a\\+b\\(c\\)", IgnoreRules.PathPattern.globToRegex("a+b(c)"));
+		Assert.assertTrue("configuration/drafts/a/b.csv".matches(IgnoreRules.PathPattern.globToRegex("**/drafts/**")));
+		Assert.assertTrue("drafts/b.csv".matches(IgnoreRules.PathPattern.globToRegex("**/drafts/**")));
+		Assert.assertFalse("a/b.csv".matches(IgnoreRules.PathPattern.globToRegex("*.csv")));
+	}
+}
@@ -0,0 +1,51 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InizDomainsTest {
+
+	@Test
+	public void testDependentDomainsArePartitionedTogetherInLoadingOrder() {
+		List<List<String>> partitions = new InizDomains().partition(Arrays.asList(
+				"htmlforms", "jsonkeyvalues", "concepts", "locations", "globalproperties", "locationtags"));
+		Assert.assertEquals(3, partitions.size());
+		Assert.assertEquals(Arrays.asList("locationtags", "locations", "concepts", "htmlforms"), partitions.get(0));
+		Assert.assertTrue(partitions.contains(Collections.singletonList("globalproperties")));
+		Assert.assertTrue(partitions.contains(Collections.singletonList("jsonkeyvalues")));
+	}
+
+	@Test
+	public void testDomainsArePartitionedTogetherThroughMissingDomains() {
+		// programworkflowstates depends on programs through programworkflows, which is not in the configuration
+		List<List<String>> partitions = new InizDomains().partition(Arrays.asList("programworkflowstates", "programs"));
+		Assert.assertEquals(1, partitions.size());
+		Assert.assertEquals(Arrays.asList("programs", "programworkflowstates"), partitions.get(0));
+	}
+
+	@Test
+	public void testUnknownDomainsArePartitionedByGivenDependencies() {
+		List<String> domains = Arrays.asList("mydomain", "roles", "concepts");
+		Assert.assertEquals(3, new InizDomains().partition(domains).size());
+
+		InizDomains inizDomains = new InizDomains(Collections.singletonMap("mydomain", Collections.singletonList("roles")));
+		List<List<String>> partitions = inizDomains.partition(domains);
+		Assert.assertEquals(2, partitions.size());
+		Assert.assertEquals(Arrays.asList("roles", "mydomain"), partitions.get(0));
+		Assert.assertTrue(inizDomains.dependsOn("mydomain", "roles"));
+		Assert.assertFalse(inizDomains.dependsOn("roles", "mydomain"));
+	}
+
+	@Test
+	public void testPersonAttributeTypesAreLoadedAfterAndWithConcepts() {
+		InizDomains inizDomains = new InizDomains();
+		Assert.assertTrue(inizDomains.dependsOn("personattributetypes", "concepts"));
+		List<List<String>> partitions = inizDomains.partition(Arrays.asList("personattributetypes", "concepts", "globalproperties"));
+		Assert.assertEquals(2, partitions.size());
+		Assert.assertEquals(Arrays.asList("concepts", "personattributetypes"), partitions.get(0));
+	}
+}
@@ -1,7 +1,16 @@
 package org.openmrs.maven.plugins.packager.config;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -16,4 +25,115 @@ public class PackageConfigurationsTest {
 		File zipFile = new File(configProject.getTargetDir(), "openmrs-packager-maven-plugin-config-test-parent-1.0.0-SNAPSHOT.zip");
 		Assert.assertTrue(zipFile.exists());
 	}
+
+	@Test
+	public void testCompressedFormatsAreStored() throws Exception {
+		ConfigProject configProject = new ConfigProject("config-test-parent");
+		configProject.executeGoal("clean", "-N", "-X");
+		configProject.executeGoal("package", "-N", "-X");
+
+		File zipFile = new File(configProject.getTargetDir(), "openmrs-packager-maven-plugin-config-test-parent-1.0.0-SNAPSHOT.zip");
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			Assert.assertEquals(ZipEntry.STORED, zip.getEntry("domain2/file-override.png").getMethod());
+			Assert.assertEquals(ZipEntry.DEFLATED, zip.getEntry("domain2/file-from-parent.txt").getMethod());
+		}
+	}
+
+	@Test
+	public void testPackagingIsReproducible() throws Exception {
+		ConfigProject configProject = new ConfigProject("config-test-parent");
+		configProject.executeGoal("clean", "-N", "-X");
+		configProject.executeGoal("package", "-N", "-X");
+		File zipFile = new File(configProject.getTargetDir(), "openmrs-packager-maven-plugin-config-test-parent-1.0.0-SNAPSHOT.zip");
+		byte[] firstZip = FileUtils.readFileToByteArray(zipFile);
+
+		// Neither the time of the build nor the last modified dates of the files are recorded in the zip
+		for (File file : FileUtils.listFiles(new File(configProject.getConfigDir(), "configuration"), null, true)) {
+			Assert.assertTrue(file.setLastModified(file.lastModified() - 86400000));
+		}
+		Thread.sleep(2000);
+		configProject.executeGoal("clean", "-N", "-X");
+		configProject.executeGoal("package", "-N", "-X");
+		Assert.assertArrayEquals(firstZip, FileUtils.readFileToByteArray(zipFile));
+	}
+
+	@Test
+	public void testIncrementalPackagingReusesOnlyUnchangedEntries() throws Exception {
+		ConfigProject configProject = new ConfigProject("config-test-parent");
+		configProject.executeGoal("clean", "-N", "-X");
+		configProject.executeGoal("package", "-N", "-X");
+		File zipFile = new File(configProject.getTargetDir(), "openmrs-packager-maven-plugin-config-test-parent-1.0.0-SNAPSHOT.zip");
+		byte[] fullZip = FileUtils.readFileToByteArray(zipFile);
+
+		configProject.executeGoal("package", "-N", "-X", "-Dincremental=true");
+		configProject.executeGoal("package", "-N", "-X", "-Dincremental=true");
+		JsonNode counters = readPackageMetrics(configProject).get("counters");
+		Assert.assertEquals(counters.get(BuildMetrics.ARCHIVE_FILES).asLong(), counters.get(BuildMetrics.ARCHIVE_FILES_REUSED).asLong());
+		Assert.assertArrayEquals(fullZip, FileUtils.readFileToByteArray(zipFile));
+
+		// A file changed without changing its size is deflated again, rather than reused
+		File changedFile = new File(configProject.getConfigDir(), "configuration/domain2/file-from-parent.txt");
+		String contents = FileUtils.readFileToString(changedFile, "UTF-8");
+		String changedContents = new StringBuilder(contents).reverse().toString();
+		Assert.assertNotEquals(contents, changedContents);
+		FileUtils.writeStringToFile(changedFile, changedContents, "UTF-8");
+		configProject.executeGoal("package", "-N", "-X", "-Dincremental=true");
+		counters = readPackageMetrics(configProject).get("counters");
+		Assert.assertEquals(counters.get(BuildMetrics.ARCHIVE_FILES).asLong() - 1, counters.get(BuildMetrics.ARCHIVE_FILES_REUSED).asLong());
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			InputStream in = zip.getInputStream(zip.getEntry("domain2/file-from-parent.txt"));
+			Assert.assertEquals(changedContents, IOUtils.toString(in, StandardCharsets.UTF_8));
+		}
+		byte[] incrementalZip = FileUtils.readFileToByteArray(zipFile);
+		configProject.executeGoal("clean", "-N", "-X");
+		configProject.executeGoal("package", "-N", "-X");
+		Assert.assertArrayEquals(FileUtils.readFileToByteArray(zipFile), incrementalZip);
+	}
+
+	private JsonNode readPackageMetrics(ConfigProject configProject) throws Exception {
+		return new ObjectMapper().readTree(configProject.testFileExists("metrics/package-configurations.json"));
+	}
+
+	@Test
+	public void testLargeFilesWithShortNamesAreDeflatedIntoTemporaryFiles() throws Exception {
+		File sourceDir = Files.createTempDirectory("configuration").toFile();
+		File outputDir = Files.createTempDirectory("archives").toFile();
+		try {
+			FileUtils.writeStringToFile(new File(sourceDir, "x"), "short name", "UTF-8");
+			FileUtils.writeStringToFile(new File(sourceDir, "domain/a.csv"), "uuid,name", "UTF-8");
+			ZipArchiver archiver = new ZipArchiver();
+			archiver.setSpillThreshold(0);
+			File zipFile = new File(outputDir, "short-names.zip");
+			Assert.assertEquals(2, archiver.archive(sourceDir, zipFile).getNumFiles());
+			try (ZipFile zip = new ZipFile(zipFile)) {
+				Assert.assertEquals("uuid,name", IOUtils.toString(zip.getInputStream(zip.getEntry("domain/a.csv")), StandardCharsets.UTF_8));
+			}
+		}
+		finally {
+			FileUtils.deleteDirectory(sourceDir);
+			FileUtils.deleteDirectory(outputDir);
+		}
+	}
+
+	@Test
+	public void testLargeFilesDeflatedIntoTemporaryFilesGiveTheSameZip() throws Exception {
+		File configDir = new File(getClass().getClassLoader().getResource("config-test-parent/configuration").getPath());
+		File outputDir = Files.createTempDirectory("archives").toFile();
+		try {
+			File inMemory = new File(outputDir, "in-memory.zip");
+			new ZipArchiver().archive(configDir, inMemory);
+
+			File spilled = new File(outputDir, "spilled.zip");
+			ZipArchiver archiver = new ZipArchiver();
+			archiver.setSpillThreshold(0);
+			archiver.setThreads(2);
+			archiver.archive(configDir, spilled);
+
+			Assert.assertTrue(FileUtils.contentEquals(inMemory, spilled));
+			Assert.assertEquals(2, outputDir.list().length);
+		}
+		finally {
+			FileUtils.deleteDirectory(outputDir);
+		}
+	}
 }
@@ -0,0 +1,53 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceFilterTest {
+
+	ResourceFilter filter;
+
+	@Before
+	public void setup() {
+		Properties values = new Properties();
+		values.put("textConstant", "textValue");
+		values.put("constantWithProperties.property1", "propertyValue1");
+		values.put("nestedConstant", "nested-${textConstant}");
+		filter = new ResourceFilter(values);
+	}
+
+	@Test
+	public void testVariablesAreReplaced() throws Exception {
+		Assert.assertEquals("<a>textValue</a>", filter.interpolate("<a>${textConstant}</a>"));
+		Assert.assertEquals("<a>propertyValue1</a>", filter.interpolate("<a>@constantWithProperties.property1@</a>"));
+		Assert.assertEquals("<a>nested-textValue</a>", filter.interpolate("<a>${nestedConstant}</a>"));
+	}
+
+	@Test
+	public void testUnresolvedVariablesAreRetained() throws Exception {
+		Assert.assertEquals("${missingConstant}", filter.interpolate("${missingConstant}"));
+		Assert.assertEquals("admin@openmrs.org,user@openmrs.org", filter.interpolate("admin@openmrs.org,user@openmrs.org"));
+		Assert.assertEquals("${textConstant", filter.interpolate("${textConstant"));
+	}
+
+	@Test
+	public void testVariablesDoNotSpanLines() throws Exception {
+		StringWriter out = new StringWriter();
+		filter.filter(new StringReader("${text\r\nConstant}\n${textConstant}"), out);
+		Assert.assertEquals("${text\r\nConstant}\ntextValue", out.toString());
+	}
+
+	@Test
+	public void testNonFilteredFileExtensions() throws Exception {
+		Assert.assertTrue(filter.isFiltered("concepts.csv"));
+		Assert.assertTrue(filter.isFiltered("README"));
+		Assert.assertFalse(filter.isFiltered("dictionary.zip"));
+		Assert.assertFalse(filter.isFiltered("report.XLSX"));
+		Assert.assertFalse(filter.isFiltered("file-override.png"));
+	}
+}
@@ -10,10 +10,16 @@ import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -106,4 +112,108 @@ public class ValidateConfigurationsTest {
 		assertThat(args.size(), is(3));
 		assertThat(args, containsInAnyOrder("--opt1", "--opt2='foo bar'", "--opt3=bar"));
 	}
+	
+	@Test
+	public void getDomainsToValidate_shouldOnlyIncludeChangedDomainsWithSameSettings() {
+		List<String> domains = Arrays.asList("domain1", "domain2");
+		Map<String, String> domainHashes = new HashMap<>();
+		domainHashes.put("domain1", "hash1");
+		domainHashes.put("domain2", "hash2");
+		ValidationManifest manifest = new ValidationManifest("settings");
+		manifest.getDomains().put("domain1", "hash1");
+		manifest.getDomains().put("domain2", "oldHash2");
+		
+		assertThat(mojo.getDomainsToValidate(domains, domainHashes, manifest, "otherSettings"), is(domains));
+		assertThat(mojo.getDomainsToValidate(domains, domainHashes, manifest, "settings"), is(Arrays.asList("domain2")));
+		
+		manifest.getDomains().put("domain2", "hash2");
+		assertThat(mojo.getDomainsToValidate(domains, domainHashes, manifest, "settings").size(), is(0));
+	}
+	
+	@Test
+	public void getDomainsToValidate_shouldIncludeDomainsDependingOnChangedDomains() throws Exception {
+		File configDir = Files.createTempDirectory("configuration").toFile();
+		List<String> domains = Arrays.asList("globalproperties", "concepts", "htmlforms");
+		try {
+			ValidationManifest manifest = new ValidationManifest("settings");
+			Map<String, String> domainHashes = new HashMap<>();
+			for (String domain : domains) {
+				Assert.assertTrue(new File(configDir, domain).mkdir());
+				domainHashes.put(domain, "hash");
+				manifest.getDomains().put(domain, "hash");
+			}
+			ValidateConfigurationsMojo dependencyMojo = new ValidateConfigurationsMojo() {
+				@Override
+				protected File getSourceDir() {
+					return configDir;
+				}
+			};
+			
+			// htmlforms refers to concepts, so it is validated when concepts change
+			manifest.getDomains().put("concepts", "oldHash");
+			assertThat(dependencyMojo.getDomainsToValidate(domains, domainHashes, manifest, "settings"), is(Arrays.asList("concepts", "htmlforms")));
+			
+			// concepts is loaded so that changed htmlforms can be validated
+			manifest.getDomains().put("concepts", "hash");
+			manifest.getDomains().put("htmlforms", "oldHash");
+			assertThat(dependencyMojo.getDomainsToValidate(domains, domainHashes, manifest, "settings"), is(Arrays.asList("concepts", "htmlforms")));
+			
+			// globalproperties refers to nothing, and nothing refers to it
+			manifest.getDomains().put("htmlforms", "hash");
+			manifest.getDomains().put("globalproperties", "oldHash");
+			assertThat(dependencyMojo.getDomainsToValidate(domains, domainHashes, manifest, "settings"), is(Arrays.asList("globalproperties")));
+		}
+		finally {
+			FileUtils.deleteDirectory(configDir);
+		}
+	}
+	
+	@Test
+	public void validateByDomain_shouldValidateAllDomainsTogetherIfAnyIsUnknown() throws Exception {
+		List<List<String>> validatorArgs = new ArrayList<>();
+		ValidateConfigurationsMojo partitioningMojo = new ValidateConfigurationsMojo() {
+			@Override
+			protected Result runValidator(List<String> args, List<String> domains) {
+				validatorArgs.add(args);
+				return new Result();
+			}
+			@Override
+			protected File validatePartition(List<String> partition, File partitionDir, List<String> args, String classpath) {
+				throw new IllegalStateException("Validated partition " + partition + " in its own JVM");
+			}
+		};
+		
+		// Known, these would be validated as two independent partitions
+		partitioningMojo.validateByDomain(new ArrayList<>(), Arrays.asList("globalproperties", "concepts", "bedtypes"), null);
+		assertThat(validatorArgs.size(), is(1));
+		assertThat(validatorArgs.get(0).contains("--domains=globalproperties,concepts,bedtypes"), is(true));
+	}
+	
+	@Test
+	public void getUnknownDomains_shouldOnlyIncludeDomainsNotKnown() {
+		assertThat(mojo.getUnknownDomains(Arrays.asList("concepts", "mydomain", "htmlforms")), is(Arrays.asList("mydomain")));
+	}
+	
+	@Test
+	public void getRequestedDomains_shouldIncludeOrExcludeDomainsArgument() {
+		List<String> domains = Arrays.asList("concepts", "locations", "roles");
+		List<String> args = new ArrayList<>(Arrays.asList("--opt1", "--domains='concepts,roles'"));
+		
+		assertThat(new ValidateConfigurationsMojo().getRequestedDomains(domains, args), is(Arrays.asList("concepts", "roles")));
+		assertThat(args, is(Arrays.asList("--opt1")));
+		
+		args = new ArrayList<>(Arrays.asList("--domains='!concepts'"));
+		assertThat(new ValidateConfigurationsMojo().getRequestedDomains(domains, args), is(Arrays.asList("locations", "roles")));
+		assertThat(args.size(), is(0));
+	}
+	
+	@Test
+	public void needsConcepts_shouldBeTrueForDomainsReferringToConceptsOrUnknownDomains() {
+		InizDomains inizDomains = new InizDomains();
+		
+		assertThat(mojo.needsConcepts(Arrays.asList("globalproperties", "locations"), inizDomains), is(false));
+		assertThat(mojo.needsConcepts(Arrays.asList("globalproperties", "htmlforms"), inizDomains), is(true));
+		assertThat(mojo.needsConcepts(Arrays.asList("concepts"), inizDomains), is(true));
+		assertThat(mojo.needsConcepts(Arrays.asList("mydomain"), inizDomains), is(true));
+	}
 }
@@ -0,0 +1,69 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+public class ValidationReportTest {
+
+	private File configDir = new File(getClass().getClassLoader().getResource("config-test-parent/configuration").getPath());
+
+	@Test
+	public void testFileTimesAreFoundInLogAndSummedByDomain() throws Exception {
+		File logFile = Files.createTempFile("initializer", ".log").toFile();
+		try {
+			FileUtils.writeLines(logFile, Arrays.asList(
+					"2024-01-31 12:00:00,000 INFO - Loading domain1",
+					"2024-01-31 12:00:00,100 INFO - Loading " + new File(configDir, "domain1/constantsTest.xml").getAbsolutePath(),
+					"2024-01-31 12:00:02,100 INFO - Still loading constantsTest.xml",
+					"2024-01-31 12:00:03,100 INFO - Loading domain2/file-from-parent.txt",
+					"2024-01-31 12:00:03,600 INFO - Done"));
+			ValidationReport report = new ValidationReport();
+			Assert.assertEquals(2, report.addFileTimes(logFile, configDir));
+
+			Map<String, Object> json = report.toJson();
+			Map<?, ?> slowestFiles = (Map<?, ?>) json.get("slowestFiles");
+			Assert.assertEquals(Arrays.asList("domain1/constantsTest.xml", "domain2/file-from-parent.txt"), Arrays.asList(slowestFiles.keySet().toArray()));
+			Assert.assertEquals(3000L, slowestFiles.get("domain1/constantsTest.xml"));
+			Assert.assertEquals(500L, slowestFiles.get("domain2/file-from-parent.txt"));
+			Assert.assertEquals(3000L, ((Map<?, ?>) json.get("domainMillis")).get("domain1"));
+		}
+		finally {
+			logFile.delete();
+		}
+	}
+
+	@Test
+	public void testReportsAreWrittenWithFailures() throws Exception {
+		Result result = new Result();
+		RunListener listener = result.createListener();
+		listener.testFailure(new Failure(Description.createSuiteDescription("domain1"), new RuntimeException("Invalid <row>")));
+		ValidationReport report = new ValidationReport();
+		report.addRun(Collections.singletonList("domain1"), result, 1500);
+		report.addRun(null, new Result(), 10);
+		Assert.assertFalse(report.wasSuccessful());
+		Assert.assertEquals(1, report.getFailures().size());
+
+		File reportDir = Files.createTempDirectory("validation").toFile();
+		try {
+			report.write(reportDir);
+			String xml = FileUtils.readFileToString(new File(reportDir, ValidationReport.JUNIT_REPORT_FILE), "UTF-8");
+			Assert.assertTrue(xml.contains("<testsuite name=\"validate-configurations[domain1]\" tests=\"1\" failures=\"1\""));
+			Assert.assertTrue(xml.contains("message=\"Invalid &lt;row&gt;\""));
+			Assert.assertTrue(new File(reportDir, ValidationReport.JSON_REPORT_FILE).exists());
+		}
+		finally {
+			FileUtils.deleteDirectory(reportDir);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+public class ValidatorDaemonTest {
+
+	/**
+	 * A daemon which returns the given results in turn rather than running the Validator
+	 */
+	private static class TestDaemon extends ValidatorDaemon {
+
+		private final Deque<Result> results = new ArrayDeque<>();
+
+		private final List<List<String>> validatedArgs = Collections.synchronizedList(new ArrayList<>());
+
+		TestDaemon(File stateFile) {
+			super(stateFile, 60000, "test-version");
+		}
+
+		@Override
+		protected Map<String, Object> validate(List<String> args) {
+			validatedArgs.add(args);
+			return ValidatorLauncher.toJson(results.remove());
+		}
+	}
+
+	private File stateDir;
+
+	private File stateFile;
+
+	private TestDaemon daemon;
+
+	private Thread daemonThread;
+
+	@Before
+	public void startDaemon() throws Exception {
+		stateDir = Files.createTempDirectory("validator-daemon").toFile();
+		stateFile = new File(stateDir, "validator-daemon.json");
+		daemon = new TestDaemon(stateFile);
+		daemonThread = new Thread(() -> {
+			try {
+				daemon.run();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		daemonThread.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!stateFile.exists() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertTrue(stateFile.exists());
+	}
+
+	@After
+	public void stopDaemon() throws Exception {
+		new ValidatorDaemonClient(stateFile).stop();
+		daemonThread.join(20000);
+		FileUtils.deleteDirectory(stateDir);
+	}
+
+	@Test
+	public void testStatusIsReportedOnlyWithTheToken() throws Exception {
+		JsonNode status = new ValidatorDaemonClient(stateFile).status();
+		Assert.assertEquals("test-version", status.path("version").asText());
+		Assert.assertEquals(0, status.path("validations").asInt());
+
+		ValidatorDaemonClient.State state = ValidatorDaemonClient.State.load(stateFile);
+		state.setToken("not-the-token");
+		File otherStateFile = new File(stateDir, "other.json");
+		state.save(otherStateFile);
+		Assert.assertNull(new ValidatorDaemonClient(otherStateFile).status());
+	}
+
+	@Test
+	public void testEachValidationReturnsOnlyItsOwnResult() throws Exception {
+		Result failed = new Result();
+		RunListener listener = failed.createListener();
+		listener.testFailure(new Failure(Description.createSuiteDescription("domain1"), new RuntimeException("Invalid row")));
+		daemon.results.add(failed);
+		daemon.results.add(new Result());
+
+		ValidatorDaemonClient client = new ValidatorDaemonClient(stateFile);
+		Result first = client.validate(Arrays.asList("--domains=domain1"));
+		Assert.assertFalse(first.wasSuccessful());
+		Assert.assertEquals("Invalid row", first.getFailures().get(0).getMessage());
+		Result second = client.validate(Arrays.asList("--domains=domain2"));
+		Assert.assertTrue(second.wasSuccessful());
+		Assert.assertEquals(Arrays.asList(Arrays.asList("--domains=domain1"), Arrays.asList("--domains=domain2")), daemon.validatedArgs);
+	}
+
+	@Test
+	public void testStartUsesRunningDaemonOfTheSameVersion() throws Exception {
+		ValidatorDaemonClient client = new ValidatorDaemonClient(stateFile);
+		String pid = client.status().path("pid").asText();
+		// A daemon started with this classpath would fail to start, so the running daemon must be used
+		client.start("no-such-classpath", null, 1, "test-version", new SystemStreamLog());
+		Assert.assertEquals(pid, client.status().path("pid").asText());
+		Assert.assertTrue(client.getLockFile().exists());
+	}
+
+	@Test
+	public void testStopRemovesStateFile() throws Exception {
+		Assert.assertTrue(new ValidatorDaemonClient(stateFile).stop());
+		daemonThread.join(20000);
+		Assert.assertFalse(daemonThread.isAlive());
+		Assert.assertFalse(stateFile.exists());
+		Assert.assertFalse(new ValidatorDaemonClient(stateFile).stop());
+	}
+
+	@Test
+	public void testValidationTimesOutIfDaemonDoesNotRespond() throws Exception {
+		try (ServerSocket unresponsive = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			ValidatorDaemonClient.State state = ValidatorDaemonClient.State.load(stateFile);
+			state.setPort(unresponsive.getLocalPort());
+			File unresponsiveStateFile = new File(stateDir, "unresponsive.json");
+			state.save(unresponsiveStateFile);
+			ValidatorDaemonClient client = new ValidatorDaemonClient(unresponsiveStateFile);
+			client.setValidateTimeoutMillis(500);
+			Thread accepter = new Thread(() -> {
+				try (Socket socket = unresponsive.accept()) {
+					Thread.sleep(5000);
+				}
+				catch (Exception e) {
+					// The client has given up
+				}
+			});
+			accepter.setDaemon(true);
+			accepter.start();
+			try {
+				client.validate(Arrays.asList("--domains=domain1"));
+				Assert.fail("Expected the validation to time out");
+			}
+			catch (IOException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().contains("did not complete the validation within 500ms"));
+			}
+		}
+	}
+
+	@Test
+	public void testMojoReportsStatusAndStopsDaemon() throws Exception {
+		String stateFileOption = "-DvalidatorDaemonStateFile=" + stateFile.getAbsolutePath();
+		ConfigProject statusProject = new ConfigProject("config-test-parent");
+		statusProject.executeGoal("openmrs-packager:validator-daemon", "-N", "-DdaemonCommand=status", stateFileOption);
+		statusProject.getVerifier().verifyTextInLog("Version: test-version");
+
+		ConfigProject stopProject = new ConfigProject("config-test-parent");
+		stopProject.executeGoal("openmrs-packager:validator-daemon", "-N", "-DdaemonCommand=stop", stateFileOption);
+		stopProject.getVerifier().verifyTextInLog("Validator daemon stopped");
+		daemonThread.join(20000);
+		Assert.assertFalse(stateFile.exists());
+	}
+}
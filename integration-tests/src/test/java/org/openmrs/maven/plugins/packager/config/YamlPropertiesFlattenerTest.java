@@ -0,0 +1,77 @@
+package org.openmrs.maven.plugins.packager.config;
+
+import java.util.Properties;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class YamlPropertiesFlattenerTest {
+
+	private Properties flatten(String yaml) throws Exception {
+		Properties p = new Properties();
+		try (JsonParser parser = new YAMLFactory().createParser(yaml)) {
+			new YamlPropertiesFlattener(new SystemStreamLog()).flatten(parser, p);
+		}
+		return p;
+	}
+
+	@Test
+	public void testNestedObjectsAndArraysAreFlattened() throws Exception {
+		Properties p = flatten(
+				"textConstant: textValue\n" +
+				"constantWithProperties:\n" +
+				"  property1: propertyValue1\n" +
+				"  property3:\n" +
+				"    propertyValue3Key: propertyValue3Value\n" +
+				"constantArray:\n" +
+				"  - arrayValue1\n" +
+				"  - nested: nestedValue\n" +
+				"  - [innerValue1, innerValue2]\n"
+		);
+		Assert.assertEquals(6, p.size());
+		Assert.assertEquals("textValue", p.get("textConstant"));
+		Assert.assertEquals("propertyValue1", p.get("constantWithProperties.property1"));
+		Assert.assertEquals("propertyValue3Value", p.get("constantWithProperties.property3.propertyValue3Key"));
+		Assert.assertEquals("arrayValue1", p.get("constantArray[0]"));
+		Assert.assertEquals("nestedValue", p.get("constantArray[1].nested"));
+		Assert.assertEquals("innerValue2", p.get("constantArray[2][1]"));
+	}
+
+	@Test
+	public void testOnlyTextValuesAreAdded() throws Exception {
+		Properties p = flatten("number: 5\nbool: true\nnothing: null\nemptyObject: {}\nemptyArray: []\nquoted: '5'\n");
+		Assert.assertEquals(1, p.size());
+		Assert.assertEquals("5", p.get("quoted"));
+	}
+
+	@Test
+	public void testLaterDuplicateValuesReplaceEarlierValues() throws Exception {
+		Properties p = flatten("a:\n  x: '1'\n  y: '2'\na: replaced\nb: first\nb:\n  c: second\n");
+		Assert.assertEquals(2, p.size());
+		Assert.assertEquals("replaced", p.get("a"));
+		Assert.assertEquals("second", p.get("b.c"));
+	}
+
+	@Test
+	public void testDuplicatesOnlyReplaceValuesWithinTheirOwnName() throws Exception {
+		Properties p = new Properties();
+		p.setProperty("a.fromEarlierFile", "kept");
+		try (JsonParser parser = new YAMLFactory().createParser("a:\n  x: '1'\nab: sibling\na:\n  y: '2'\n")) {
+			new YamlPropertiesFlattener(new SystemStreamLog()).flatten(parser, p);
+		}
+		Assert.assertEquals(3, p.size());
+		Assert.assertEquals("kept", p.get("a.fromEarlierFile"));
+		Assert.assertEquals("sibling", p.get("ab"));
+		Assert.assertEquals("2", p.get("a.y"));
+	}
+
+	@Test
+	public void testOnlyTheFirstDocumentIsRead() throws Exception {
+		Properties p = flatten("a: first\n---\nb: second\n");
+		Assert.assertEquals(1, p.size());
+		Assert.assertEquals("first", p.get("a"));
+	}
+}
@@ -19,7 +19,17 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
@@ -27,10 +37,16 @@ import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.resolution.ArtifactRequest;
 import org.twdata.maven.mojoexecutor.MojoExecutor;
 
 /**
@@ -44,9 +60,20 @@ public abstract class AbstractPackagerConfigMojo extends AbstractMojo {
 	@Parameter(defaultValue = "${session}", readonly = true)
 	private MavenSession mavenSession;
 
+	@Parameter(defaultValue = "${mojoExecution}", readonly = true)
+	private MojoExecution mojoExecution;
+
+	@Parameter(defaultValue = "${plugin}", readonly = true)
+	private PluginDescriptor pluginDescriptor;
+
 	@Component
 	private BuildPluginManager pluginManager;
 
+	@Component
+	private RepositorySystem repositorySystem;
+
+	private final BuildMetrics metrics = new BuildMetrics();
+
 	/**
 	 * Convenience method to get the execution environment for invoking other Maven plugins
 	 */
@@ -54,6 +81,45 @@ public abstract class AbstractPackagerConfigMojo extends AbstractMojo {
 		return executionEnvironment(mavenProject, mavenSession, pluginManager);
 	}
 
+	/**
+	 * Convenience method to get the project being built
+	 */
+	protected MavenProject getMavenProject() {
+		return mavenProject;
+	}
+
+	/**
+	 * Convenience method to get the current Maven session
+	 */
+	protected MavenSession getMavenSession() {
+		return mavenSession;
+	}
+
+	/**
+	 * Convenience method to get the descriptor of this plugin
+	 */
+	protected PluginDescriptor getPluginDescriptor() {
+		return pluginDescriptor;
+	}
+
+	/**
+	 * @return the classpath of this plugin, for running parts of it, such as the Validator, in another JVM
+	 */
+	protected String getPluginClasspath() throws MojoExecutionException {
+		Set<String> entries = new LinkedHashSet<>();
+		try {
+			entries.add(new File(getClass().getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath());
+		}
+		catch (URISyntaxException e) {
+			throw new MojoExecutionException("Unable to determine the location of this plugin", e);
+		}
+		if (pluginDescriptor != null) {
+			pluginDescriptor.getArtifacts().stream().filter(a -> a.getFile() != null)
+					.forEach(a -> entries.add(a.getFile().getAbsolutePath()));
+		}
+		return String.join(File.pathSeparator, entries);
+	}
+
 	/**
 	 * Convenience method to get the source directory for this project
 	 */
@@ -111,6 +177,51 @@ public abstract class AbstractPackagerConfigMojo extends AbstractMojo {
 		return new File(getCompiledConfigurationDir(), "constants.properties");
 	}
 
+	/**
+	 * @return the directory which contains the constants and compiled configuration of each variant
+	 */
+	public File getVariantsDir() {
+		return new File(getPluginBuildDir(), "variants");
+	}
+
+	/**
+	 * @return the file which will contain the constants of the given variant
+	 */
+	public File getVariantConstantsFile(String variantId) {
+		return new File(new File(getVariantsDir(), variantId), "constants.properties");
+	}
+
+	/**
+	 * @return the directory which will contain the compiled configuration of the given variant
+	 */
+	public File getVariantConfigurationDir(String variantId) {
+		return new File(new File(getVariantsDir(), variantId), "configuration");
+	}
+
+	/**
+	 * @return the ids of all variants for which constants have been generated, in alphabetical order
+	 */
+	public List<String> getVariantIds() {
+		List<String> ret = new ArrayList<>();
+		File[] variantDirs = getVariantsDir().listFiles(File::isDirectory);
+		if (variantDirs != null) {
+			for (File variantDir : variantDirs) {
+				if (getVariantConstantsFile(variantDir.getName()).exists()) {
+					ret.add(variantDir.getName());
+				}
+			}
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	/**
+	 * @return the file which records the state of the last incremental compilation
+	 */
+	public File getCompileManifestFile() {
+		return new File(getPluginBuildDir(), "compile-manifest.json");
+	}
+
 	/**
 	 * Convenience method to load properties from a file
 	 */
@@ -128,17 +239,114 @@ public abstract class AbstractPackagerConfigMojo extends AbstractMojo {
 	}
 
 	/**
-	 * Convenience method to write properties to a file
+	 * Convenience method to write properties to a file.  Any existing file is replaced rather than overwritten, so that
+	 * a file hard-linked into another configuration is never modified.
 	 */
 	public void savePropertiesToFile(Properties properties, File file) throws MojoExecutionException {
+		Properties toStore = properties;
+		if (!(toStore instanceof ConstantProperties)) {
+			toStore = new ConstantProperties();
+			toStore.putAll(properties);
+		}
+		try {
+			Files.deleteIfExists(file.toPath());
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to replace properties file: " + file, e);
+		}
 		try (FileOutputStream out = new FileOutputStream(file)) {
-			properties.store(out, null);
+			toStore.store(out, null);
 		}
 		catch (Exception e) {
 			throw new MojoExecutionException("Unable to write properties to file: " + file, e);
 		}
 	}
 
+	/**
+	 * Creates a filter which will replace variables with the given constants when copying resources
+	 * This mirrors the values made available by the maven resources plugin, in which the project properties and the
+	 * system and user properties of the session take precedence over any filter file, and in which project
+	 * expressions such as ${project.version} can be used
+	 */
+	public ResourceFilter createResourceFilter(Properties constants) {
+		Properties values = new Properties();
+		values.putAll(constants);
+		if (mavenProject != null) {
+			values.putAll(mavenProject.getProperties());
+		}
+		if (mavenSession != null) {
+			values.putAll(mavenSession.getSystemProperties());
+			values.putAll(mavenSession.getUserProperties());
+		}
+		if (mavenProject != null) {
+			Properties projectValues = new Properties();
+			projectValues.put("groupId", mavenProject.getGroupId());
+			projectValues.put("artifactId", mavenProject.getArtifactId());
+			projectValues.put("version", mavenProject.getVersion());
+			projectValues.put("basedir", mavenProject.getBasedir().getAbsolutePath());
+			projectValues.put("build.directory", mavenProject.getBuild().getDirectory());
+			projectValues.put("build.finalName", mavenProject.getBuild().getFinalName());
+			if (mavenProject.getName() != null) {
+				projectValues.put("name", mavenProject.getName());
+			}
+			if (mavenProject.getDescription() != null) {
+				projectValues.put("description", mavenProject.getDescription());
+			}
+			for (String key : projectValues.stringPropertyNames()) {
+				for (String prefix : new String[] {"project.", "pom."}) {
+					if (!values.containsKey(prefix + key)) {
+						values.put(prefix + key, projectValues.getProperty(key));
+					}
+				}
+			}
+			if (!values.containsKey("basedir")) {
+				values.put("basedir", mavenProject.getBasedir().getAbsolutePath());
+			}
+		}
+		ResourceFilter filter = new ResourceFilter(values);
+		filter.setMetrics(metrics);
+		return filter;
+	}
+
+	/**
+	 * @return the metrics recorded during the execution of this mojo
+	 */
+	protected BuildMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the file to which the metrics of this mojo are reported, named after its goal
+	 */
+	public File getMetricsReportFile() {
+		String goal = (mojoExecution != null ? mojoExecution.getGoal() : getClass().getSimpleName());
+		return new File(getPluginBuildDir(), "metrics/" + goal + ".json");
+	}
+
+	/**
+	 * Writes the metrics recorded during the execution of this mojo as json in the plugin build directory, so that
+	 * they can be compared across builds.  Failure to write the report is logged rather than failing the build.
+	 */
+	protected void writeMetricsReport() {
+		File reportFile = null;
+		Map<String, Object> details = new LinkedHashMap<>();
+		if (mojoExecution != null) {
+			details.put("goal", mojoExecution.getGoal());
+			details.put("executionId", mojoExecution.getExecutionId());
+		}
+		if (mavenProject != null) {
+			details.put("project", mavenProject.getGroupId() + ":" + mavenProject.getArtifactId() + ":" + mavenProject.getVersion());
+		}
+		try {
+			reportFile = getMetricsReportFile();
+			metrics.writeReport(reportFile, details);
+			getLog().debug("Wrote build metrics to " + reportFile);
+		}
+		catch (IOException | RuntimeException e) {
+			getLog().warn("Unable to write build metrics to " + reportFile + ": " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Executes the maven dependency plugin, unpacking dependent artifacts into a standard directory structure
 	 * in the build directory so that these can be pulled in as a appropriate to the final configurations
@@ -165,6 +373,36 @@ public abstract class AbstractPackagerConfigMojo extends AbstractMojo {
 		);
 	}
 
+	/**
+	 * Resolves the zip artifact for the given dependency, downloading it into the local repository if needed.
+	 * Unlike executing the maven dependency plugin, this is safe to call concurrently for different dependencies
+	 * @return the resolved artifact file
+	 */
+	public File resolveDependency(ConfigDependency d) throws MojoExecutionException {
+		Artifact artifact = new DefaultArtifact(d.getGroupId(), d.getArtifactId(), "zip", d.getVersion());
+		ArtifactRequest request = new ArtifactRequest(artifact, mavenProject.getRemoteProjectRepositories(), null);
+		try {
+			return repositorySystem.resolveArtifact(mavenSession.getRepositorySession(), request).getArtifact().getFile();
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Unable to resolve dependency: " + d, e);
+		}
+	}
+
+	/**
+	 * Extracts all entries in the given zip file into the given directory, overwriting any existing files
+	 */
+	public void extractArchive(File zipFile, File unpackDir) throws MojoExecutionException {
+		getLog().info("Unpacking " + zipFile + " to " + unpackDir);
+		try {
+			int numExtracted = ArchiveUtils.extract(zipFile, unpackDir);
+			getLog().debug("Unpacked " + numExtracted + " files from " + zipFile);
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Unable to unpack " + zipFile + " to " + unpackDir, e);
+		}
+	}
+
 	/**
 	 * @return a standard Yaml mapper that can be used by all Yaml processing Mojos
 	 */
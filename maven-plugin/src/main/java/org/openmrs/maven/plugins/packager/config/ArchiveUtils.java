@@ -0,0 +1,60 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Utility methods for working with zip archives
+ */
+public class ArchiveUtils {
+
+	/**
+	 * Extracts all entries in the given zip file into the given directory, overwriting any existing files
+	 * @return the number of files extracted
+	 */
+	public static int extract(File zipFile, File targetDir) throws IOException {
+		int numExtracted = 0;
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			Path targetPath = targetDir.toPath().toAbsolutePath().normalize();
+			Files.createDirectories(targetPath);
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				Path entryPath = targetPath.resolve(entry.getName()).normalize();
+				if (!entryPath.startsWith(targetPath)) {
+					throw new IOException("Zip entry " + entry.getName() + " is outside of " + targetDir);
+				}
+				if (entry.isDirectory()) {
+					Files.createDirectories(entryPath);
+				}
+				else {
+					Files.createDirectories(entryPath.getParent());
+					try (InputStream in = zip.getInputStream(entry)) {
+						Files.copy(in, entryPath, StandardCopyOption.REPLACE_EXISTING);
+					}
+					if (entry.getTime() != -1) {
+						entryPath.toFile().setLastModified(entry.getTime());
+					}
+					numExtracted++;
+				}
+			}
+		}
+		return numExtracted;
+	}
+}
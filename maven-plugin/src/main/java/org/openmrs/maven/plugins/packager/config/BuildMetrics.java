@@ -0,0 +1,203 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Records where the time goes in a build, so that it can be reported and compared across builds.
+ *   - phases, such as unpacking dependencies or filtering, record their total wall time and how often they ran.
+ *     Phases may overlap, such as when variants are compiled concurrently, so their times need not add up.
+ *   - counters record quantities such as files scanned, filtered and copied, bytes read and written, and cache hits
+ *   - the peak heap used by the JVM since the metrics were created, which is sampled at the start and end of each
+ *     phase and compared with the peaks that the JVM records for its heap pools.  The JVM's peaks are shared by every
+ *     goal and plugin in a build, and are never reset here, so only those that have risen since the metrics were
+ *     created are counted as the peak of this goal
+ * All methods may be called from several threads at once.
+ */
+public class BuildMetrics {
+
+	public static final String FILES_SCANNED = "filesScanned";
+	public static final String FILES_FILTERED = "filesFiltered";
+	public static final String FILES_COPIED = "filesCopied";
+	public static final String FILES_UNCHANGED = "filesUnchanged";
+	public static final String FILES_LINKED = "filesLinked";
+	public static final String ARCHIVE_FILES = "archiveFiles";
+	public static final String ARCHIVE_FILES_REUSED = "archiveFilesReused";
+	public static final String BYTES_READ = "bytesRead";
+	public static final String BYTES_WRITTEN = "bytesWritten";
+	public static final String CACHE_HITS = "cacheHits";
+	public static final String CACHE_MISSES = "cacheMisses";
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final Map<String, AtomicLong> phaseMillis = new ConcurrentHashMap<>();
+
+	private final Map<String, AtomicLong> phaseCounts = new ConcurrentHashMap<>();
+
+	private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	private final Map<String, Long> baselinePoolPeaks = new HashMap<>();
+
+	private final AtomicLong sampledPeakHeapBytes = new AtomicLong();
+
+	public BuildMetrics() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				baselinePoolPeaks.put(pool.getName(), pool.getPeakUsage().getUsed());
+			}
+		}
+		sampleHeap();
+	}
+
+	/**
+	 * Starts timing the given phase, which is recorded when the returned timer is closed, eg:
+	 * try (BuildMetrics.Timer timer = metrics.time("unpack")) { ... }
+	 */
+	public Timer time(String phase) {
+		return new Timer(phase);
+	}
+
+	/**
+	 * Adds the given duration to the total for the given phase
+	 */
+	public void addPhase(String phase, long millis) {
+		sampleHeap();
+		phaseCounts.computeIfAbsent(phase, k -> new AtomicLong()).incrementAndGet();
+		phaseMillis.computeIfAbsent(phase, k -> new AtomicLong()).addAndGet(millis);
+	}
+
+	/**
+	 * Adds the given amount to the given counter
+	 */
+	public void increment(String counter, long amount) {
+		counters.computeIfAbsent(counter, k -> new AtomicLong()).addAndGet(amount);
+	}
+
+	/**
+	 * Adds one to the given counter
+	 */
+	public void increment(String counter) {
+		increment(counter, 1);
+	}
+
+	/**
+	 * @return the total wall time of the given phase in milliseconds, or 0 if it has not run
+	 */
+	public long getPhaseMillis(String phase) {
+		AtomicLong millis = phaseMillis.get(phase);
+		return millis == null ? 0 : millis.get();
+	}
+
+	/**
+	 * @return the value of the given counter, or 0 if it has not been incremented
+	 */
+	public long getCounter(String counter) {
+		AtomicLong value = counters.get(counter);
+		return value == null ? 0 : value.get();
+	}
+
+	/**
+	 * @return the peak heap used by the JVM since these metrics were created, in bytes.  This is the larger of the
+	 * heap sampled at the start and end of each phase, and the sum of the peaks of each heap memory pool that has
+	 * risen since these metrics were created.  The pools may have peaked at different times, so the latter may
+	 * overstate the true peak slightly, while a peak between samples in a pool that peaked higher before these
+	 * metrics were created is missed
+	 */
+	public long getPeakHeapBytes() {
+		sampleHeap();
+		long poolPeaks = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			Long baselinePeak = baselinePoolPeaks.get(pool.getName());
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				long peak = pool.getPeakUsage().getUsed();
+				poolPeaks += (baselinePeak == null || peak > baselinePeak ? peak : pool.getUsage().getUsed());
+			}
+		}
+		return Math.max(sampledPeakHeapBytes.get(), poolPeaks);
+	}
+
+	/**
+	 * Records the heap currently used, if it is the most used since these metrics were created
+	 */
+	private void sampleHeap() {
+		long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		sampledPeakHeapBytes.accumulateAndGet(used, Math::max);
+	}
+
+	/**
+	 * @return the metrics recorded so far, in a form suitable for writing as json
+	 */
+	public Map<String, Object> toReport() {
+		Map<String, Object> phases = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> e : phaseMillis.entrySet()) {
+			Map<String, Object> phase = new LinkedHashMap<>();
+			phase.put("millis", e.getValue().get());
+			phase.put("count", phaseCounts.get(e.getKey()).get());
+			phases.put(e.getKey(), phase);
+		}
+		Map<String, Object> counterValues = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+			counterValues.put(e.getKey(), e.getValue().get());
+		}
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startTime", startTime);
+		report.put("totalMillis", System.currentTimeMillis() - startTime);
+		report.put("peakHeapBytes", getPeakHeapBytes());
+		report.put("phases", phases);
+		report.put("counters", counterValues);
+		return report;
+	}
+
+	/**
+	 * Writes the metrics recorded so far as json, along with the given details of the build
+	 */
+	public void writeReport(File file, Map<String, Object> details) throws IOException {
+		Map<String, Object> report = new LinkedHashMap<>(details);
+		report.putAll(toReport());
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.enable(SerializationFeature.INDENT_OUTPUT);
+		mapper.writeValue(file, report);
+	}
+
+	/**
+	 * Times a single run of a phase
+	 */
+	public class Timer implements AutoCloseable {
+
+		private final String phase;
+		private final long start = System.nanoTime();
+
+		private Timer(String phase) {
+			this.phase = phase;
+			sampleHeap();
+		}
+
+		@Override
+		public void close() {
+			addPhase(phase, (System.nanoTime() - start) / 1000000);
+		}
+	}
+}
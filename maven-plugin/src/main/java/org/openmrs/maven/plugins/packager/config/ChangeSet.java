@@ -0,0 +1,166 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The set of paths that were created, modified, or deleted while watching for changes.
+ * Repeated events for the same path are coalesced into a single change that reflects the net effect, for example
+ * a file that is created and then modified is recorded as created, and a file that is deleted and then created
+ * again is recorded as modified.  A file that is created and then deleted again is not recorded at all.
+ */
+public class ChangeSet {
+
+	public enum Kind {
+		CREATED, MODIFIED, DELETED
+	}
+
+	private final Map<Path, Kind> changes = new LinkedHashMap<>();
+
+	private int numEvents = 0;
+
+	private boolean overflow = false;
+
+	/**
+	 * Records an event of the given watch event kind for the given path
+	 */
+	public void add(WatchEvent.Kind<?> eventKind, Path path) {
+		Kind kind = Kind.MODIFIED;
+		if (eventKind == ENTRY_CREATE) {
+			kind = Kind.CREATED;
+		}
+		else if (eventKind == ENTRY_DELETE) {
+			kind = Kind.DELETED;
+		}
+		add(kind, path);
+	}
+
+	/**
+	 * Records a change of the given kind for the given path, coalescing it with any change already recorded
+	 */
+	public void add(Kind kind, Path path) {
+		numEvents++;
+		Kind existing = changes.get(path);
+		if (existing == null || existing == kind) {
+			changes.put(path, kind);
+		}
+		else if (existing == Kind.CREATED) {
+			if (kind == Kind.DELETED) {
+				changes.remove(path);
+			}
+		}
+		else if (existing == Kind.DELETED) {
+			changes.put(path, Kind.MODIFIED);
+		}
+		else {
+			changes.put(path, kind == Kind.DELETED ? Kind.DELETED : Kind.MODIFIED);
+		}
+	}
+
+	/**
+	 * Records all of the changes in the given change set, as though they occurred after those already recorded
+	 */
+	public void addAll(ChangeSet other) {
+		for (Map.Entry<Path, Kind> e : other.changes.entrySet()) {
+			add(e.getValue(), e.getKey());
+		}
+		if (other.overflow) {
+			markOverflow();
+		}
+		numEvents += other.getNumCoalesced();
+	}
+
+	/**
+	 * Indicates that events were lost, so that the recorded changes are incomplete
+	 */
+	public void markOverflow() {
+		numEvents++;
+		overflow = true;
+	}
+
+	/**
+	 * @return true if no changes or lost events have been recorded
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty() && !overflow;
+	}
+
+	/**
+	 * Removes all recorded changes
+	 */
+	public void clear() {
+		changes.clear();
+		numEvents = 0;
+		overflow = false;
+	}
+
+	/**
+	 * @return all paths with a recorded change, in the order in which they first changed
+	 */
+	public Set<Path> getPaths() {
+		return changes.keySet();
+	}
+
+	public List<Path> getCreated() {
+		return getPaths(Kind.CREATED);
+	}
+
+	public List<Path> getModified() {
+		return getPaths(Kind.MODIFIED);
+	}
+
+	public List<Path> getDeleted() {
+		return getPaths(Kind.DELETED);
+	}
+
+	private List<Path> getPaths(Kind kind) {
+		List<Path> ret = new ArrayList<>();
+		for (Map.Entry<Path, Kind> e : changes.entrySet()) {
+			if (e.getValue() == kind) {
+				ret.add(e.getKey());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the number of events that were recorded
+	 */
+	public int getNumEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * @return the number of events that were coalesced into an existing change, or discarded
+	 */
+	public int getNumCoalesced() {
+		return numEvents - changes.size() - (overflow ? 1 : 0);
+	}
+
+	public boolean isOverflow() {
+		return overflow;
+	}
+
+	@Override
+	public String toString() {
+		return getCreated().size() + " created, " + getModified().size() + " modified, " + getDeleted().size()
+				+ " deleted (" + getNumCoalesced() + " events coalesced)";
+	}
+}
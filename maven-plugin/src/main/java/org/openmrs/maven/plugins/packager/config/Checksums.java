@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility methods for computing the checksums used to detect changed files
+ */
+public class Checksums {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * @return the hex-encoded SHA-256 checksum of the contents of the given file
+	 */
+	public static String sha256(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return the hex-encoded SHA-256 checksum of the given string, encoded as UTF-8
+	 */
+	public static String sha256(String text) {
+		return toHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A persistent cache of CIEL dictionaries prepared for the Validator, shared across builds.
+ *   - the checksum of each CIEL file is recorded with its size and last modified date, so that an unchanged file is
+ *     not read again to compute it
+ *   - a CIEL file distributed as a zip or gzip archive is extracted once into a directory named by its checksum, and
+ *     the SQL file within it is given to the Validator in later builds
+ *   - entries which have not been used for longer than the retention period are evicted
+ */
+public class CielCache {
+
+	private static final String ENTRIES_DIR = "entries";
+	private static final String CHECKSUMS_DIR = "checksums";
+	private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+	private final File cacheDir;
+	private final Log log;
+
+	public CielCache(File cacheDir, Log log) {
+		this.cacheDir = cacheDir;
+		this.log = log;
+	}
+
+	/**
+	 * @return the SHA-256 checksum of the given CIEL file, recomputed only if its size or last modified date change
+	 */
+	public String getChecksum(File cielFile) throws IOException {
+		File checksumFile = new File(new File(cacheDir, CHECKSUMS_DIR), Checksums.sha256(cielFile.getAbsolutePath()) + ".sha256");
+		String fingerprint = cielFile.length() + ":" + cielFile.lastModified();
+		if (checksumFile.exists()) {
+			String[] recorded = readString(checksumFile).split(" ");
+			if (recorded.length == 2 && recorded[1].equals(fingerprint)) {
+				return recorded[0];
+			}
+		}
+		log.info("Computing checksum of " + cielFile);
+		String checksum = Checksums.sha256(cielFile);
+		writeString(checksumFile, checksum + " " + fingerprint);
+		return checksum;
+	}
+
+	/**
+	 * @return the file to give to the Validator for the given CIEL file, which is the SQL file extracted into the cache
+	 * if the CIEL file is an archive, or the CIEL file itself otherwise
+	 */
+	public File prepare(File cielFile) throws IOException {
+		String name = cielFile.getName().toLowerCase();
+		if (!name.endsWith(".zip") && !name.endsWith(".gz")) {
+			return cielFile;
+		}
+		String checksum = getChecksum(cielFile);
+		File entryDir = new File(new File(cacheDir, ENTRIES_DIR), checksum);
+		if (entryDir.isDirectory()) {
+			log.info("CIEL file " + cielFile.getName() + " found in CIEL cache " + entryDir);
+		}
+		else {
+			extractToCache(cielFile, entryDir);
+		}
+		writeString(getLastUsedFile(entryDir), Long.toString(System.currentTimeMillis()));
+		List<File> sqlFiles = new ArrayList<>(FileUtils.listFiles(entryDir, new String[] { "sql" }, true));
+		if (sqlFiles.isEmpty()) {
+			throw new IOException("CIEL archive " + cielFile + " does not contain a .sql file");
+		}
+		if (sqlFiles.size() > 1) {
+			Collections.sort(sqlFiles);
+			log.warn("CIEL archive " + cielFile + " contains " + sqlFiles.size() + " .sql files, using " + sqlFiles.get(0).getName());
+		}
+		return sqlFiles.get(0);
+	}
+
+	/**
+	 * Removes entries which have not been used within the retention period
+	 */
+	public void evict() throws IOException {
+		File[] entries = new File(cacheDir, ENTRIES_DIR).listFiles(File::isDirectory);
+		if (entries == null) {
+			return;
+		}
+		for (File entry : entries) {
+			File lastUsedFile = getLastUsedFile(entry);
+			long lastUsed = getLastUsed(entry, lastUsedFile);
+			if (System.currentTimeMillis() - lastUsed > RETENTION_MILLIS) {
+				log.info("Evicting " + entry.getName() + " from CIEL cache");
+				Files.deleteIfExists(lastUsedFile.toPath());
+				FileUtils.deleteDirectory(entry);
+			}
+		}
+	}
+
+	/**
+	 * @return when the given entry was last used, or when it was extracted if this was not recorded or cannot be read,
+	 * as when a build was interrupted while recording it
+	 */
+	private long getLastUsed(File entry, File lastUsedFile) {
+		if (lastUsedFile.exists()) {
+			try {
+				return Long.parseLong(readString(lastUsedFile));
+			}
+			catch (IOException | NumberFormatException e) {
+				log.debug("Unable to read " + lastUsedFile + ", using the date " + entry.getName() + " was extracted");
+			}
+		}
+		return entry.lastModified();
+	}
+
+	/**
+	 * Extracts into a temporary directory which is then moved into place, so that a partially extracted
+	 * entry is never visible to this or another concurrent build
+	 */
+	private void extractToCache(File cielFile, File entryDir) throws IOException {
+		File tempDir = new File(entryDir.getParentFile(), entryDir.getName() + "." + UUID.randomUUID() + ".tmp");
+		log.info("Extracting " + cielFile + " into CIEL cache");
+		try {
+			if (cielFile.getName().toLowerCase().endsWith(".zip")) {
+				ArchiveUtils.extract(cielFile, tempDir);
+			}
+			else {
+				String name = cielFile.getName().substring(0, cielFile.getName().length() - ".gz".length());
+				if (!name.toLowerCase().endsWith(".sql")) {
+					name = name + ".sql";
+				}
+				Files.createDirectories(tempDir.toPath());
+				try (InputStream in = new GZIPInputStream(new FileInputStream(cielFile))) {
+					Files.copy(in, new File(tempDir, name).toPath());
+				}
+			}
+			Files.move(tempDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (FileAlreadyExistsException e) {
+			FileUtils.deleteDirectory(tempDir);
+		}
+		catch (IOException e) {
+			FileUtils.deleteDirectory(tempDir);
+			if (!entryDir.isDirectory()) {
+				throw e;
+			}
+		}
+	}
+
+	private File getLastUsedFile(File entryDir) {
+		return new File(entryDir.getParentFile(), entryDir.getName() + ".lastUsed");
+	}
+
+	private String readString(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+	}
+
+	private void writeString(File file, String value) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+}
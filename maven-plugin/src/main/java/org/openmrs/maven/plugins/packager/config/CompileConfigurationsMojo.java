@@ -11,17 +11,26 @@ package org.openmrs.maven.plugins.packager.config;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.twdata.maven.mojoexecutor.MojoExecutor;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.element;
@@ -37,6 +46,9 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 @Mojo(name = "compile-configurations", defaultPhase = LifecyclePhase.COMPILE)
 public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 
+	public static final String FILTERING_ENGINE_MAVEN = "maven";
+	public static final String FILTERING_ENGINE_NATIVE = "native";
+
 	// Configuration Directory
 	@Parameter(property = "sourceDir", defaultValue = "configuration")
 	private File sourceDir;
@@ -45,16 +57,71 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 	@Parameter(property = "dependencyFile", defaultValue = "dependencies.yml")
 	private File dependenciesFile;
 
+	// The engine used to copy and filter resources.  Either "maven" to use the maven-resources-plugin, or
+	// "native" to filter within this plugin, which avoids the overhead of executing another plugin for each directory
+	@Parameter(property = "filteringEngine", defaultValue = FILTERING_ENGINE_MAVEN)
+	private String filteringEngine;
+
+	// The number of dependencies to resolve and unpack concurrently.  If greater than 1, all dependencies are
+	// resolved and unpacked on a pool of this many threads before they are added in the order they are declared
+	@Parameter(property = "dependencyThreads", defaultValue = "1")
+	private int dependencyThreads;
+
+	// If true, unpacked dependencies are cached by the checksum of their artifact, so that an unchanged artifact
+	// is linked into the build directory rather than being unpacked again in each build
+	@Parameter(property = "unpackCache", defaultValue = "false")
+	private boolean unpackCache;
+
+	// The directory in which to cache unpacked dependencies.  Defaults to a directory within the local repository
+	@Parameter(property = "unpackCacheDir")
+	private File unpackCacheDir;
+
+	// The maximum size of the unpack cache in megabytes, beyond which the least recently used entries are evicted
+	@Parameter(property = "unpackCacheMaxSize", defaultValue = "2048")
+	private long unpackCacheMaxSize;
+
+	// If true, only files which have changed since the last compilation are copied and filtered, based on a manifest
+	// persisted in the build directory.  This always uses the native filtering engine, and filters all files with the
+	// final merged constants
+	@Parameter(property = "incremental", defaultValue = "false")
+	private boolean incremental;
+
+	// If true, files which are not filtered are hard-linked rather than copied where possible, when filtering natively
+	@Parameter(property = "linkNonFilteredFiles", defaultValue = "false")
+	private boolean linkNonFilteredFiles;
+
+	// The number of variants to compile concurrently, if variants have been defined
+	@Parameter(property = "variantThreads", defaultValue = "4")
+	private int variantThreads;
+
 	/**
 	 * @throws MojoExecutionException if an error occurs
 	 */
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		addConfigurationDependencies();
-		copyAndFilterConfiguration(sourceDir, getCompiledConfigurationDir());
-		generateJsonKeyValuesFromConstants();
-		String openmrsServerId = System.getProperty("serverId");
-		if (openmrsServerId != null) {
-			copyConfigurationToLocalServer(openmrsServerId);
+		try {
+			if (incremental) {
+				compileIncrementally();
+			}
+			else {
+				deleteFile(getCompileManifestFile());
+				addConfigurationDependencies();
+				copyAndFilterConfiguration(sourceDir, getCompiledConfigurationDir());
+			}
+			try (BuildMetrics.Timer timer = getMetrics().time("jsonkeyvalues")) {
+				generateJsonKeyValuesFromConstants();
+			}
+			try (BuildMetrics.Timer timer = getMetrics().time("variants")) {
+				compileVariants();
+			}
+			String openmrsServerId = System.getProperty("serverId");
+			if (openmrsServerId != null) {
+				try (BuildMetrics.Timer timer = getMetrics().time("serverSync")) {
+					copyConfigurationToLocalServer(openmrsServerId);
+				}
+			}
+		}
+		finally {
+			writeMetricsReport();
 		}
 	}
 
@@ -73,40 +140,300 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 
 			// For each dependency, load it's files into the compiled configuration directory.
 			// For constants, add these to the running collection to write at the end
-			try {
-				ObjectMapper m = getYamlMapper();
-				List<ConfigDependency> configDependencies = m.readValue(dependenciesFile, new TypeReference<List<ConfigDependency>>(){});
-				for (ConfigDependency d : configDependencies) {
-					getLog().info("Retrieving and unpacking dependency: " + d);
-					getLog().info("Adding dependency: " + d);
-					File unpackDir = new File(getPluginBuildDir(), "dependencies/" + d.toString("_"));
-					unpackDependency(d, unpackDir);
-					copyAndFilterConfiguration(unpackDir, getCompiledConfigurationDir());
+			List<ConfigDependency> configDependencies = loadConfigDependencies();
+			List<File> unpackDirs;
+			try (BuildMetrics.Timer timer = getMetrics().time("unpack")) {
+				unpackDirs = unpackDependencies(configDependencies);
+			}
+			for (int i = 0; i < configDependencies.size(); i++) {
+				getLog().info("Adding dependency: " + configDependencies.get(i));
+				copyAndFilterConfiguration(unpackDirs.get(i), getCompiledConfigurationDir());
+				try (BuildMetrics.Timer timer = getMetrics().time("constants")) {
 					Properties dependencyConstants = loadPropertiesFromFile(getCompiledConstantsFile());
 					finalConstants.putAll(dependencyConstants);
 					getLog().debug("Added " + dependencyConstants.size() + " constants from dependency");
 				}
 			}
-			catch (Exception e) {
-				throw new MojoExecutionException("Unable to read dependency configurations from " + dependenciesFile, e);
+			try (BuildMetrics.Timer timer = getMetrics().time("constants")) {
+				finalConstants.putAll(initialConstants);
+				getLog().debug("Added " + initialConstants.size() + " constants from this project");
+				savePropertiesToFile(finalConstants, getCompiledConstantsFile());
+				getLog().debug("Wrote compiled constants file with " + finalConstants + " entries");
 			}
-			finalConstants.putAll(initialConstants);
-			getLog().debug("Added " + initialConstants.size() + " constants from this project");
-			savePropertiesToFile(finalConstants, getCompiledConstantsFile());
-			getLog().debug("Wrote compiled constants file with " + finalConstants + " entries");
 		}
 		else {
 			getLog().info("No dependency configuration file found at " + dependenciesFile);
 		}
 	}
 
+	/**
+	 * Compiles only those files that have changed since the last compilation.  All dependencies are unpacked,
+	 * and their constants merged in order, with the project's defined constants taking final precedence.
+	 * Each file is then taken from the last of the dependencies or the source directory that contains it, and
+	 * is copied and filtered if it, or any constant it references, has changed.
+	 */
+	protected void compileIncrementally() throws MojoExecutionException {
+		List<ConfigDependency> configDependencies = loadConfigDependencies();
+		List<File> unpackDirs;
+		try (BuildMetrics.Timer timer = getMetrics().time("unpack")) {
+			unpackDirs = unpackDependencies(configDependencies);
+		}
+
+		Properties finalConstants = new ConstantProperties();
+		try (BuildMetrics.Timer timer = getMetrics().time("constants")) {
+			for (File unpackDir : unpackDirs) {
+				finalConstants.putAll(loadPropertiesFromFile(new File(unpackDir, IncrementalCompiler.CONSTANTS_FILE_NAME)));
+			}
+			finalConstants.putAll(loadPropertiesFromFile(getCompiledConstantsFile()));
+		}
+
+		ensureCompiledConfigurationDir();
+		IncrementalCompiler compiler = new IncrementalCompiler(getCompiledConfigurationDir(), getCompileManifestFile(), getLog());
+		try (BuildMetrics.Timer timer = getMetrics().time("filter")) {
+			Map<String, File> sources = IncrementalCompiler.getSources(unpackDirs, sourceDir);
+			compiler.compile(sources, createConfigurationFilter(finalConstants));
+			if (!sources.containsKey(IncrementalCompiler.CONSTANTS_FILE_NAME)) {
+				savePropertiesToFile(finalConstants, getCompiledConstantsFile());
+			}
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to compile configuration incrementally", e);
+		}
+	}
+
+	/**
+	 * Compiles each variant for which constants have been generated into its own directory, concurrently.
+	 * Dependencies are not unpacked again, but are shared with the compiled configuration.  The constants of each
+	 * variant are merged over those of the dependencies, as for the compiled configuration, and each file is taken
+	 * from the compiled configuration unless it references a constant whose value differs in the variant.
+	 * As with incremental compilation, files that are filtered again are filtered with the final merged constants.
+	 */
+	protected void compileVariants() throws MojoExecutionException {
+		List<String> variantIds = getVariantIds();
+		if (variantIds.isEmpty()) {
+			return;
+		}
+		List<File> unpackDirs = getUnpackDirs(loadConfigDependencies());
+		Properties dependencyConstants = new ConstantProperties();
+		for (File unpackDir : unpackDirs) {
+			dependencyConstants.putAll(loadPropertiesFromFile(new File(unpackDir, IncrementalCompiler.CONSTANTS_FILE_NAME)));
+		}
+		Map<String, File> sources = IncrementalCompiler.getSources(unpackDirs, sourceDir);
+		ResourceFilter compiledFilter = createConfigurationFilter(loadPropertiesFromFile(getCompiledConstantsFile()));
+		CompileManifest manifest = (incremental ? CompileManifest.load(getCompileManifestFile()) : null);
+		VariantCompiler compiler = new VariantCompiler(getCompiledConfigurationDir(), sources, compiledFilter, manifest, getLog());
+
+		int numThreads = Math.max(1, Math.min(variantThreads, variantIds.size()));
+		getLog().info("Compiling " + variantIds.size() + " variants using " + numThreads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (final String variantId : variantIds) {
+				results.add(executor.submit(() -> {
+					compileVariant(variantId, dependencyConstants, sources, compiler);
+					return variantId;
+				}));
+			}
+			for (Future<String> result : results) {
+				result.get();
+			}
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to compile variants", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while compiling variants", e);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compiles a single variant, with its constants merged over the given dependency constants
+	 */
+	protected void compileVariant(String variantId, Properties dependencyConstants, Map<String, File> sources,
+								  VariantCompiler compiler) throws MojoExecutionException {
+		Properties variantConstants = new ConstantProperties();
+		variantConstants.putAll(dependencyConstants);
+		variantConstants.putAll(loadPropertiesFromFile(getVariantConstantsFile(variantId)));
+		File variantDir = getVariantConfigurationDir(variantId);
+		try {
+			VariantCompiler.Result result = compiler.compile(variantDir, createConfigurationFilter(variantConstants));
+			getLog().info("Compiled variant " + variantId + " into " + variantDir + ": " + result);
+			getMetrics().increment(BuildMetrics.FILES_LINKED, result.getNumShared());
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to compile variant " + variantId, e);
+		}
+		if (!sources.containsKey(IncrementalCompiler.CONSTANTS_FILE_NAME)) {
+			savePropertiesToFile(variantConstants, new File(variantDir, IncrementalCompiler.CONSTANTS_FILE_NAME));
+		}
+		generateJsonKeyValues(variantConstants, variantDir);
+	}
+
+	/**
+	 * @return the dependencies declared in the dependencies file, in the order declared, or an empty list if none
+	 */
+	protected List<ConfigDependency> loadConfigDependencies() throws MojoExecutionException {
+		List<ConfigDependency> configDependencies = null;
+		if (dependenciesFile != null && dependenciesFile.exists()) {
+			try {
+				ObjectMapper m = getYamlMapper();
+				configDependencies = m.readValue(dependenciesFile, new TypeReference<List<ConfigDependency>>(){});
+			}
+			catch (Exception e) {
+				throw new MojoExecutionException("Unable to read dependency configurations from " + dependenciesFile, e);
+			}
+		}
+		return (configDependencies == null ? new ArrayList<>() : configDependencies);
+	}
+
+	/**
+	 * Retrieves and unpacks each of the given dependencies into its own directory in the build directory
+	 * @return the directories the dependencies were unpacked into, in the same order as the dependencies
+	 */
+	protected List<File> unpackDependencies(List<ConfigDependency> configDependencies) throws MojoExecutionException {
+		List<File> unpackDirs = getUnpackDirs(configDependencies);
+		if (dependencyThreads <= 1 && !unpackCache) {
+			for (int i = 0; i < configDependencies.size(); i++) {
+				getLog().info("Retrieving and unpacking dependency: " + configDependencies.get(i));
+				try {
+					UnpackCache.removeUnpacked(unpackDirs.get(i));
+				}
+				catch (IOException e) {
+					throw new MojoExecutionException("Unable to remove " + unpackDirs.get(i) + " unpacked from the unpack cache", e);
+				}
+				unpackDependency(configDependencies.get(i), unpackDirs.get(i));
+			}
+			return unpackDirs;
+		}
+		final UnpackCache cache = (unpackCache ? new UnpackCache(getUnpackCacheDir(), unpackCacheMaxSize * 1024 * 1024, getLog()) : null);
+		int numThreads = Math.max(1, Math.min(dependencyThreads, configDependencies.size()));
+		getLog().info("Retrieving and unpacking " + configDependencies.size() + " dependencies using " + numThreads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<File>> results = new ArrayList<>();
+			for (int i = 0; i < configDependencies.size(); i++) {
+				final ConfigDependency d = configDependencies.get(i);
+				final File unpackDir = unpackDirs.get(i);
+				results.add(executor.submit(() -> {
+					getLog().info("Retrieving and unpacking dependency: " + d);
+					File archive = resolveDependency(d);
+					if (cache != null) {
+						boolean cacheHit = cache.unpack(d, archive, unpackDir);
+						getMetrics().increment(cacheHit ? BuildMetrics.CACHE_HITS : BuildMetrics.CACHE_MISSES);
+					}
+					else {
+						extractArchive(archive, unpackDir);
+					}
+					return unpackDir;
+				}));
+			}
+			for (Future<File> result : results) {
+				result.get();
+			}
+			if (cache != null) {
+				cache.evict();
+			}
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to unpack dependencies", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while unpacking dependencies", e);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to maintain unpack cache at " + cache.getCacheDir(), e);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return unpackDirs;
+	}
+
+	/**
+	 * @return the directories that the given dependencies are unpacked into, in the same order as the dependencies
+	 */
+	protected List<File> getUnpackDirs(List<ConfigDependency> configDependencies) {
+		List<File> unpackDirs = new ArrayList<>();
+		for (ConfigDependency d : configDependencies) {
+			unpackDirs.add(new File(getPluginBuildDir(), "dependencies/" + d.toString("_")));
+		}
+		return unpackDirs;
+	}
+
+	/**
+	 * @return the configured unpack cache directory, or by default a directory within the local repository
+	 */
+	protected File getUnpackCacheDir() {
+		if (unpackCacheDir != null) {
+			return unpackCacheDir;
+		}
+		return new File(getLocalRepository().getBasedir(), ".cache/openmrs-packager/unpack");
+	}
+
+	/**
+	 * Copies configuration resources from one directory to another, ensuring the resource filtering is enabled
+	 * so that variable replacements can take place, using the configured filtering engine
+	 */
+	protected void copyAndFilterConfiguration(File fromDir, File toDir) throws MojoExecutionException {
+		getLog().info("Adding and filtering resources from " + fromDir + " to " + toDir);
+		try (BuildMetrics.Timer timer = getMetrics().time("filter")) {
+			if (FILTERING_ENGINE_NATIVE.equalsIgnoreCase(filteringEngine)) {
+				copyAndFilterConfigurationNatively(fromDir, toDir);
+			}
+			else if (FILTERING_ENGINE_MAVEN.equalsIgnoreCase(filteringEngine)) {
+				copyAndFilterConfigurationWithMaven(fromDir, toDir);
+			}
+			else {
+				throw new MojoExecutionException("Unsupported filtering engine: " + filteringEngine);
+			}
+		}
+	}
+
+	/**
+	 * Filters resources within this plugin.  As with the maven resources plugin, the filter values are read from the
+	 * compiled constants file at the time each directory is copied
+	 */
+	protected void copyAndFilterConfigurationNatively(File fromDir, File toDir) throws MojoExecutionException {
+		ResourceFilter filter = createConfigurationFilter(loadPropertiesFromFile(getCompiledConstantsFile()));
+		try {
+			List<String> copied = filter.copyDirectory(fromDir, toDir);
+			getLog().debug("Copied " + copied.size() + " files from " + fromDir);
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Unable to copy and filter resources from " + fromDir + " to " + toDir, e);
+		}
+	}
+
+	/**
+	 * @return a filter for copying configuration resources natively, with the given constants
+	 */
+	protected ResourceFilter createConfigurationFilter(Properties constants) {
+		ResourceFilter filter = createResourceFilter(constants);
+		filter.setFileTransfer(new FileTransfer(linkNonFilteredFiles));
+		return filter;
+	}
+
 	/**
 	 * Executes the maven resources plugin, copying configuration resources
 	 * from one directory to another, and ensuring the resource filtering is enabled
 	 * so that variable replacements can take place.
 	 */
-	protected void copyAndFilterConfiguration(File fromDir, File toDir) throws MojoExecutionException {
-		getLog().info("Adding and filtering resources from " + fromDir + " to " + toDir);
+	protected void copyAndFilterConfigurationWithMaven(File fromDir, File toDir) throws MojoExecutionException {
+		List<MojoExecutor.Element> nonFilteredFileExtensions = new ArrayList<>();
+		for (String extension : ResourceFilter.DEFAULT_NON_FILTERED_FILE_EXTENSIONS) {
+			nonFilteredFileExtensions.add(element("nonFilteredFileExtension", extension));
+		}
 		executeMojo(
 				plugin("org.apache.maven.plugins", "maven-resources-plugin", "3.1.0"),
 				goal("copy-resources"),
@@ -121,10 +448,7 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 								)
 						),
 						element("nonFilteredFileExtensions",
-								element("nonFilteredFileExtension", "zip"),
-								element("nonFilteredFileExtension", "xls"),
-								element("nonFilteredFileExtension", "xlsx"),
-								element("nonFilteredFileExtension", "pdf")
+								nonFilteredFileExtensions.toArray(new MojoExecutor.Element[0])
 						)
 				),
 				getMavenExecutionEnvironment()
@@ -150,12 +474,26 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 			getLog().info("No current configuration directory exists, creating " + configurationDir);
 		}
 		else {
-			getLog().warn("Configuration directory already exists, deleting and recreating " + configurationDir);
-			deleteDirectory(configurationDir);
+			getLog().info("Configuration directory already exists, updating changed files in " + configurationDir);
+		}
+		// Only changed files are written, so that Initializer does not see unchanged files as modified
+		try {
+			DirectorySync.Result result;
+			if (FILTERING_ENGINE_NATIVE.equalsIgnoreCase(filteringEngine)) {
+				ResourceFilter filter = createResourceFilter(loadPropertiesFromFile(getCompiledConstantsFile()));
+				result = new DirectorySync(filter).sync(getCompiledConfigurationDir(), configurationDir);
+			}
+			else {
+				File stagingDir = new File(getPluginBuildDir(), "server-configuration");
+				deleteDirectory(stagingDir);
+				copyAndFilterConfiguration(getCompiledConfigurationDir(), stagingDir);
+				result = new DirectorySync().sync(stagingDir, configurationDir);
+			}
+			getLog().info("Configuration synchronized into " + configurationDir + ": " + result);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to synchronize configuration into " + configurationDir, e);
 		}
-		configurationDir.mkdir();
-		copyAndFilterConfiguration(getCompiledConfigurationDir(), configurationDir);
-		getLog().info("Configuration copied into: " + configurationDir);
 	}
 
 	/**
@@ -163,15 +501,24 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 	 * jsonkeyvalues directory to make them available to Iniz, if constants exist
 	 */
 	protected void generateJsonKeyValuesFromConstants() throws MojoExecutionException {
-		Properties constants = loadPropertiesFromFile(getCompiledConstantsFile());
+		generateJsonKeyValues(loadPropertiesFromFile(getCompiledConstantsFile()), getCompiledConfigurationDir());
+	}
+
+	/**
+	 * Writes the given constants into the jsonkeyvalues directory of the given configuration, if constants exist
+	 */
+	protected void generateJsonKeyValues(Properties constants, File configurationDir) throws MojoExecutionException {
 		String fileName = "constants.json";
 		if (constants != null && !constants.isEmpty()) {
 			try {
-				File jsonDomain = new File(getCompiledConfigurationDir(), "jsonkeyvalues");
+				File jsonDomain = new File(configurationDir, "jsonkeyvalues");
 				Files.createDirectories(jsonDomain.toPath());
 				File outputFile = new File(jsonDomain, fileName);
+				// Replace rather than overwrite, as the file may be hard-linked into the configuration of a variant
+				Files.deleteIfExists(outputFile.toPath());
 				getLog().info("Generating " + fileName + " in jsonkeyvalues with " + constants.size() + " entries");
 				ObjectMapper mapper = new ObjectMapper();
+				mapper.enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
 				mapper.writerWithDefaultPrettyPrinter().writeValue(outputFile, constants);
 			}
 			catch (Exception e) {
@@ -183,6 +530,18 @@ public class CompileConfigurationsMojo extends AbstractPackagerConfigMojo {
 		}
 	}
 
+	/**
+	 * Utility method to delete a file if it exists
+	 */
+	private void deleteFile(File file) throws MojoExecutionException {
+		try {
+			Files.deleteIfExists(file.toPath());
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Unable to delete file: " + file, e);
+		}
+	}
+
 	/**
 	 * Utility method to forcibly delete a directory recursively, including files within
 	 */
@@ -0,0 +1,173 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records the state of a compiled configuration, so that a subsequent compilation only needs to process
+ * the files whose source or referenced constants have changed
+ */
+public class CompileManifest implements Serializable {
+
+	// The checksum of the value of each constant that was available when filtering
+	private Map<String, String> constants = new TreeMap<>();
+
+	// The checksum of all of the constants, which can be used to determine whether any constant has changed
+	private String constantsChecksum;
+
+	// The details of each compiled file, keyed on its path relative to the compiled configuration directory
+	private Map<String, Entry> entries = new TreeMap<>();
+
+	public CompileManifest() {}
+
+	/**
+	 * @return the manifest read from the given file, or an empty manifest if the file does not exist or cannot be read
+	 */
+	public static CompileManifest load(File file) {
+		if (file != null && file.exists()) {
+			try {
+				return new ObjectMapper().readValue(file, CompileManifest.class);
+			}
+			catch (IOException e) {
+				// An unreadable manifest simply results in a full compilation
+			}
+		}
+		return new CompileManifest();
+	}
+
+	/**
+	 * Writes this manifest to the given file
+	 */
+	public void save(File file) throws IOException {
+		new ObjectMapper().writeValue(file, this);
+	}
+
+	/**
+	 * @param newConstants the checksum of the value of each constant, keyed on the constant name
+	 * @return the keys of all constants whose values differ between this manifest and the given constants
+	 */
+	public Set<String> getChangedConstants(Map<String, String> newConstants) {
+		Set<String> changed = new TreeSet<>();
+		for (Map.Entry<String, String> e : newConstants.entrySet()) {
+			if (!e.getValue().equals(constants.get(e.getKey()))) {
+				changed.add(e.getKey());
+			}
+		}
+		for (String key : constants.keySet()) {
+			if (!newConstants.containsKey(key)) {
+				changed.add(key);
+			}
+		}
+		return changed;
+	}
+
+	public Map<String, String> getConstants() {
+		return constants;
+	}
+
+	public void setConstants(Map<String, String> constants) {
+		this.constants = new TreeMap<>(constants);
+		this.constantsChecksum = Checksums.sha256(this.constants.toString());
+	}
+
+	public String getConstantsChecksum() {
+		return constantsChecksum;
+	}
+
+	public void setConstantsChecksum(String constantsChecksum) {
+		this.constantsChecksum = constantsChecksum;
+	}
+
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(Map<String, Entry> entries) {
+		this.entries = new TreeMap<>(entries);
+	}
+
+	/**
+	 * The details of a single compiled file
+	 */
+	public static class Entry implements Serializable {
+
+		private String source;
+		private long size;
+		private long lastModified;
+		private String checksum;
+		private Set<String> references = new TreeSet<>();
+
+		public Entry() {}
+
+		public Entry(File source, String checksum, Set<String> references) {
+			this.source = source.getAbsolutePath();
+			this.size = source.length();
+			this.lastModified = source.lastModified();
+			this.checksum = checksum;
+			setReferences(references);
+		}
+
+		/**
+		 * @return true if the given file has the same path, size, and last modified date as the source of this entry
+		 */
+		public boolean isSameSource(File file) {
+			return file.getAbsolutePath().equals(source) && file.length() == size && file.lastModified() == lastModified;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		public void setSource(String source) {
+			this.source = source;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public void setSize(long size) {
+			this.size = size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public void setLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public void setChecksum(String checksum) {
+			this.checksum = checksum;
+		}
+
+		public Set<String> getReferences() {
+			return references;
+		}
+
+		public void setReferences(Set<String> references) {
+			this.references = (references == null ? new TreeSet<>() : new TreeSet<>(references));
+		}
+	}
+}
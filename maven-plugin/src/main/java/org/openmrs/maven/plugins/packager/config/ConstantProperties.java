@@ -9,6 +9,12 @@
  */
 package org.openmrs.maven.plugins.packager.config;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Properties;
@@ -17,10 +23,13 @@ import java.util.TreeSet;
 
 /**
  * Extends a properties file to better control behavior to improve usability.
- * Primary initial use case is to ensure properties are saved to file in a predictable and user-friendly order
+ * Primary initial use case is to ensure properties are saved to file in a predictable and user-friendly order,
+ * and without the date comment that Properties always writes, so that the same properties produce the same file
  */
 public class ConstantProperties extends Properties {
 
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
 	public ConstantProperties() {
 		super();
 	}
@@ -34,4 +43,77 @@ public class ConstantProperties extends Properties {
 		}
 		return Collections.enumeration(sortedKeys);
 	}
+
+	/**
+	 * Writes each property in order of its key, escaped as by Properties, with lines separated by a newline
+	 */
+	@Override
+	public void store(OutputStream out, String comments) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1));
+		if (comments != null) {
+			writer.write("#" + comments.replaceAll("\r?\n", "\n#") + "\n");
+		}
+		for (String key : new TreeSet<>(stringPropertyNames())) {
+			writer.write(escape(key, getProperty(key)));
+			writer.write("\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @return the given property as a single line, escaped as Properties escapes it when storing to a stream
+	 */
+	private String escape(String key, String value) {
+		StringBuilder line = new StringBuilder(key.length() + value.length() + 16);
+		escape(key, true, line);
+		line.append('=');
+		escape(value, false, line);
+		return line.toString();
+	}
+
+	/**
+	 * Appends the given key or value to the given line, escaping characters which have a special meaning in a
+	 * properties file, and any character outside printable ASCII as a unicode escape.  Spaces are escaped throughout
+	 * a key, and only at the start of a value.
+	 */
+	private void escape(String text, boolean escapeSpace, StringBuilder line) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case ' ':
+					if (i == 0 || escapeSpace) {
+						line.append('\\');
+					}
+					line.append(' ');
+					break;
+				case '\t':
+					line.append("\\t");
+					break;
+				case '\n':
+					line.append("\\n");
+					break;
+				case '\r':
+					line.append("\\r");
+					break;
+				case '\f':
+					line.append("\\f");
+					break;
+				case '=':
+				case ':':
+				case '#':
+				case '!':
+				case '\\':
+					line.append('\\').append(c);
+					break;
+				default:
+					if (c < 0x0020 || c > 0x007e) {
+						line.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+								.append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+					}
+					else {
+						line.append(c);
+					}
+			}
+		}
+	}
 }
@@ -14,6 +14,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.twdata.maven.mojoexecutor.MojoExecutor;
 
 import java.io.File;
 import java.io.IOException;
@@ -22,6 +23,8 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 
+import static org.openmrs.maven.plugins.packager.config.CompileConfigurationsMojo.FILTERING_ENGINE_MAVEN;
+import static org.openmrs.maven.plugins.packager.config.CompileConfigurationsMojo.FILTERING_ENGINE_NATIVE;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.element;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.executeMojo;
@@ -54,10 +57,40 @@ public class CreateContentPackageMojo extends AbstractPackagerConfigMojo {
 	@Parameter(property = "targetDir", defaultValue = "${project.build.directory}/package")
 	private File targetDir;
 
+	// If specified, the content package is also written into this zip file, reproducibly
+	@Parameter(property = "packageFile")
+	private File packageFile;
+
+	// The last modified time to give to every file in the package zip file, as for package-configurations
+	@Parameter(defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
+	// The engine used to copy the configuration into the package.  Either "maven" to use the maven-resources-plugin,
+	// which always overwrites the package files, or "native" to transfer only the files whose size, last modified
+	// date, or content differ from those already in the package
+	@Parameter(property = "copyEngine", defaultValue = FILTERING_ENGINE_MAVEN)
+	private String copyEngine;
+
+	// If true, and copying natively, files are hard-linked into the package rather than copied where possible
+	@Parameter(property = "linkNonFilteredFiles", defaultValue = "false")
+	private boolean linkNonFilteredFiles;
+
 	/**
 	 * @throws MojoExecutionException if an error occurs
 	 */
 	public void execute() throws MojoExecutionException {
+		try (BuildMetrics.Timer timer = getMetrics().time("contentPackage")) {
+			createContentPackage();
+		}
+		finally {
+			writeMetricsReport();
+		}
+	}
+
+	/**
+	 * Writes the content properties, and transfers the backend and frontend configuration into the package
+	 */
+	private void createContentPackage() throws MojoExecutionException {
 		List<String> contentProperties = new ArrayList<>();
 		contentProperties.add("# Content Package");
 		contentProperties.add("name=" + name);
@@ -76,7 +109,7 @@ public class CreateContentPackageMojo extends AbstractPackagerConfigMojo {
 
 		File contentPropertiesFile = new File(targetDir, "content.properties");
 		try {
-			FileUtils.writeLines(contentPropertiesFile, "UTF-8", contentProperties);
+			FileUtils.writeLines(contentPropertiesFile, "UTF-8", contentProperties, "\n");
 		}
 		catch (IOException e) {
 			throw new MojoExecutionException("Unable to write content.properties", e);
@@ -85,51 +118,91 @@ public class CreateContentPackageMojo extends AbstractPackagerConfigMojo {
 		File targetConfigurationDir = new File(targetDir, "configuration");
 		File backendTargetDir = new File(targetConfigurationDir, "backend_configuration");
 
-		executeMojo(
-				plugin("org.apache.maven.plugins", "maven-resources-plugin", "3.1.0"),
-				goal("copy-resources"),
-				configuration(
-						element("outputDirectory", backendTargetDir.getAbsolutePath()),
-						element("encoding", "UTF-8"),
-						element("overwrite", "true"),
-						element("resources",
-								element("resource",
-										element("directory", sourceConfigurationDir.getAbsolutePath()),
-										element("filtering", "false"),
-										element("includes",
-												element("include", "**/*")
-										),
-										element("excludes",
-											element("exclude", sourceFrontendSubdir + "/**/*")
-										)
-								)
-						)
-				),
-				getMavenExecutionEnvironment()
-		);
-
 		File frontendSourceDir = new File(sourceConfigurationDir, sourceFrontendSubdir);
 		File frontendTargetDir = new File(targetConfigurationDir, "frontend_configuration");
 
+		if (FILTERING_ENGINE_NATIVE.equalsIgnoreCase(copyEngine)) {
+			// None of these files are filtered, so they are transferred as-is, and only if they have changed
+			FileTransfer fileTransfer = new FileTransfer(linkNonFilteredFiles);
+			transferDirectory(fileTransfer, sourceConfigurationDir, backendTargetDir, sourceFrontendSubdir + "/**/*");
+			transferDirectory(fileTransfer, frontendSourceDir, frontendTargetDir);
+		}
+		else if (FILTERING_ENGINE_MAVEN.equalsIgnoreCase(copyEngine)) {
+			copyResourcesWithMaven(sourceConfigurationDir, backendTargetDir, sourceFrontendSubdir + "/**/*");
+			copyResourcesWithMaven(frontendSourceDir, frontendTargetDir);
+		}
+		else {
+			throw new MojoExecutionException("Unsupported copy engine: " + copyEngine);
+		}
+
+		if (packageFile != null) {
+			createPackageFile();
+		}
+	}
+
+	/**
+	 * Writes the content package into the package file, with sorted entries and fixed times and permissions, so that
+	 * the same content always produces an identical file
+	 */
+	private void createPackageFile() throws MojoExecutionException {
+		getLog().info("Creating content package " + packageFile);
+		try {
+			ZipArchiver archiver = new ZipArchiver();
+			Long timestamp = ZipArchiver.parseTimestamp(outputTimestamp);
+			if (timestamp != null) {
+				archiver.setTimestamp(timestamp);
+			}
+			archiver.setThreads(Runtime.getRuntime().availableProcessors());
+			ZipArchiver.Result result = archiver.archive(targetDir, packageFile);
+			getLog().debug("Wrote " + result.getNumFiles() + " files to " + packageFile);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new MojoExecutionException("Unable to create content package " + packageFile, e);
+		}
+	}
+
+	/**
+	 * Copies the contents of one directory into another with the maven-resources-plugin, overwriting every file
+	 */
+	private void copyResourcesWithMaven(File fromDir, File toDir, String... excludes) throws MojoExecutionException {
+		List<MojoExecutor.Element> excludeElements = new ArrayList<>();
+		for (String exclude : excludes) {
+			excludeElements.add(element("exclude", exclude));
+		}
 		executeMojo(
 				plugin("org.apache.maven.plugins", "maven-resources-plugin", "3.1.0"),
 				goal("copy-resources"),
 				configuration(
-						element("outputDirectory", frontendTargetDir.getAbsolutePath()),
+						element("outputDirectory", toDir.getAbsolutePath()),
 						element("encoding", "UTF-8"),
 						element("overwrite", "true"),
 						element("resources",
 								element("resource",
-										element("directory", frontendSourceDir.getAbsolutePath()),
+										element("directory", fromDir.getAbsolutePath()),
 										element("filtering", "false"),
 										element("includes",
 												element("include", "**/*")
-										)
+										),
+										element("excludes", excludeElements.toArray(new MojoExecutor.Element[0]))
 								)
 						)
 				),
 				getMavenExecutionEnvironment()
 		);
+	}
 
+	/**
+	 * Transfers the contents of one directory into another, excluding any files matching the given patterns
+	 */
+	private void transferDirectory(FileTransfer fileTransfer, File fromDir, File toDir, String... excludes) throws MojoExecutionException {
+		getLog().info("Copying resources from " + fromDir + " to " + toDir);
+		try {
+			int numTransferred = fileTransfer.transferDirectory(fromDir, toDir, excludes);
+			getMetrics().increment(BuildMetrics.FILES_COPIED, numTransferred);
+			getLog().debug("Copied " + numTransferred + " changed files to " + toDir);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to copy resources from " + fromDir + " to " + toDir, e);
+		}
 	}
 }
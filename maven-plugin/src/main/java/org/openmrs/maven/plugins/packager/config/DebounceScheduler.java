@@ -0,0 +1,268 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Decides when to build in response to file changes, and runs each build on a single background thread.
+ * A build runs once no changes have been seen for a quiet period.  The quiet period starts at a minimum, and is
+ * stretched by a fixed amount for each change in the current burst of changes, up to a maximum.  This means that a
+ * single saved file is built almost immediately, while a large burst of changes, such as a checkout, is built once.
+ * Builds never overlap.  If changes arrive while a build is running, a cancellable build is asked to stop and its
+ * changes are rebuilt together with the new ones, otherwise the new changes are built once it completes.
+ * Cancellation is cooperative rather than by interrupting the build thread, as interrupting a thread closes any file
+ * channel it is using, which would fail the build rather than cancel it.
+ */
+public class DebounceScheduler {
+
+	/**
+	 * A build of a set of changes
+	 */
+	public interface Build {
+
+		/**
+		 * Builds the given changes.  A cancellable build should stop promptly once cancelled returns true.
+		 */
+		void build(ChangeSet changes, BooleanSupplier cancelled) throws Exception;
+
+		/**
+		 * @return true if a build of the given changes can safely be interrupted and repeated
+		 */
+		boolean isCancellable(ChangeSet changes);
+	}
+
+	private final Build build;
+	private final long minQuietMillis;
+	private final long maxQuietMillis;
+	private final long quietMillisPerChange;
+	private final Log log;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private ChangeSet pending = new ChangeSet();
+	private long firstChangeTime = -1;
+	private long lastChangeTime = -1;
+
+	private ChangeSet runningChanges;
+	private boolean runningCancellable;
+	private boolean cancelRequested;
+
+	// Metrics
+	private int numBuilds = 0;
+	private int numCancelled = 0;
+	private int numChanges = 0;
+	private long lastQuietMillis = 0;
+	private long lastLatencyMillis = 0;
+	private long lastBuildMillis = 0;
+	private long totalBuildMillis = 0;
+
+	public DebounceScheduler(Build build, long minQuietMillis, long maxQuietMillis, long quietMillisPerChange, Log log) {
+		this.build = build;
+		this.minQuietMillis = minQuietMillis;
+		this.maxQuietMillis = Math.max(minQuietMillis, maxQuietMillis);
+		this.quietMillisPerChange = quietMillisPerChange;
+		this.log = log;
+	}
+
+	/**
+	 * Records a change to the given path, cancelling the running build if it can be cancelled
+	 */
+	public synchronized void changed(WatchEvent.Kind<?> kind, Path path) {
+		pending.add(kind, path);
+		recordChange();
+	}
+
+	/**
+	 * Records all of the given changes, cancelling the running build if it can be cancelled
+	 */
+	public synchronized void changed(ChangeSet changes) {
+		if (!changes.isEmpty()) {
+			pending.addAll(changes);
+			recordChange();
+		}
+	}
+
+	/**
+	 * Records that changes were lost, cancelling the running build if it can be cancelled
+	 */
+	public synchronized void overflow() {
+		pending.markOverflow();
+		recordChange();
+	}
+
+	private void recordChange() {
+		long now = System.currentTimeMillis();
+		if (firstChangeTime < 0) {
+			firstChangeTime = now;
+		}
+		lastChangeTime = now;
+		numChanges++;
+		if (isBuilding() && runningCancellable && !cancelRequested) {
+			log.info("Changes detected during build, cancelling it to rebuild with the latest changes");
+			cancelRequested = true;
+		}
+	}
+
+	/**
+	 * @return the quiet period required for the current burst of changes
+	 */
+	public synchronized long getQuietMillis() {
+		return Math.min(maxQuietMillis, minQuietMillis + quietMillisPerChange * pending.getNumEvents());
+	}
+
+	/**
+	 * @return the number of milliseconds until pending changes are due to be built, or -1 if there are none
+	 */
+	public synchronized long getMillisUntilDue() {
+		if (pending.isEmpty()) {
+			return -1;
+		}
+		return Math.max(0, lastChangeTime + getQuietMillis() - System.currentTimeMillis());
+	}
+
+	/**
+	 * @param idleMillis the number of milliseconds to wait when there are no pending changes
+	 * @return the number of milliseconds to wait for further changes before checking whether pending changes are due.
+	 * While a build is running, changes that are due are dispatched as soon as it completes, so there is no need to
+	 * check them more often than the minimum quiet period.
+	 */
+	public synchronized long getMillisUntilNextCheck(long idleMillis) {
+		long millisUntilDue = getMillisUntilDue();
+		if (millisUntilDue < 0) {
+			return idleMillis;
+		}
+		if (isBuilding()) {
+			return Math.max(Math.max(1, minQuietMillis), millisUntilDue);
+		}
+		return Math.max(1, millisUntilDue);
+	}
+
+	/**
+	 * Starts a build of the pending changes if they have been quiet for long enough and no build is running
+	 * @return true if a build was started
+	 */
+	public synchronized boolean dispatchIfDue() {
+		if (pending.isEmpty() || isBuilding() || getMillisUntilDue() > 0 || executor.isShutdown()) {
+			return false;
+		}
+		final ChangeSet changes = pending;
+		final long quietMillis = getQuietMillis();
+		final long latencyMillis = System.currentTimeMillis() - firstChangeTime;
+		pending = new ChangeSet();
+		firstChangeTime = -1;
+		runningChanges = changes;
+		runningCancellable = build.isCancellable(changes);
+		cancelRequested = false;
+		executor.execute(() -> runBuild(changes, quietMillis, latencyMillis));
+		return true;
+	}
+
+	/**
+	 * Runs the build, recording its timing, and returns its changes to the pending changes if it was cancelled.
+	 * Any changes which are then due are built straight away.
+	 */
+	private void runBuild(ChangeSet changes, long quietMillis, long latencyMillis) {
+		long startTime = System.currentTimeMillis();
+		try {
+			if (!isCancelRequested()) {
+				build.build(changes, this::isCancelRequested);
+			}
+		}
+		catch (Exception e) {
+			if (!isCancelRequested()) {
+				log.warn("Error running build", e);
+			}
+		}
+		long buildMillis = System.currentTimeMillis() - startTime;
+		synchronized (this) {
+			if (cancelRequested) {
+				numCancelled++;
+				changes.addAll(pending);
+				pending = changes;
+				firstChangeTime = startTime - latencyMillis;
+				log.info("Build cancelled after " + buildMillis + " ms, " + changes.getPaths().size() + " changed paths will be rebuilt");
+			}
+			else {
+				numBuilds++;
+				lastQuietMillis = quietMillis;
+				lastLatencyMillis = latencyMillis;
+				lastBuildMillis = buildMillis;
+				totalBuildMillis += buildMillis;
+				log.info("Build completed in " + buildMillis + " ms, " + latencyMillis + " ms after the first change, following a "
+						+ quietMillis + " ms quiet period.  " + this);
+			}
+			runningChanges = null;
+		}
+		dispatchIfDue();
+	}
+
+	/**
+	 * @return true if the running build has been asked to stop
+	 */
+	public synchronized boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	/**
+	 * @return true if a build is currently running
+	 */
+	public synchronized boolean isBuilding() {
+		return runningChanges != null;
+	}
+
+	/**
+	 * Waits for any running build to complete, and stops the build thread
+	 */
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized int getNumBuilds() {
+		return numBuilds;
+	}
+
+	public synchronized int getNumCancelled() {
+		return numCancelled;
+	}
+
+	public synchronized int getNumChanges() {
+		return numChanges;
+	}
+
+	public synchronized long getLastQuietMillis() {
+		return lastQuietMillis;
+	}
+
+	public synchronized long getLastLatencyMillis() {
+		return lastLatencyMillis;
+	}
+
+	public synchronized long getLastBuildMillis() {
+		return lastBuildMillis;
+	}
+
+	public synchronized long getAverageBuildMillis() {
+		return numBuilds == 0 ? 0 : totalBuildMillis / numBuilds;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Builds: " + numBuilds + ", cancelled: " + numCancelled + ", changes: " + numChanges
+				+ ", average build: " + getAverageBuildMillis() + " ms";
+	}
+}
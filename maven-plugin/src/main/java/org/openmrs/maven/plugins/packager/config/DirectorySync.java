@@ -0,0 +1,221 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Brings a target directory into line with a source directory, changing only what differs, in the manner of rsync.
+ *   - each file is filtered, if a filter is given, into a temporary file, and compared by size and checksum
+ *     with the existing target.  Identical targets are left untouched, so their last modified dates are retained.
+ *   - changed files are moved into place with an atomic rename, so that a partially written file is never visible
+ *   - files in the target that do not exist in the source are removed, along with any directories left empty
+ * Temporary files are written to a hidden directory alongside the target directory, so that they are on the same
+ * file system, but are never visible within the target directory itself.
+ */
+public class DirectorySync {
+
+	private final ResourceFilter filter;
+
+	public DirectorySync() {
+		this(null);
+	}
+
+	/**
+	 * @param filter the filter to apply to files as they are synchronized, or null to synchronize them as-is
+	 */
+	public DirectorySync(ResourceFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Synchronizes toDir with the contents of fromDir
+	 * @return the paths that were added, updated, or removed in toDir
+	 */
+	public Result sync(File fromDir, File toDir) throws IOException {
+		Result result = new Result();
+		Files.createDirectories(toDir.toPath());
+		File tempDir = new File(toDir.getParentFile(), "." + toDir.getName() + ".sync");
+		Files.createDirectories(tempDir.toPath());
+		try {
+			List<String> sourcePaths = ResourceFilter.scanDirectory(fromDir);
+			syncPaths(fromDir, toDir, tempDir, sourcePaths, result);
+			Set<String> sourcePathSet = new HashSet<>(sourcePaths);
+			for (String path : scanAll(toDir)) {
+				if (!sourcePathSet.contains(path)) {
+					Files.deleteIfExists(new File(toDir, path).toPath());
+					result.getRemoved().add(path);
+				}
+			}
+			removeEmptyDirectories(toDir);
+		}
+		finally {
+			FileUtils.deleteDirectory(tempDir);
+		}
+		return result;
+	}
+
+	/**
+	 * Synchronizes only the given paths within toDir with fromDir, removing any that no longer exist in fromDir
+	 * @return the paths that were added, updated, or removed in toDir
+	 */
+	public Result sync(File fromDir, File toDir, Collection<String> paths) throws IOException {
+		Result result = new Result();
+		File tempDir = new File(toDir.getParentFile(), "." + toDir.getName() + ".sync");
+		Files.createDirectories(tempDir.toPath());
+		try {
+			syncPaths(fromDir, toDir, tempDir, paths, result);
+		}
+		finally {
+			FileUtils.deleteDirectory(tempDir);
+		}
+		return result;
+	}
+
+	private void syncPaths(File fromDir, File toDir, File tempDir, Collection<String> paths, Result result) throws IOException {
+		for (String path : paths) {
+			File source = new File(fromDir, path);
+			File target = new File(toDir, path);
+			boolean exists = target.exists();
+			if (!source.isFile()) {
+				if (Files.deleteIfExists(target.toPath())) {
+					result.getRemoved().add(path);
+				}
+			}
+			else if (syncFile(source, target, tempDir)) {
+				(exists ? result.getUpdated() : result.getAdded()).add(path);
+			}
+			else {
+				result.getUnchanged().add(path);
+			}
+		}
+	}
+
+	/**
+	 * Writes the source file into the target, via a temporary file, if the result differs from the existing target
+	 * @return true if the target was written
+	 */
+	protected boolean syncFile(File source, File target, File tempDir) throws IOException {
+		boolean filtered = filter != null && filter.isFiltered(source.getName());
+		if (!filtered && isIdentical(source, target)) {
+			return false;
+		}
+		File temp = new File(tempDir, UUID.randomUUID() + ".tmp");
+		try {
+			if (filtered) {
+				filter.filterFile(source, temp, null);
+				if (isIdentical(temp, target)) {
+					return false;
+				}
+			}
+			else {
+				Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+			}
+			Files.createDirectories(target.getParentFile().toPath());
+			moveIntoPlace(temp.toPath(), target.toPath());
+			return true;
+		}
+		finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * @return true if the target exists with the same size and checksum as the source
+	 */
+	protected boolean isIdentical(File source, File target) throws IOException {
+		if (!target.isFile() || target.length() != source.length()) {
+			return false;
+		}
+		return Checksums.sha256(source).equals(Checksums.sha256(target));
+	}
+
+	private void moveIntoPlace(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return the relative paths of all files within the given directory, including those normally excluded
+	 */
+	private List<String> scanAll(File dir) {
+		List<String> ret = new ArrayList<>();
+		for (File file : FileUtils.listFiles(dir, null, true)) {
+			ret.add(dir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+		}
+		return ret;
+	}
+
+	/**
+	 * Removes any empty directories within the given directory, leaving the directory itself
+	 */
+	private void removeEmptyDirectories(File dir) throws IOException {
+		File[] children = dir.listFiles(File::isDirectory);
+		if (children != null) {
+			for (File child : children) {
+				removeEmptyDirectories(child);
+				String[] remaining = child.list();
+				if (remaining != null && remaining.length == 0) {
+					Files.delete(child.toPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Summarizes the changes made to the target directory by a synchronization
+	 */
+	public static class Result {
+
+		private final List<String> added = new ArrayList<>();
+		private final List<String> updated = new ArrayList<>();
+		private final List<String> removed = new ArrayList<>();
+		private final List<String> unchanged = new ArrayList<>();
+
+		public List<String> getAdded() {
+			return added;
+		}
+
+		public List<String> getUpdated() {
+			return updated;
+		}
+
+		public List<String> getRemoved() {
+			return removed;
+		}
+
+		public List<String> getUnchanged() {
+			return unchanged;
+		}
+
+		@Override
+		public String toString() {
+			return added.size() + " added, " + updated.size() + " updated, " + removed.size() + " removed, "
+					+ unchanged.size() + " unchanged";
+		}
+	}
+}
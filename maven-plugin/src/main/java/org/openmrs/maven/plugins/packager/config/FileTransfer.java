@@ -0,0 +1,121 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Copies files that do not need filtering with as little work as possible:
+ *   - if the target already has the same size and last modified date, or the same size and checksum, nothing is done
+ *   - if linking is enabled, and source and target are on the same file system, the target is hard-linked
+ *   - otherwise the bytes are transferred between file channels, which allows the operating system to copy
+ *     the file without passing its contents through the JVM
+ * The target is always replaced rather than overwritten in place, so that a file which is hard-linked to
+ * its source is never modified.
+ */
+public class FileTransfer {
+
+	private boolean link = false;
+
+	public FileTransfer() {}
+
+	public FileTransfer(boolean link) {
+		this.link = link;
+	}
+
+	/**
+	 * Transfers all files within fromDir into toDir, retaining the relative directory structure
+	 * @param excludes patterns of relative paths to exclude, in addition to the standard default excludes
+	 * @return the number of files which needed to be transferred
+	 */
+	public int transferDirectory(File fromDir, File toDir, String... excludes) throws IOException {
+		if (!fromDir.isDirectory()) {
+			return 0;
+		}
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(fromDir);
+		scanner.setExcludes(excludes);
+		scanner.addDefaultExcludes();
+		scanner.scan();
+		int numTransferred = 0;
+		for (String path : scanner.getIncludedFiles()) {
+			if (transfer(new File(fromDir, path), new File(toDir, path))) {
+				numTransferred++;
+			}
+		}
+		return numTransferred;
+	}
+
+	/**
+	 * Transfers the given file to the given target
+	 * @return true if the file was transferred, false if the target was already identical
+	 */
+	public boolean transfer(File from, File to) throws IOException {
+		if (isIdentical(from, to)) {
+			return false;
+		}
+		Path source = from.toPath();
+		Path target = to.toPath();
+		Files.createDirectories(target.getParent());
+		Files.deleteIfExists(target);
+		if (link && Files.getFileStore(source).equals(Files.getFileStore(target.getParent()))) {
+			try {
+				Files.createLink(target, source);
+				return true;
+			}
+			catch (IOException | UnsupportedOperationException e) {
+				link = false;
+			}
+		}
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				long transferred = in.transferTo(position, size - position, out);
+				if (transferred <= 0) {
+					throw new IOException("Unable to transfer " + from + " to " + to + " at position " + position);
+				}
+				position += transferred;
+			}
+		}
+		to.setLastModified(from.lastModified());
+		return true;
+	}
+
+	/**
+	 * @return true if the target exists with the same size as the source, and either the same last modified date
+	 * or the same checksum
+	 */
+	public boolean isIdentical(File from, File to) throws IOException {
+		if (!to.isFile() || to.length() != from.length()) {
+			return false;
+		}
+		if (to.lastModified() == from.lastModified()) {
+			return true;
+		}
+		return Checksums.sha256(from).equals(Checksums.sha256(to));
+	}
+
+	public boolean isLink() {
+		return link;
+	}
+
+	public void setLink(boolean link) {
+		this.link = link;
+	}
+}
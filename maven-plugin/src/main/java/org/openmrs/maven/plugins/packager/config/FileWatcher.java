@@ -0,0 +1,32 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Watches directory trees for changes to the files within them.
+ * Implementations apply the given IgnoreRules, so that no changes are reported for ignored paths.
+ */
+public interface FileWatcher extends Closeable {
+
+	/**
+	 * Starts watching the given directory, and all directories within it
+	 */
+	void watch(Path root) throws IOException;
+
+	/**
+	 * Waits up to the given time for changes, and records any changes into the given change set
+	 * @return true if any changes were recorded
+	 */
+	boolean poll(long timeoutMillis, ChangeSet changes) throws IOException, InterruptedException;
+}
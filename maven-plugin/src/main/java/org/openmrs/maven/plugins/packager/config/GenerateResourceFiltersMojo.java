@@ -11,15 +11,20 @@ package org.openmrs.maven.plugins.packager.config;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.Iterator;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ValueNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -29,42 +34,52 @@ import org.apache.maven.plugins.annotations.Parameter;
  * The purpose of this Mojo is to allow either a standard properties file, or
  * a YAML file to serve as the source of constants when processing other resources.
  * This will take in an input file (default os constants.yml) and will product an output file that can be used as a filter
+ * Several input files may instead be layered, and variants may be defined which layer further files over these.
  */
 @Mojo(name = "generate-resource-filters", defaultPhase = LifecyclePhase.GENERATE_RESOURCES)
 public class GenerateResourceFiltersMojo extends AbstractPackagerConfigMojo {
 
+	private static final Pattern VARIANT_ID_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+
+	private static final List<String> VARIANT_FILE_EXTENSIONS = Arrays.asList("properties", "yml", "yaml");
+
 	@Parameter(property = "sourceFile", defaultValue = "${project.basedir}/constants.yml")
 	private File sourceFile;
 
+	// An ordered list of constants files, such as base, region, and site files, which are used instead of the
+	// sourceFile if specified.  Each may be a properties or yml file, and each overrides any constants of the same
+	// name in the files before it.  Files that do not exist are skipped.
+	@Parameter(property = "sourceFiles")
+	private List<File> sourceFiles;
+
+	// Variants of the configuration to compile alongside it, each with an id and an ordered list of constants files
+	// which override the constants of the project
+	@Parameter
+	private List<Variant> variants;
+
+	// A directory of constants files, each of which defines a variant named after the file, such as site-a.yml
+	@Parameter(property = "variantsSourceDir")
+	private File variantsSourceDir;
+
 	/**
 	 * @throws MojoExecutionException if an error occurs
 	 */
 	public void execute() throws MojoExecutionException {
-		setupResourceFilters();
+		try (BuildMetrics.Timer timer = getMetrics().time("constants")) {
+			setupResourceFilters();
+			setupVariants();
+		}
+		finally {
+			writeMetricsReport();
+		}
 	}
 
 	/**
 	 * Copies source properties or yml to target properties
 	 */
 	protected void setupResourceFilters() throws MojoExecutionException {
-		Properties toStore = new ConstantProperties();
 		try {
-			if (sourceFile != null && sourceFile.exists()) {
-				getLog().info("Source file found at: " + sourceFile);
-
-				if (sourceFile.getAbsolutePath().endsWith(".properties")) {
-					toStore.load(new FileInputStream(sourceFile));
-				}
-				else {
-					ObjectMapper m = getYamlMapper();
-					JsonNode config = m.readTree(sourceFile);
-					toStore = addJsonNodeToProperties("", config, toStore);
-				}
-				getLog().info("Loaded " + toStore.size() + " constants");
-			}
-			else {
-				getLog().info("No constant file found at: " + sourceFile);
-			}
+			Properties toStore = loadConstants(getSourceFiles());
 			ensureCompiledConfigurationDir();
 			savePropertiesToFile(toStore, getCompiledConstantsFile());
 		}
@@ -74,43 +89,104 @@ public class GenerateResourceFiltersMojo extends AbstractPackagerConfigMojo {
 	}
 
 	/**
-	 * Converts from a yml file to a properties file, using:
-	 *   - dot notation (eg. object1.nestedObject2.property)
-	 *   - array notation (eg. object1.nestedArray2[0].property)
+	 * Writes the constants of each variant, consisting of the constants of the project overridden by those of the
+	 * variant, into the variants directory, replacing any variants from a previous build
 	 */
-	private Properties addJsonNodeToProperties(String propertyName, JsonNode node, Properties p) {
-		getLog().debug("Adding json node to properties: " + propertyName);
-		if (node.isObject()) {
-			getLog().debug("Node is an object");
-			ObjectNode objectNode = (ObjectNode) node;
-			for (Iterator<Map.Entry<String, JsonNode>> i = objectNode.fields(); i.hasNext();) {
-				Map.Entry<String, JsonNode> entry = i.next();
-				String newPropertyName = entry.getKey();
-				if (propertyName != null && !propertyName.equals("")) {
-					newPropertyName = propertyName + "." + newPropertyName;
+	protected void setupVariants() throws MojoExecutionException {
+		try {
+			FileUtils.deleteDirectory(getVariantsDir());
+			Set<String> variantIds = new HashSet<>();
+			for (Variant variant : getVariants()) {
+				String id = variant.getId();
+				if (id == null || !VARIANT_ID_PATTERN.matcher(id).matches()) {
+					throw new MojoExecutionException("Variant id '" + id + "' must contain only letters, numbers, '.', '_', and '-'");
 				}
-				addJsonNodeToProperties(newPropertyName, entry.getValue(), p);
+				if (!variantIds.add(id)) {
+					throw new MojoExecutionException("Variant id '" + id + "' is defined more than once");
+				}
+				getLog().info("Loading constants for variant: " + id);
+				List<File> files = new ArrayList<>(getSourceFiles());
+				if (variant.getSourceFiles() != null) {
+					files.addAll(variant.getSourceFiles());
+				}
+				Properties toStore = loadConstants(files);
+				File constantsFile = getVariantConstantsFile(id);
+				Files.createDirectories(constantsFile.getParentFile().toPath());
+				savePropertiesToFile(toStore, constantsFile);
 			}
 		}
-		else if (node.isArray()) {
-			getLog().debug("Node is an array");
-			ArrayNode arrayNode = (ArrayNode) node;
-			for (int i = 0; i < arrayNode.size(); i++) {
-				addJsonNodeToProperties(propertyName + "[" + i + "]", arrayNode.get(i), p);
+		catch (MojoExecutionException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Unable to setup variants", e);
+		}
+	}
+
+	/**
+	 * @return the configured variants, followed by a variant for each constants file in the variants source directory
+	 */
+	protected List<Variant> getVariants() {
+		List<Variant> ret = new ArrayList<>();
+		if (variants != null) {
+			ret.addAll(variants);
+		}
+		if (variantsSourceDir != null) {
+			File[] files = variantsSourceDir.listFiles(File::isFile);
+			if (files == null) {
+				getLog().info("No variants source directory found at: " + variantsSourceDir);
+			}
+			else {
+				Arrays.sort(files);
+				for (File file : files) {
+					String name = file.getName();
+					String extension = FilenameUtils.getExtension(name);
+					if (VARIANT_FILE_EXTENSIONS.contains(extension.toLowerCase())) {
+						ret.add(new Variant(FilenameUtils.getBaseName(name), Collections.singletonList(file)));
+					}
+				}
 			}
 		}
-		else if (node.isValueNode()) {
-			getLog().debug("Node is a value.");
-			ValueNode valueNode = (ValueNode) node;
-			String value = valueNode.textValue();
-			if (value != null) {
-				getLog().debug("Adding value at: " + propertyName + " = " + value);
-				p.put(propertyName, value);
+		return ret;
+	}
+
+	/**
+	 * @return the configured constants files, in order of increasing precedence
+	 */
+	protected List<File> getSourceFiles() {
+		if (sourceFiles != null && !sourceFiles.isEmpty()) {
+			return sourceFiles;
+		}
+		return sourceFile == null ? Collections.emptyList() : Collections.singletonList(sourceFile);
+	}
+
+	/**
+	 * Loads each of the given properties or yml files in turn, with each overriding any constants of the same name
+	 * @return the merged constants
+	 */
+	protected Properties loadConstants(List<File> files) throws IOException {
+		Properties ret = new ConstantProperties();
+		for (File file : files) {
+			if (file != null && file.exists()) {
+				getLog().info("Source file found at: " + file);
+				Properties constants = new Properties();
+				if (file.getAbsolutePath().endsWith(".properties")) {
+					try (FileInputStream in = new FileInputStream(file)) {
+						constants.load(in);
+					}
+				}
+				else {
+					// Converts from a yml file to a properties file, using dot notation and array notation
+					ObjectMapper m = getYamlMapper();
+					new YamlPropertiesFlattener(getLog()).flatten(m.getFactory(), file, constants);
+				}
+				ret.putAll(constants);
+				getLog().info("Loaded " + constants.size() + " constants");
 			}
 			else {
-				getLog().warn("Value is null");
+				getLog().info("No constant file found at: " + file);
 			}
 		}
-		return p;
+		return ret;
 	}
 }
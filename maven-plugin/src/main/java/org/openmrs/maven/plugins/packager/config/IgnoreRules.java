@@ -0,0 +1,369 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Determines which paths should be ignored when watching for changes.
+ * A path is ignored if:
+ *   - it is within an ignored directory
+ *   - it is hidden, or is one of the explicitly ignored paths
+ *   - it matches one of the default or configured exclude patterns, or a pattern in a .gitignore file
+ *   - it is a file, include patterns are configured, and it matches none of them
+ * Patterns are globs, unless prefixed with "regex:".  Patterns without a "/" are matched against the name of the
+ * file or directory at any depth, otherwise they are matched against its path relative to the watched root.
+ * Patterns within .gitignore files follow the same rules as git, relative to the directory containing the file.
+ * The rules and the result for each directory are cached, so that checking any path only requires matching its own
+ * name and relative path, and excluding a directory costs nothing for the files within it.  The watched roots
+ * themselves are never ignored.
+ */
+public class IgnoreRules {
+
+	/**
+	 * Patterns that are always excluded, for editor backup and swap files and installed node modules
+	 */
+	public static final List<String> DEFAULT_EXCLUDES = Collections.unmodifiableList(
+			Arrays.asList("*~", "*.swp", "*.swo", "#*#", "node_modules")
+	);
+
+	public static final String GITIGNORE_FILE_NAME = ".gitignore";
+
+	private static final String REGEX_PREFIX = "regex:";
+	private static final String GLOB_PREFIX = "glob:";
+
+	private final Set<Path> roots = new HashSet<>();
+
+	private final Set<Path> ignoredPaths = new HashSet<>();
+
+	private final List<String> excludes = new ArrayList<>(DEFAULT_EXCLUDES);
+
+	private final List<String> includes = new ArrayList<>();
+
+	private boolean useGitignore = false;
+
+	private final Map<Path, DirectoryRules> directoryCache = new ConcurrentHashMap<>();
+
+	private final Map<Path, Long> gitignoreFiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds a root directory, which is never ignored, and against which configured patterns are matched
+	 */
+	public void addRoot(Path root) {
+		roots.add(normalize(root));
+		invalidate();
+	}
+
+	/**
+	 * Adds a path to ignore, along with everything within it
+	 */
+	public void addIgnoredPath(Path path) {
+		ignoredPaths.add(normalize(path));
+		invalidate();
+	}
+
+	/**
+	 * Adds a pattern of files and directories to ignore
+	 */
+	public void addExclude(String pattern) {
+		excludes.add(pattern);
+		invalidate();
+	}
+
+	/**
+	 * Adds a pattern of files to watch.  Once any are added, only files that match an include pattern are watched.
+	 */
+	public void addInclude(String pattern) {
+		includes.add(pattern);
+		invalidate();
+	}
+
+	/**
+	 * @param useGitignore if true, paths that are ignored by any .gitignore file within a root are ignored
+	 */
+	public void setUseGitignore(boolean useGitignore) {
+		this.useGitignore = useGitignore;
+		invalidate();
+	}
+
+	/**
+	 * Clears all cached results, so that any changes to .gitignore files are applied
+	 */
+	public void invalidate() {
+		directoryCache.clear();
+		gitignoreFiles.clear();
+	}
+
+	/**
+	 * Clears all cached results if any .gitignore file that was read has since been modified
+	 * @return true if the cached results were cleared
+	 */
+	public boolean refresh() {
+		for (Map.Entry<Path, Long> e : gitignoreFiles.entrySet()) {
+			if (e.getKey().toFile().lastModified() != e.getValue()) {
+				invalidate();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if changes to the given path should be ignored
+	 */
+	public boolean isIgnored(Path path) {
+		return isIgnored(path, Files.isDirectory(path));
+	}
+
+	/**
+	 * @return true if changes to the given path should be ignored
+	 * @param directory true if the path is a directory, to which include patterns do not apply
+	 */
+	public boolean isIgnored(Path path, boolean directory) {
+		Path p = normalize(path);
+		if (roots.contains(p)) {
+			return false;
+		}
+		Path parent = p.getParent();
+		if (parent == null) {
+			return false;
+		}
+		DirectoryRules parentRules = getDirectoryRules(parent);
+		return parentRules.ignored || isIgnored(p, directory, parentRules);
+	}
+
+	/**
+	 * @return true if the given path should be ignored, given the rules that apply within its parent directory
+	 */
+	private boolean isIgnored(Path path, boolean directory, DirectoryRules parentRules) {
+		if (ignoredPaths.contains(path)) {
+			return true;
+		}
+		String name = path.getFileName().toString();
+		if (name.startsWith(".")) {
+			return true;
+		}
+		boolean ignored = false;
+		for (PathPattern pattern : parentRules.excludes) {
+			if (pattern.matches(path, name, directory)) {
+				ignored = !pattern.negated;
+			}
+		}
+		if (ignored) {
+			return true;
+		}
+		if (!directory && !parentRules.includes.isEmpty()) {
+			for (PathPattern pattern : parentRules.includes) {
+				if (pattern.matches(path, name, false)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the cached rules that apply within the given directory, computing them if needed
+	 */
+	private DirectoryRules getDirectoryRules(Path directory) {
+		DirectoryRules rules = directoryCache.get(directory);
+		if (rules == null) {
+			rules = new DirectoryRules();
+			if (roots.contains(directory)) {
+				for (String exclude : excludes) {
+					rules.excludes.add(PathPattern.parse(exclude, directory));
+				}
+				for (String include : includes) {
+					rules.includes.add(PathPattern.parse(include, directory));
+				}
+				addGitignorePatterns(directory, rules);
+			}
+			else if (directory.getParent() != null) {
+				DirectoryRules parentRules = getDirectoryRules(directory.getParent());
+				rules.excludes.addAll(parentRules.excludes);
+				rules.includes.addAll(parentRules.includes);
+				rules.ignored = parentRules.ignored || isIgnored(directory, true, parentRules);
+				if (!rules.ignored) {
+					addGitignorePatterns(directory, rules);
+				}
+			}
+			directoryCache.put(directory, rules);
+		}
+		return rules;
+	}
+
+	/**
+	 * Adds any patterns in a .gitignore file within the given directory to the given rules
+	 */
+	private void addGitignorePatterns(Path directory, DirectoryRules rules) {
+		if (!useGitignore) {
+			return;
+		}
+		File gitignore = directory.resolve(GITIGNORE_FILE_NAME).toFile();
+		if (!gitignore.isFile()) {
+			return;
+		}
+		gitignoreFiles.put(gitignore.toPath(), gitignore.lastModified());
+		try {
+			for (String line : Files.readAllLines(gitignore.toPath(), StandardCharsets.UTF_8)) {
+				String pattern = line.trim();
+				if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+					rules.excludes.add(PathPattern.parseGitignore(pattern, directory));
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to read " + gitignore, e);
+		}
+	}
+
+	private Path normalize(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * The patterns that apply within a directory, and whether the directory itself is ignored
+	 */
+	private static class DirectoryRules {
+		private boolean ignored = false;
+		private final List<PathPattern> excludes = new ArrayList<>();
+		private final List<PathPattern> includes = new ArrayList<>();
+	}
+
+	/**
+	 * A compiled pattern, matched either against the name of a path, or against its path relative to a base directory
+	 */
+	static class PathPattern {
+
+		private final Pattern regex;
+		private final Path baseDir;
+		private final boolean anchored;
+		private final boolean directoryOnly;
+		private final boolean negated;
+
+		private PathPattern(Pattern regex, Path baseDir, boolean anchored, boolean directoryOnly, boolean negated) {
+			this.regex = regex;
+			this.baseDir = baseDir;
+			this.anchored = anchored;
+			this.directoryOnly = directoryOnly;
+			this.negated = negated;
+		}
+
+		/**
+		 * Parses a configured pattern, which is a glob unless it is prefixed with "regex:"
+		 */
+		static PathPattern parse(String pattern, Path baseDir) {
+			if (pattern.startsWith(REGEX_PREFIX)) {
+				String regex = pattern.substring(REGEX_PREFIX.length());
+				return new PathPattern(Pattern.compile(regex), baseDir, regex.contains("/"), false, false);
+			}
+			String glob = pattern.startsWith(GLOB_PREFIX) ? pattern.substring(GLOB_PREFIX.length()) : pattern;
+			boolean anchored = glob.contains("/");
+			if (glob.startsWith("/")) {
+				glob = glob.substring(1);
+			}
+			return new PathPattern(Pattern.compile(globToRegex(glob)), baseDir, anchored, false, false);
+		}
+
+		/**
+		 * Parses a pattern from a .gitignore file, which may be negated with "!", or restricted to directories with "/"
+		 */
+		static PathPattern parseGitignore(String pattern, Path baseDir) {
+			boolean negated = pattern.startsWith("!");
+			String glob = negated ? pattern.substring(1) : pattern;
+			boolean directoryOnly = glob.endsWith("/");
+			if (directoryOnly) {
+				glob = glob.substring(0, glob.length() - 1);
+			}
+			boolean anchored = glob.contains("/");
+			if (glob.startsWith("/")) {
+				glob = glob.substring(1);
+			}
+			return new PathPattern(Pattern.compile(globToRegex(glob)), baseDir, anchored, directoryOnly, negated);
+		}
+
+		boolean matches(Path path, String name, boolean directory) {
+			if (directoryOnly && !directory) {
+				return false;
+			}
+			if (!anchored) {
+				return regex.matcher(name).matches();
+			}
+			if (!path.startsWith(baseDir)) {
+				return false;
+			}
+			return regex.matcher(baseDir.relativize(path).toString().replace(File.separatorChar, '/')).matches();
+		}
+
+		/**
+		 * Converts a glob into a regular expression, in which "**" matches across directories, "*" and "?" match
+		 * within a single file name, and "[...]" matches a character class
+		 */
+		static String globToRegex(String glob) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < glob.length(); i++) {
+				char c = glob.charAt(i);
+				if (c == '*') {
+					if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+						if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+							sb.append("(?:.*/)?");
+							i += 2;
+						}
+						else {
+							sb.append(".*");
+							i++;
+						}
+					}
+					else {
+						sb.append("[^/]*");
+					}
+				}
+				else if (c == '?') {
+					sb.append("[^/]");
+				}
+				else if (c == '[') {
+					int end = glob.indexOf(']', i + 1);
+					if (end < 0) {
+						sb.append("\\[");
+					}
+					else {
+						String characterClass = glob.substring(i + 1, end);
+						if (characterClass.startsWith("!")) {
+							characterClass = "^" + characterClass.substring(1);
+						}
+						sb.append('[').append(characterClass.replace("\\", "\\\\")).append(']');
+						i = end;
+					}
+				}
+				else if ("\\.^$|+(){}".indexOf(c) >= 0) {
+					sb.append('\\').append(c);
+				}
+				else {
+					sb.append(c);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Compiles a configuration from a set of dependency directories and a source directory into an output directory,
+ * using a manifest of the previous compilation to only process the files that have changed.
+ * Each file in the output is taken from the last directory that contains it, so files in the source directory
+ * override those of the dependencies, and each dependency overrides those declared before it.
+ * A file is reprocessed if:
+ *   - it was not previously compiled, or its output no longer exists
+ *   - it is now taken from a different directory, because it has been newly added to or removed from a directory
+ *   - its contents have changed
+ *   - it references a constant whose value has changed
+ * Any previously compiled file that no longer exists in any directory is removed from the output.
+ * Compilation stops between files if it is cancelled or the compiling thread is interrupted, in which case the
+ * manifest is left unchanged so that the next compilation processes any files that were already written.
+ */
+public class IncrementalCompiler {
+
+	// The constants file within each dependency is merged into the compiled constants rather than copied
+	public static final String CONSTANTS_FILE_NAME = "constants.properties";
+
+	private final File outputDir;
+	private final File manifestFile;
+	private final Log log;
+
+	private CompileManifest manifest;
+
+	private BooleanSupplier cancelled = () -> false;
+
+	public IncrementalCompiler(File outputDir, File manifestFile, Log log) {
+		this.outputDir = outputDir;
+		this.manifestFile = manifestFile;
+		this.log = log;
+	}
+
+	/**
+	 * @return the source file for each path in the compiled output, keyed on the relative path
+	 */
+	public static Map<String, File> getSources(List<File> dependencyDirs, File sourceDir) {
+		Map<String, File> sources = new LinkedHashMap<>();
+		for (File dependencyDir : dependencyDirs) {
+			for (String path : ResourceFilter.scanDirectory(dependencyDir)) {
+				if (!path.equals(CONSTANTS_FILE_NAME)) {
+					sources.put(path, new File(dependencyDir, path));
+				}
+			}
+		}
+		if (sourceDir != null) {
+			for (String path : ResourceFilter.scanDirectory(sourceDir)) {
+				sources.put(path, new File(sourceDir, path));
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Brings the output directory up to date with the given sources, filtering with the given filter
+	 * @return the paths that were added, updated, or removed in the output directory
+	 */
+	public Result compile(Map<String, File> sources, ResourceFilter filter) throws IOException {
+		CompileManifest previous = getManifest();
+		Map<String, String> constants = getConstantChecksums(filter);
+		Set<String> changedConstants = previous.getChangedConstants(constants);
+		if (!changedConstants.isEmpty()) {
+			log.info(changedConstants.size() + " constants have changed since the last compilation");
+		}
+
+		Result result = new Result();
+		Map<String, CompileManifest.Entry> entries = new HashMap<>();
+		for (Map.Entry<String, File> e : sources.entrySet()) {
+			compileFile(e.getKey(), e.getValue(), previous.getEntries().get(e.getKey()), filter, changedConstants, entries, result);
+		}
+		for (String path : previous.getEntries().keySet()) {
+			if (!sources.containsKey(path)) {
+				Files.deleteIfExists(new File(outputDir, path).toPath());
+				result.getRemoved().add(path);
+			}
+		}
+		saveManifest(constants, entries);
+		log.info("Compiled " + outputDir + ": " + result);
+		return result;
+	}
+
+	/**
+	 * Brings only the given paths in the output directory up to date, without scanning the rest of the sources.
+	 * This assumes that the constants are unchanged since the last compilation.
+	 * @param paths relative paths that may have been added, changed, or removed in any of the directories.  A path to
+	 *              a directory applies to all of the files within it.
+	 * @return the paths that were added, updated, or removed in the output directory
+	 */
+	public Result compile(Collection<String> paths, List<File> dependencyDirs, File sourceDir, ResourceFilter filter) throws IOException {
+		CompileManifest previous = getManifest();
+		List<File> layers = new ArrayList<>(dependencyDirs);
+		if (sourceDir != null) {
+			layers.add(sourceDir);
+		}
+		Set<String> affectedPaths = new TreeSet<>();
+		for (String path : paths) {
+			String prefix = path + "/";
+			for (String compiledPath : previous.getEntries().keySet()) {
+				if (compiledPath.equals(path) || compiledPath.startsWith(prefix)) {
+					affectedPaths.add(compiledPath);
+				}
+			}
+			for (File layer : layers) {
+				File file = new File(layer, path);
+				if (file.isDirectory()) {
+					for (String pathInDirectory : ResourceFilter.scanDirectory(file)) {
+						affectedPaths.add(prefix + pathInDirectory);
+					}
+				}
+				else if (file.isFile() && !ResourceFilter.isDefaultExcluded(path)) {
+					affectedPaths.add(path);
+				}
+			}
+		}
+
+		Result result = new Result();
+		Map<String, CompileManifest.Entry> entries = new HashMap<>(previous.getEntries());
+		for (String path : affectedPaths) {
+			File source = getSource(path, dependencyDirs, sourceDir);
+			if (source != null) {
+				compileFile(path, source, previous.getEntries().get(path), filter, Collections.emptySet(), entries, result);
+			}
+			else if (entries.remove(path) != null) {
+				Files.deleteIfExists(new File(outputDir, path).toPath());
+				result.getRemoved().add(path);
+			}
+		}
+		saveManifest(previous.getConstants(), entries);
+		log.info("Compiled " + affectedPaths.size() + " affected paths in " + outputDir + ": " + result);
+		return result;
+	}
+
+	/**
+	 * @return the file in the last directory that contains the given path, or null if no directory contains it
+	 */
+	protected File getSource(String path, List<File> dependencyDirs, File sourceDir) {
+		if (sourceDir != null && new File(sourceDir, path).isFile()) {
+			return new File(sourceDir, path);
+		}
+		if (!path.equals(CONSTANTS_FILE_NAME)) {
+			for (int i = dependencyDirs.size() - 1; i >= 0; i--) {
+				File file = new File(dependencyDirs.get(i), path);
+				if (file.isFile()) {
+					return file;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Filters the given source into the output if it is new or changed, or references a changed constant,
+	 * and records the resulting entry and outcome
+	 */
+	private void compileFile(String path, File source, CompileManifest.Entry entry, ResourceFilter filter,
+							 Set<String> changedConstants, Map<String, CompileManifest.Entry> entries, Result result) throws IOException {
+		if (cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Compilation of " + outputDir + " was cancelled");
+		}
+		File output = new File(outputDir, path);
+		String checksum = null;
+		boolean process = (entry == null || !output.exists() || !source.getAbsolutePath().equals(entry.getSource()));
+		if (!process && !entry.isSameSource(source)) {
+			checksum = Checksums.sha256(source);
+			process = !checksum.equals(entry.getChecksum());
+		}
+		if (!process) {
+			for (String reference : entry.getReferences()) {
+				if (changedConstants.contains(reference)) {
+					process = true;
+					break;
+				}
+			}
+		}
+		if (process) {
+			Set<String> references = new HashSet<>();
+			filter.copyFile(source, output, references);
+			entries.put(path, new CompileManifest.Entry(source, checksum == null ? Checksums.sha256(source) : checksum, references));
+			if (entry == null) {
+				result.getAdded().add(path);
+			}
+			else {
+				result.getUpdated().add(path);
+			}
+		}
+		else {
+			entries.put(path, new CompileManifest.Entry(source, entry.getChecksum(), entry.getReferences()));
+			result.getUnchanged().add(path);
+		}
+	}
+
+	private void saveManifest(Map<String, String> constants, Map<String, CompileManifest.Entry> entries) throws IOException {
+		manifest = new CompileManifest();
+		manifest.setConstants(constants);
+		manifest.setEntries(entries);
+		if (manifestFile != null) {
+			manifest.save(manifestFile);
+		}
+	}
+
+	/**
+	 * @return the manifest of the last compilation, which is loaded from the manifest file if needed
+	 */
+	public CompileManifest getManifest() {
+		if (manifest == null) {
+			manifest = CompileManifest.load(manifestFile);
+		}
+		return manifest;
+	}
+
+	/**
+	 * @param cancelled checked before each file is compiled, and stops the compilation once it returns true
+	 */
+	public void setCancelled(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * @return the checksum of the value of each constant available to the given filter
+	 */
+	protected Map<String, String> getConstantChecksums(ResourceFilter filter) {
+		Map<String, String> ret = new HashMap<>();
+		for (String key : filter.getValues().stringPropertyNames()) {
+			ret.put(key, Checksums.sha256(filter.getValues().getProperty(key)));
+		}
+		return ret;
+	}
+
+	/**
+	 * Summarizes the changes made to the output directory by a compilation
+	 */
+	public static class Result {
+
+		private final List<String> added = new ArrayList<>();
+		private final List<String> updated = new ArrayList<>();
+		private final List<String> removed = new ArrayList<>();
+		private final List<String> unchanged = new ArrayList<>();
+
+		/**
+		 * @return true if any files were added, updated, or removed
+		 */
+		public boolean hasChanges() {
+			return !added.isEmpty() || !updated.isEmpty() || !removed.isEmpty();
+		}
+
+		public List<String> getAdded() {
+			return added;
+		}
+
+		public List<String> getUpdated() {
+			return updated;
+		}
+
+		public List<String> getRemoved() {
+			return removed;
+		}
+
+		public List<String> getUnchanged() {
+			return unchanged;
+		}
+
+		@Override
+		public String toString() {
+			return added.size() + " added, " + updated.size() + " updated, " + removed.size() + " removed, "
+					+ unchanged.size() + " unchanged";
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Knows which Initializer domains refer to the metadata of which other domains, so that a configuration can be split
+ * into partitions of domains which can be loaded and validated independently of each other.
+ *   - domains are listed in the order in which Initializer loads them
+ *   - a domain depends on another if its files may refer to metadata defined in the other, such as forms referring
+ *     to concepts, so both must be loaded into the same context for the domain to be validated
+ *   - domains which are not known here, such as those of newer Initializer versions, are assumed to have no
+ *     dependencies unless they are given
+ */
+public class InizDomains {
+
+	private static final Map<String, List<String>> DEPENDENCIES = new LinkedHashMap<>();
+
+	static {
+		add("metadatasharing");
+		add("privileges");
+		add("encountertypes", "privileges");
+		add("encounterroles");
+		add("roles", "privileges");
+		add("globalproperties");
+		add("attributetypes");
+		add("locationtags");
+		add("locations", "locationtags", "attributetypes");
+		add("locationtagmaps", "locations", "locationtags");
+		add("visittypes");
+		add("patientidentifiertypes");
+		add("relationshiptypes");
+		add("providerroles", "relationshiptypes");
+		add("idgen", "patientidentifiertypes", "locations");
+		add("autogenerationoptions", "idgen", "patientidentifiertypes", "locations");
+		add("addresshierarchy");
+		add("conceptclasses");
+		add("conceptsources");
+		add("ocl", "conceptclasses", "conceptsources");
+		add("concepts", "conceptclasses", "conceptsources", "ocl");
+		add("conceptsets", "concepts");
+		add("conceptreferenceranges", "concepts");
+		// Person attribute types of the Concept format refer to a concept by their foreign uuid
+		add("personattributetypes", "concepts");
+		add("fhirconceptsources", "conceptsources");
+		add("fhirpatientidentifiersystems", "patientidentifiertypes");
+		add("programs", "concepts");
+		add("programworkflows", "programs", "concepts");
+		add("programworkflowstates", "programworkflows", "concepts");
+		add("ordertypes", "conceptclasses");
+		add("orderfrequencies", "concepts");
+		add("drugs", "concepts");
+		add("queues", "concepts", "locations");
+		add("appointmentsspecialities");
+		add("appointmentsservicedefinitions", "appointmentsspecialities", "locations", "concepts");
+		add("paymentmodes");
+		add("cashpoints", "locations");
+		add("billableservices", "concepts");
+		add("datafiltermappings", "locations", "programs", "roles", "privileges");
+		add("metadatasets");
+		add("metadatasetmembers", "metadatasets", "encountertypes", "locations", "patientidentifiertypes",
+				"personattributetypes", "relationshiptypes", "visittypes");
+		add("metadatatermmappings", "metadatasets", "conceptsources", "encountertypes", "locations",
+				"patientidentifiertypes", "personattributetypes", "programs", "relationshiptypes", "roles", "visittypes");
+		add("bahmniforms", "concepts");
+		add("htmlforms", "concepts", "encountertypes", "encounterroles", "locations", "programs", "programworkflows",
+				"programworkflowstates", "drugs", "orderfrequencies", "patientidentifiertypes", "personattributetypes",
+				"relationshiptypes", "roles");
+		add("ampathforms", "concepts", "encountertypes", "encounterroles");
+		add("ampathformstranslations", "ampathforms");
+		add("messageproperties");
+		add("jsonkeyvalues");
+		add("liquibase");
+	}
+
+	private static void add(String domain, String... dependencies) {
+		DEPENDENCIES.put(domain, Collections.unmodifiableList(Arrays.asList(dependencies)));
+	}
+
+	private final Map<String, Collection<String>> extraDependencies;
+
+	public InizDomains() {
+		this(null);
+	}
+
+	/**
+	 * @param extraDependencies additional dependencies of each domain, which add to those known here
+	 */
+	public InizDomains(Map<String, ? extends Collection<String>> extraDependencies) {
+		this.extraDependencies = new HashMap<>();
+		if (extraDependencies != null) {
+			this.extraDependencies.putAll(extraDependencies);
+		}
+	}
+
+	/**
+	 * @return true if the given directory name is a domain known to Initializer
+	 */
+	public static boolean isKnownDomain(String domain) {
+		return DEPENDENCIES.containsKey(domain);
+	}
+
+	/**
+	 * @return the domains that the given domain directly depends on
+	 */
+	public Set<String> getDependencies(String domain) {
+		Set<String> dependencies = new TreeSet<>();
+		List<String> known = DEPENDENCIES.get(domain);
+		if (known != null) {
+			dependencies.addAll(known);
+		}
+		Collection<String> extra = extraDependencies.get(domain);
+		if (extra != null) {
+			dependencies.addAll(extra);
+		}
+		return dependencies;
+	}
+
+	/**
+	 * @return true if the given domain is the given dependency, or depends on it directly or indirectly
+	 */
+	public boolean dependsOn(String domain, String dependency) {
+		Set<String> visited = new TreeSet<>();
+		List<String> toVisit = new ArrayList<>(Collections.singletonList(domain));
+		while (!toVisit.isEmpty()) {
+			String next = toVisit.remove(toVisit.size() - 1);
+			if (next.equals(dependency)) {
+				return true;
+			}
+			if (visited.add(next)) {
+				toVisit.addAll(getDependencies(next));
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the names of the domain directories in the given configuration directory, sorted
+	 */
+	public static List<String> getDomains(File configurationDir) {
+		List<String> domains = new ArrayList<>();
+		File[] files = configurationDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && !file.isHidden()) {
+					domains.add(file.getName());
+				}
+			}
+		}
+		Collections.sort(domains);
+		return domains;
+	}
+
+	/**
+	 * Splits the given domains into partitions, such that every domain is in the same partition as all of the given
+	 * domains that it depends on, directly or indirectly, including through domains that are not given.
+	 * @return the partitions, each with its domains in loading order, largest partition first
+	 */
+	public List<List<String>> partition(Collection<String> domains) {
+		// Union-find over the dependency graph, where each partition is the set of domains with the same root
+		Map<String, String> parents = new HashMap<>();
+		for (String domain : domains) {
+			parents.put(domain, domain);
+		}
+		for (String domain : domains) {
+			for (String dependency : domains) {
+				if (!domain.equals(dependency) && dependsOn(domain, dependency)) {
+					String root = findRoot(parents, domain);
+					String dependencyRoot = findRoot(parents, dependency);
+					if (!root.equals(dependencyRoot)) {
+						parents.put(root, dependencyRoot);
+					}
+				}
+			}
+		}
+		Map<String, List<String>> partitions = new TreeMap<>();
+		for (String domain : domains) {
+			partitions.computeIfAbsent(findRoot(parents, domain), k -> new ArrayList<>()).add(domain);
+		}
+		List<List<String>> ret = new ArrayList<>(partitions.values());
+		for (List<String> partition : ret) {
+			partition.sort(InizDomains::compareLoadingOrder);
+		}
+		ret.sort((p1, p2) -> p2.size() - p1.size());
+		return ret;
+	}
+
+	private static String findRoot(Map<String, String> parents, String domain) {
+		String root = domain;
+		while (!parents.get(root).equals(root)) {
+			root = parents.get(root);
+		}
+		// Compress the path, so that later lookups are direct
+		while (!parents.get(domain).equals(root)) {
+			String parent = parents.get(domain);
+			parents.put(domain, root);
+			domain = parent;
+		}
+		return root;
+	}
+
+	/**
+	 * Orders known domains in the order that Initializer loads them, followed by any unknown domains by name
+	 */
+	private static int compareLoadingOrder(String d1, String d2) {
+		int i1 = indexOf(d1);
+		int i2 = indexOf(d2);
+		return (i1 != i2 ? Integer.compare(i1, i2) : d1.compareTo(d2));
+	}
+
+	private static int indexOf(String domain) {
+		int i = 0;
+		for (String known : DEPENDENCIES.keySet()) {
+			if (known.equals(domain)) {
+				return i;
+			}
+			i++;
+		}
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches for changes using the native file system notifications of the operating system.
+ * Where the platform supports watching a whole directory tree with a single registration, each root is registered
+ * once.  Otherwise each directory is registered individually, skipping any ignored directories entirely, and
+ * registering each directory only once, so that large ignored trees such as the build directory do not consume
+ * any of the limited number of watches available.
+ */
+public class NativeFileWatcher implements FileWatcher {
+
+	private final WatchService watchService;
+	private final IgnoreRules ignoreRules;
+	private final Log log;
+
+	private final Map<WatchKey, Path> registeredKeys = new HashMap<>();
+	private final Map<Path, WatchKey> registeredDirectories = new HashMap<>();
+
+	private WatchEvent.Modifier fileTreeModifier;
+
+	public NativeFileWatcher(IgnoreRules ignoreRules, Log log) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.ignoreRules = ignoreRules;
+		this.log = log;
+		this.fileTreeModifier = getFileTreeModifier();
+	}
+
+	@Override
+	public void watch(Path root) throws IOException {
+		if (!Files.isDirectory(root)) {
+			log.warn("Unable to watch " + root + " as it is not a directory");
+			return;
+		}
+		ignoreRules.addRoot(root);
+		if (fileTreeModifier != null) {
+			try {
+				register(root, fileTreeModifier);
+				return;
+			}
+			catch (UnsupportedOperationException e) {
+				log.debug("Watching a directory tree is not supported, watching each directory instead");
+				fileTreeModifier = null;
+			}
+		}
+		registerTree(root);
+	}
+
+	@Override
+	public boolean poll(long timeoutMillis, ChangeSet changes) throws IOException, InterruptedException {
+		boolean changed = false;
+		WatchKey key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		while (key != null) {
+			try {
+				Path directory = registeredKeys.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						changes.markOverflow();
+						changed = true;
+					}
+					else if (directory != null && event.context() instanceof Path) {
+						Path path = directory.resolve((Path) event.context());
+						log.debug(event.kind().name() + " " + event.context() + " in " + directory);
+						if (path.endsWith(IgnoreRules.GITIGNORE_FILE_NAME)) {
+							ignoreRules.invalidate();
+						}
+						if (ignoreRules.isIgnored(path)) {
+							continue;
+						}
+						// Modifications to a directory only reflect changes to its contents, which are reported separately
+						if (Files.isDirectory(path)) {
+							if (event.kind() == ENTRY_MODIFY) {
+								continue;
+							}
+							if (event.kind() == ENTRY_CREATE && fileTreeModifier == null) {
+								registerTree(path);
+							}
+						}
+						changes.add(event.kind(), path);
+						changed = true;
+					}
+				}
+			}
+			finally {
+				if (!key.reset()) {
+					Path directory = registeredKeys.remove(key);
+					if (directory != null) {
+						registeredDirectories.remove(directory);
+					}
+				}
+			}
+			key = watchService.poll();
+		}
+		return changed;
+	}
+
+	/**
+	 * Registers the given directory and all non-ignored directories within it that are not already registered
+	 */
+	protected void registerTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+				if (ignoreRules.isIgnored(path, true)) {
+					log.debug("Ignored path: " + path);
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				if (!registeredDirectories.containsKey(path)) {
+					register(path);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			public FileVisitResult visitFileFailed(Path path, IOException e) {
+				log.debug("Unable to watch " + path + ": " + e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path directory, WatchEvent.Modifier... modifiers) throws IOException {
+		WatchKey key = directory.register(watchService, new WatchEvent.Kind<?>[] {ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE}, modifiers);
+		registeredKeys.put(key, directory);
+		registeredDirectories.put(directory, key);
+		log.debug("Registered watcher with path: " + directory);
+	}
+
+	/**
+	 * @return the JDK specific modifier which watches an entire directory tree, if it is available
+	 */
+	private WatchEvent.Modifier getFileTreeModifier() {
+		try {
+			Class<?> modifierClass = Class.forName("com.sun.nio.file.ExtendedWatchEventModifier");
+			return (WatchEvent.Modifier) modifierClass.getField("FILE_TREE").get(null);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the number of directories registered with the watch service
+	 */
+	public int getNumRegistered() {
+		return registeredKeys.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
@@ -9,77 +9,129 @@
  */
 package org.openmrs.maven.plugins.packager.config;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.element;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executeMojo;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.goal;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
-
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.util.List;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProjectHelper;
 
 /**
- * The purpose of this Mojo is to package up the compiled configurations into a Zip artifact
+ * The purpose of this Mojo is to package up the compiled configurations into a Zip artifact, along with a Zip
+ * artifact for each compiled variant
  */
 @Mojo(name = "package-configurations", defaultPhase = LifecyclePhase.PACKAGE)
 public class PackageConfigurationsMojo extends AbstractPackagerConfigMojo {
 
+	// The level at which to compress files, from 0 (no compression) to 9 (best compression), or -1 for the default
+	@Parameter(property = "compressionLevel", defaultValue = "-1")
+	private int compressionLevel;
+
+	// The number of threads on which to compress files.  Defaults to the number of available processors
+	@Parameter(property = "archiveThreads", defaultValue = "0")
+	private int archiveThreads;
+
+	// File extensions of formats which are already compressed, and which are stored without compressing them again
+	@Parameter
+	private List<String> storedFileExtensions;
+
+	// The last modified time to give to every file in the zip, so that the zip is reproducible.  Either an ISO-8601
+	// date and time with an offset, or a number of seconds since the epoch.  Defaults to 1980-02-01T00:00:00Z
+	@Parameter(defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
+	// If true, the compressed contents of files which are unchanged since the last packaging are copied from the
+	// previous zip file, based on a manifest persisted in the build directory, rather than compressed again
+	@Parameter(property = "incremental", defaultValue = "false")
+	private boolean incremental;
+
+	@Component
+	private MavenProjectHelper projectHelper;
+
 	/**
 	 * @throws MojoExecutionException if an error occurs
 	 */
 	public void execute() throws MojoExecutionException {
-		createArchive();
+		try (BuildMetrics.Timer timer = getMetrics().time("package")) {
+			createArchive();
+			createVariantArchives();
+		}
+		finally {
+			writeMetricsReport();
+		}
 	}
 
 	/**
-	 * Executes the Maven assembly plugin in order to create a packaged zip artifact
+	 * Creates a packaged zip artifact from the compiled configuration
 	 */
 	protected void createArchive() throws MojoExecutionException {
 		getLog().info("Creating archive");
+		File zipFile = new File(getBuildDir(), getMavenProject().getBuild().getFinalName() + ".zip");
+		writeArchive(getCompiledConfigurationDir(), zipFile);
+		Artifact artifact = getMavenProject().getArtifact();
+		if ("zip".equals(artifact.getType())) {
+			artifact.setFile(zipFile);
+		}
+		else {
+			projectHelper.attachArtifact(getMavenProject(), "zip", null, zipFile);
+		}
+	}
 
-		// Write descriptor xml
-		String assemblyFileName = "packager-config-assembly.xml";
-		File assemblyFile = new File(getPluginBuildDir(), assemblyFileName);
-		copyResourceToFile(assemblyFileName, assemblyFile);
-
-		executeMojo(
-				plugin("org.apache.maven.plugins", "maven-assembly-plugin", "3.1.0"),
-				goal("single"),
-				configuration(
-						element("appendAssemblyId", "false"),
-						element("descriptors",
-								element("descriptor", assemblyFile.getAbsolutePath())
-						)
-				),
-				getMavenExecutionEnvironment()
-		);
+	/**
+	 * Creates a zip artifact for each compiled variant, each of which is attached to the project with the id of the
+	 * variant as its classifier
+	 */
+	protected void createVariantArchives() throws MojoExecutionException {
+		List<String> variantIds = getVariantIds();
+		if (variantIds.isEmpty()) {
+			return;
+		}
+		getLog().info("Creating archives for " + variantIds.size() + " variants");
+		for (String variantId : variantIds) {
+			File zipFile = new File(getBuildDir(), getMavenProject().getBuild().getFinalName() + "-" + variantId + ".zip");
+			writeArchive(getVariantConfigurationDir(variantId), zipFile);
+			projectHelper.attachArtifact(getMavenProject(), "zip", variantId, zipFile);
+		}
 	}
 
 	/**
-	 * Copies a classpath resource to the Filesystem
+	 * Writes the contents of the given directory into the given zip file
 	 */
-	private void copyResourceToFile(String resource, File file) throws MojoExecutionException {
-		InputStream is = null;
-		OutputStream os = null;
+	protected void writeArchive(File dir, File zipFile) throws MojoExecutionException {
+		ZipArchiver archiver = new ZipArchiver();
 		try {
-			is = getClass().getClassLoader().getResourceAsStream(resource);
-			os = new FileOutputStream(file);
-			IOUtils.copy(is, os);
+			archiver.setCompressionLevel(compressionLevel);
+			Long timestamp = ZipArchiver.parseTimestamp(outputTimestamp);
+			if (timestamp != null) {
+				archiver.setTimestamp(timestamp);
+			}
 		}
-		catch (Exception e) {
-			throw new MojoExecutionException("Error copying " + resource + " to " + file, e);
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid archive configuration", e);
 		}
-		finally {
-			IOUtils.closeQuietly(is);
-			IOUtils.closeQuietly(os);
+		archiver.setThreads(archiveThreads > 0 ? archiveThreads : Runtime.getRuntime().availableProcessors());
+		if (storedFileExtensions != null) {
+			archiver.setStoredFileExtensions(storedFileExtensions);
+		}
+		if (incremental) {
+			archiver.setManifestFile(new File(getPluginBuildDir(), "package-manifests/" + zipFile.getName() + ".json"));
+		}
+		try {
+			long start = System.currentTimeMillis();
+			ZipArchiver.Result result = archiver.archive(dir, zipFile);
+			long duration = System.currentTimeMillis() - start;
+			getMetrics().increment(BuildMetrics.ARCHIVE_FILES, result.getNumFiles());
+			getMetrics().increment(BuildMetrics.ARCHIVE_FILES_REUSED, result.getNumReused());
+			getMetrics().increment(BuildMetrics.BYTES_WRITTEN, zipFile.length());
+			getLog().info("Wrote " + result + " to " + zipFile + " in " + duration + "ms");
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Error creating archive " + zipFile + " from " + dir, e);
 		}
 	}
-
 }
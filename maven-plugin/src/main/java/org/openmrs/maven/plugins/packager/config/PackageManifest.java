@@ -0,0 +1,132 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records the state of the files written into a zip file, so that a subsequent packaging can copy the compressed
+ * contents of unchanged files from the previous zip file rather than compressing them again
+ */
+public class PackageManifest implements Serializable {
+
+	// The settings that the zip file was written with, which must match for any entry to be reused
+	private String settings;
+
+	// The details of each file in the zip file, keyed on its path within the zip file
+	private Map<String, Entry> entries = new TreeMap<>();
+
+	public PackageManifest() {}
+
+	public PackageManifest(String settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @return the manifest read from the given file, or an empty manifest if the file does not exist or cannot be read
+	 */
+	public static PackageManifest load(File file) {
+		if (file != null && file.exists()) {
+			try {
+				return new ObjectMapper().readValue(file, PackageManifest.class);
+			}
+			catch (IOException e) {
+				// An unreadable manifest simply results in a full packaging
+			}
+		}
+		return new PackageManifest();
+	}
+
+	/**
+	 * Writes this manifest to the given file
+	 */
+	public void save(File file) throws IOException {
+		new ObjectMapper().writeValue(file, this);
+	}
+
+	public String getSettings() {
+		return settings;
+	}
+
+	public void setSettings(String settings) {
+		this.settings = settings;
+	}
+
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(Map<String, Entry> entries) {
+		this.entries = new TreeMap<>(entries);
+	}
+
+	/**
+	 * The details of a single file written into the zip file
+	 */
+	public static class Entry implements Serializable {
+
+		private long size;
+		private long lastModified;
+		private long crc;
+		private String checksum;
+
+		public Entry() {}
+
+		public Entry(File file) {
+			this.size = file.length();
+			this.lastModified = file.lastModified();
+		}
+
+		/**
+		 * @return true if the given entry has the same size and last modified date as this entry
+		 */
+		public boolean isSameFile(Entry entry) {
+			return entry.size == size && entry.lastModified == lastModified;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public void setSize(long size) {
+			this.size = size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public void setLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public void setCrc(long crc) {
+			this.crc = crc;
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public void setChecksum(String checksum) {
+			this.checksum = checksum;
+		}
+	}
+}
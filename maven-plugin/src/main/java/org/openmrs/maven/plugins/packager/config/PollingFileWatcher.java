@@ -0,0 +1,162 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches for changes by periodically scanning each directory tree, and comparing the size and last modified date
+ * of each file against a snapshot taken by the previous scan.  This is slower to detect changes than native
+ * notifications, but works on any file system, including network and virtual machine mounts on which native
+ * notifications are unreliable.  Ignored directories are not scanned, and any changes to .gitignore files are
+ * applied before each scan.
+ */
+public class PollingFileWatcher implements FileWatcher {
+
+	private final long intervalMillis;
+	private final IgnoreRules ignoreRules;
+	private final Log log;
+
+	private final List<Path> roots = new ArrayList<>();
+	private Map<Path, FileState> snapshot = new HashMap<>();
+	private long nextScanTime;
+
+	public PollingFileWatcher(long intervalMillis, IgnoreRules ignoreRules, Log log) {
+		this.intervalMillis = intervalMillis;
+		this.ignoreRules = ignoreRules;
+		this.log = log;
+		this.nextScanTime = System.currentTimeMillis() + intervalMillis;
+	}
+
+	@Override
+	public void watch(Path root) throws IOException {
+		ignoreRules.addRoot(root);
+		roots.add(root);
+		scan(root, snapshot);
+		log.debug("Watching " + root + " by polling every " + intervalMillis + " ms");
+	}
+
+	@Override
+	public boolean poll(long timeoutMillis, ChangeSet changes) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			long now = System.currentTimeMillis();
+			if (nextScanTime > deadline) {
+				Thread.sleep(Math.max(0, deadline - now));
+				return false;
+			}
+			Thread.sleep(Math.max(0, nextScanTime - now));
+			nextScanTime = System.currentTimeMillis() + intervalMillis;
+			if (detectChanges(changes)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Scans all roots, and records the differences from the previous snapshot into the given change set
+	 * @return true if any changes were recorded
+	 */
+	protected boolean detectChanges(ChangeSet changes) throws IOException {
+		ignoreRules.refresh();
+		Map<Path, FileState> current = new HashMap<>();
+		for (Path root : roots) {
+			scan(root, current);
+		}
+		boolean changed = false;
+		for (Map.Entry<Path, FileState> e : current.entrySet()) {
+			FileState previous = snapshot.get(e.getKey());
+			if (previous == null) {
+				changes.add(ChangeSet.Kind.CREATED, e.getKey());
+				changed = true;
+			}
+			else if (!previous.equals(e.getValue())) {
+				changes.add(ChangeSet.Kind.MODIFIED, e.getKey());
+				changed = true;
+			}
+		}
+		for (Path path : snapshot.keySet()) {
+			if (!current.containsKey(path)) {
+				changes.add(ChangeSet.Kind.DELETED, path);
+				changed = true;
+			}
+		}
+		snapshot = current;
+		return changed;
+	}
+
+	/**
+	 * Records the state of each non-ignored file within the given directory into the given snapshot
+	 */
+	protected void scan(Path root, final Map<Path, FileState> into) throws IOException {
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) {
+				return ignoreRules.isIgnored(path, true) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+				if (attributes.isRegularFile() && !ignoreRules.isIgnored(path, false)) {
+					into.put(path, new FileState(attributes.size(), attributes.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			public FileVisitResult visitFileFailed(Path path, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		roots.clear();
+		snapshot.clear();
+	}
+
+	/**
+	 * The size and last modified date of a file at the time of a scan
+	 */
+	private static class FileState {
+
+		private final long size;
+		private final long lastModified;
+
+		FileState(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FileState)) {
+				return false;
+			}
+			FileState that = (FileState) o;
+			return size == that.size && lastModified == that.lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(size) * 31 + Long.hashCode(lastModified);
+		}
+	}
+}
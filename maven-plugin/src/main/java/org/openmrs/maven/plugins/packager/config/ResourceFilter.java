@@ -0,0 +1,325 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * In-process replacement for the copy-resources goal of the maven-resources-plugin, as configured by this plugin.
+ * Files are copied from one directory to another in a single pass, replacing ${...} and @...@ expressions
+ * with the configured values as they are streamed.  This aims to produce byte-for-byte identical output to the
+ * Maven resources plugin, so it follows the same rules:
+ *   - the same default excludes are applied when scanning the source directory
+ *   - expressions do not span lines, and are left untouched if no value is found
+ *   - values are themselves interpolated recursively
+ *   - files with a non-filtered extension are copied as-is
+ */
+public class ResourceFilter {
+
+	/**
+	 * The file extensions which are configured by this plugin to be copied without filtering
+	 */
+	public static final List<String> DEFAULT_NON_FILTERED_FILE_EXTENSIONS = Collections.unmodifiableList(
+			Arrays.asList("zip", "xls", "xlsx", "pdf")
+	);
+
+	// Image extensions that the Maven filtering component never filters, in addition to any configured extensions
+	private static final List<String> IMAGE_FILE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "gif", "bmp", "png");
+
+	// Maximum length of an expression, consistent with the Maven filtering reader
+	private static final int MAX_EXPRESSION_LENGTH = 255;
+
+	// Maximum depth of recursive interpolation of values, to protect against cycles
+	private static final int MAX_RECURSION_DEPTH = 32;
+
+	private final Properties values;
+
+	private Charset encoding = Charset.forName("UTF-8");
+
+	private Set<String> nonFilteredFileExtensions = new HashSet<>(DEFAULT_NON_FILTERED_FILE_EXTENSIONS);
+
+	private FileTransfer fileTransfer = new FileTransfer();
+
+	private BuildMetrics metrics;
+
+	public ResourceFilter(Properties values) {
+		this.values = values;
+	}
+
+	/**
+	 * Copies all files within fromDir into toDir, retaining the relative directory structure
+	 * @return the relative paths of all of the files that were copied
+	 */
+	public List<String> copyDirectory(File fromDir, File toDir) throws IOException {
+		List<String> copied = new ArrayList<>();
+		if (!fromDir.isDirectory()) {
+			return copied;
+		}
+		List<String> paths = scanDirectory(fromDir);
+		if (metrics != null) {
+			metrics.increment(BuildMetrics.FILES_SCANNED, paths.size());
+		}
+		for (String relativePath : paths) {
+			copyFile(new File(fromDir, relativePath), new File(toDir, relativePath));
+			copied.add(relativePath);
+		}
+		return copied;
+	}
+
+	/**
+	 * @return the relative paths of all files within the given directory that would be included in a copy,
+	 * omitting the standard default excludes (version control metadata, editor backup files, etc.)
+	 */
+	public static List<String> scanDirectory(File dir) {
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(dir);
+		scanner.addDefaultExcludes();
+		scanner.scan();
+		List<String> ret = new ArrayList<>();
+		for (String path : scanner.getIncludedFiles()) {
+			ret.add(path.replace(File.separatorChar, '/'));
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	/**
+	 * @return true if the given relative path would be omitted from a directory scan by the standard default excludes
+	 */
+	public static boolean isDefaultExcluded(String relativePath) {
+		String path = relativePath.replace('/', File.separatorChar);
+		for (String exclude : DirectoryScanner.DEFAULTEXCLUDES) {
+			if (SelectorUtils.matchPath(exclude.replace('/', File.separatorChar), path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies a single file, filtering it if it does not have a non-filtered extension
+	 */
+	public void copyFile(File from, File to) throws IOException {
+		copyFile(from, to, null);
+	}
+
+	/**
+	 * Copies a single file, filtering it if it does not have a non-filtered extension.
+	 * Files that are not filtered are transferred without being read into memory, and are not copied at all if the
+	 * target is already identical.  Any existing target is replaced rather than overwritten, so that hard-linked
+	 * targets never modify their source.
+	 * @param referencedKeys if not null, the keys of all expressions found while filtering are added to this set
+	 */
+	public void copyFile(File from, File to, Set<String> referencedKeys) throws IOException {
+		File parent = to.getParentFile();
+		if (parent != null && !parent.exists()) {
+			Files.createDirectories(parent.toPath());
+		}
+		if (isFiltered(from.getName())) {
+			Files.deleteIfExists(to.toPath());
+			filterFile(from, to, referencedKeys);
+			if (metrics != null) {
+				metrics.increment(BuildMetrics.FILES_FILTERED);
+				metrics.increment(BuildMetrics.BYTES_READ, from.length());
+				metrics.increment(BuildMetrics.BYTES_WRITTEN, to.length());
+			}
+		}
+		else {
+			boolean transferred = fileTransfer.transfer(from, to);
+			if (metrics != null) {
+				metrics.increment(transferred ? BuildMetrics.FILES_COPIED : BuildMetrics.FILES_UNCHANGED);
+				if (transferred) {
+					metrics.increment(BuildMetrics.BYTES_READ, from.length());
+					metrics.increment(BuildMetrics.BYTES_WRITTEN, to.length());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streams the given file into the target file, replacing any expressions that can be resolved
+	 */
+	public void filterFile(File from, File to, Set<String> referencedKeys) throws IOException {
+		try (Reader in = new InputStreamReader(new FileInputStream(from), encoding);
+			 Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(to), encoding))) {
+			filter(in, out, referencedKeys);
+		}
+	}
+
+	/**
+	 * Streams from the given reader to the given writer, line by line, replacing any expressions that can be resolved
+	 */
+	public void filter(Reader reader, Writer writer) throws IOException {
+		filter(reader, writer, null);
+	}
+
+	/**
+	 * Streams from the given reader to the given writer, line by line, replacing any expressions that can be resolved
+	 * @param referencedKeys if not null, the keys of all expressions found while filtering are added to this set
+	 */
+	public void filter(Reader reader, Writer writer, Set<String> referencedKeys) throws IOException {
+		BufferedReader in = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1) {
+			line.append((char) c);
+			if (c == '\n') {
+				writer.write(interpolate(line.toString(), 0, referencedKeys));
+				line.setLength(0);
+			}
+		}
+		if (line.length() > 0) {
+			writer.write(interpolate(line.toString(), 0, referencedKeys));
+		}
+	}
+
+	/**
+	 * @return the passed text with all resolvable ${...} and @...@ expressions replaced
+	 */
+	public String interpolate(String text) {
+		return interpolate(text, 0, null);
+	}
+
+	private String interpolate(String text, int depth, Set<String> referencedKeys) {
+		if (text.indexOf('$') < 0 && text.indexOf('@') < 0) {
+			return text;
+		}
+		StringBuilder sb = new StringBuilder(text.length());
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			int keyStart = -1;
+			int keyEnd = -1;
+			if (c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+				keyStart = i + 2;
+				keyEnd = findEnd(text, keyStart, '}');
+			}
+			else if (c == '@') {
+				keyStart = i + 1;
+				keyEnd = findEnd(text, keyStart, '@');
+			}
+			if (keyEnd < 0) {
+				sb.append(c);
+				i++;
+			}
+			else {
+				String value = resolve(text.substring(keyStart, keyEnd), depth, referencedKeys);
+				sb.append(value == null ? text.substring(i, keyEnd + 1) : value);
+				i = keyEnd + 1;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the index of the end delimiter of an expression starting at the given index, or -1 if there is none
+	 */
+	private int findEnd(String text, int start, char endDelimiter) {
+		int max = Math.min(text.length(), start + MAX_EXPRESSION_LENGTH);
+		for (int i = start; i < max; i++) {
+			char c = text.charAt(i);
+			if (c == endDelimiter) {
+				return i;
+			}
+			if (c == '\n' || c == '\r') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the fully interpolated value for the given key, or null if no value is available
+	 */
+	private String resolve(String key, int depth, Set<String> referencedKeys) {
+		if (referencedKeys != null) {
+			referencedKeys.add(key);
+		}
+		String value = values.getProperty(key);
+		if (value == null || depth >= MAX_RECURSION_DEPTH) {
+			return value;
+		}
+		return interpolate(value, depth + 1, referencedKeys);
+	}
+
+	/**
+	 * @return true if a file with the given name would be filtered, false if it would be copied as-is
+	 */
+	public boolean isFiltered(String fileName) {
+		int dotIndex = fileName.lastIndexOf('.');
+		if (dotIndex < 0) {
+			return true;
+		}
+		String extension = fileName.substring(dotIndex + 1).toLowerCase(Locale.ENGLISH);
+		return !nonFilteredFileExtensions.contains(extension) && !IMAGE_FILE_EXTENSIONS.contains(extension);
+	}
+
+	public Properties getValues() {
+		return values;
+	}
+
+	public Charset getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(Charset encoding) {
+		this.encoding = encoding;
+	}
+
+	public Set<String> getNonFilteredFileExtensions() {
+		return nonFilteredFileExtensions;
+	}
+
+	public void setNonFilteredFileExtensions(Collection<String> nonFilteredFileExtensions) {
+		this.nonFilteredFileExtensions = new HashSet<>(nonFilteredFileExtensions);
+	}
+
+	public BuildMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics if not null, the files and bytes that are filtered and copied are counted in these metrics
+	 */
+	public void setMetrics(BuildMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public FileTransfer getFileTransfer() {
+		return fileTransfer;
+	}
+
+	public void setFileTransfer(FileTransfer fileTransfer) {
+		this.fileTransfer = fileTransfer;
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A persistent cache of extracted dependency archives, shared across builds.
+ * Each archive is extracted once into a directory named by the SHA-256 checksum of the archive, and is then
+ * materialized into the build directory by hard-linking the extracted files, falling back to copying them
+ * where hard links are not supported.  If the build directory already contains the contents of the same archive,
+ * nothing is done.  Since entries are keyed by checksum, a changed SNAPSHOT is always extracted again.
+ * The least recently used entries are evicted once the cache grows beyond the configured size.
+ */
+public class UnpackCache {
+
+	private static final String ENTRIES_DIR = "entries";
+	private static final String CHECKSUMS_DIR = "checksums";
+
+	private final File cacheDir;
+	private final long maxSizeBytes;
+	private final Log log;
+	private final Set<String> usedChecksums = Collections.synchronizedSet(new HashSet<>());
+
+	public UnpackCache(File cacheDir, long maxSizeBytes, Log log) {
+		this.cacheDir = cacheDir;
+		this.maxSizeBytes = maxSizeBytes;
+		this.log = log;
+	}
+
+	/**
+	 * Ensures that unpackDir contains exactly the contents of the given dependency archive
+	 * @return true if the archive was served from the cache, false if it needed to be extracted
+	 */
+	public boolean unpack(ConfigDependency d, File archive, File unpackDir) throws IOException {
+		String checksum = getChecksum(d, archive);
+		usedChecksums.add(checksum);
+		File marker = getMarkerFile(unpackDir);
+		if (unpackDir.isDirectory() && marker.exists() && checksum.equals(readString(marker))) {
+			log.info("Dependency " + d + " is already unpacked at " + unpackDir);
+			touch(checksum);
+			return true;
+		}
+		boolean cacheHit = true;
+		File entryDir = getEntryDir(checksum);
+		if (!entryDir.isDirectory()) {
+			cacheHit = false;
+			extractToCache(archive, entryDir);
+		}
+		else {
+			log.info("Dependency " + d + " found in unpack cache " + entryDir);
+		}
+		touch(checksum);
+		Files.deleteIfExists(marker.toPath());
+		if (unpackDir.exists()) {
+			FileUtils.deleteDirectory(unpackDir);
+		}
+		materialize(entryDir, unpackDir);
+		writeString(marker, checksum);
+		return cacheHit;
+	}
+
+	/**
+	 * Removes the given directory and its marker if it was unpacked from the cache, so that it can be unpacked by other
+	 * means.  Its files may be linked to the files of a cache entry, which would be changed as well if overwritten in
+	 * place, as the maven dependency plugin does.
+	 */
+	public static void removeUnpacked(File unpackDir) throws IOException {
+		File marker = getMarkerFile(unpackDir);
+		if (marker.exists()) {
+			Files.delete(marker.toPath());
+			FileUtils.deleteDirectory(unpackDir);
+		}
+	}
+
+	/**
+	 * @return the file recording the checksum of the archive that the given directory was unpacked from the cache
+	 */
+	private static File getMarkerFile(File unpackDir) {
+		return new File(unpackDir.getParentFile(), unpackDir.getName() + ".sha256");
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is within its maximum size.
+	 * Entries that were used during this build are never evicted.
+	 */
+	public void evict() throws IOException {
+		File[] entries = new File(cacheDir, ENTRIES_DIR).listFiles(File::isDirectory);
+		if (entries == null) {
+			return;
+		}
+		List<File> candidates = new ArrayList<>();
+		long totalSize = 0;
+		for (File entry : entries) {
+			totalSize += getEntrySize(entry);
+			if (!usedChecksums.contains(entry.getName())) {
+				candidates.add(entry);
+			}
+		}
+		candidates.sort((e1, e2) -> Long.compare(getLastUsed(e1), getLastUsed(e2)));
+		for (File entry : candidates) {
+			if (totalSize <= maxSizeBytes) {
+				break;
+			}
+			long size = getEntrySize(entry);
+			log.info("Evicting " + entry.getName() + " from unpack cache");
+			Files.deleteIfExists(getSizeFile(entry).toPath());
+			Files.deleteIfExists(getLastUsedFile(entry).toPath());
+			FileUtils.deleteDirectory(entry);
+			totalSize -= size;
+		}
+	}
+
+	/**
+	 * Release versions are immutable, so their checksum is recorded and reused for as long as the size and last
+	 * modified date of the artifact are unchanged.  SNAPSHOT versions are always checksummed again.
+	 */
+	protected String getChecksum(ConfigDependency d, File archive) throws IOException {
+		if (d.getVersion() != null && d.getVersion().endsWith("-SNAPSHOT")) {
+			return Checksums.sha256(archive);
+		}
+		File checksumFile = new File(new File(cacheDir, CHECKSUMS_DIR), d.toString("_") + ".sha256");
+		String fingerprint = archive.length() + ":" + archive.lastModified();
+		if (checksumFile.exists()) {
+			String[] recorded = readString(checksumFile).split(" ");
+			if (recorded.length == 2 && recorded[1].equals(fingerprint)) {
+				return recorded[0];
+			}
+		}
+		String checksum = Checksums.sha256(archive);
+		writeString(checksumFile, checksum + " " + fingerprint);
+		return checksum;
+	}
+
+	/**
+	 * Extracts into a temporary directory which is then moved into place, so that a partially extracted
+	 * entry is never visible to this or another concurrent build
+	 */
+	private void extractToCache(File archive, File entryDir) throws IOException {
+		File tempDir = new File(entryDir.getParentFile(), entryDir.getName() + "." + UUID.randomUUID() + ".tmp");
+		log.info("Unpacking " + archive + " into unpack cache");
+		int numFiles = ArchiveUtils.extract(archive, tempDir);
+		try {
+			Files.move(tempDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (FileAlreadyExistsException e) {
+			FileUtils.deleteDirectory(tempDir);
+		}
+		catch (IOException e) {
+			if (!entryDir.isDirectory()) {
+				throw e;
+			}
+			FileUtils.deleteDirectory(tempDir);
+		}
+		writeString(getSizeFile(entryDir), Long.toString(FileUtils.sizeOfDirectory(entryDir)));
+		log.debug("Added " + numFiles + " files to unpack cache");
+	}
+
+	/**
+	 * Hard-links each file in the cache entry into the target directory, or copies it if it cannot be linked
+	 */
+	private void materialize(File entryDir, File targetDir) throws IOException {
+		Path entryPath = entryDir.toPath();
+		Path targetPath = targetDir.toPath();
+		boolean link = true;
+		for (File file : FileUtils.listFiles(entryDir, null, true)) {
+			Path target = targetPath.resolve(entryPath.relativize(file.toPath()));
+			Files.createDirectories(target.getParent());
+			if (link) {
+				try {
+					Files.createLink(target, file.toPath());
+					continue;
+				}
+				catch (IOException | UnsupportedOperationException e) {
+					log.debug("Unable to link from unpack cache, copying instead: " + e.getMessage());
+					link = false;
+				}
+			}
+			Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+	}
+
+	private void touch(String checksum) throws IOException {
+		writeString(getLastUsedFile(getEntryDir(checksum)), Long.toString(System.currentTimeMillis()));
+	}
+
+	private long getLastUsed(File entryDir) {
+		try {
+			return Long.parseLong(readString(getLastUsedFile(entryDir)));
+		}
+		catch (Exception e) {
+			return entryDir.lastModified();
+		}
+	}
+
+	private long getEntrySize(File entryDir) {
+		try {
+			return Long.parseLong(readString(getSizeFile(entryDir)));
+		}
+		catch (Exception e) {
+			return FileUtils.sizeOfDirectory(entryDir);
+		}
+	}
+
+	private File getEntryDir(String checksum) {
+		return new File(new File(cacheDir, ENTRIES_DIR), checksum);
+	}
+
+	private File getSizeFile(File entryDir) {
+		return new File(entryDir.getParentFile(), entryDir.getName() + ".size");
+	}
+
+	private File getLastUsedFile(File entryDir) {
+		return new File(entryDir.getParentFile(), entryDir.getName() + ".lastUsed");
+	}
+
+	private String readString(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+	}
+
+	private void writeString(File file, String value) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+}
@@ -12,12 +12,27 @@ package org.openmrs.maven.plugins.packager.config;
 import static org.apache.commons.lang.StringUtils.isEmpty;
 import static org.openmrs.module.initializer.validator.Validator.ARG_CIEL_FILE;
 import static org.openmrs.module.initializer.validator.Validator.ARG_CONFIG_DIR;
+import static org.openmrs.module.initializer.validator.Validator.ARG_DOMAINS;
 import static org.openmrs.module.initializer.validator.Validator.ARG_UNSAFE;
 import static org.openmrs.module.initializer.validator.Validator.ARG_LOG_DIR;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.persistence.Cache;
@@ -29,10 +44,12 @@ import javax.persistence.TransactionRequiredException;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.metamodel.Metamodel;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
 import org.openmrs.module.initializer.validator.Validator;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.orm.jpa.EntityManagerFactoryUtils;
@@ -46,6 +63,8 @@ import org.springframework.orm.jpa.JpaSystemException;
 @Mojo( name = "validate-configurations" )
 public class ValidateConfigurationsMojo extends AbstractPackagerConfigMojo {
 	
+	private static final int MAX_LOGGED_FAILURES = 20;
+	
 	// Configuration Directory
 	@Parameter(property = "sourceDir", defaultValue = "configuration")
 	private File sourceDir;
@@ -53,10 +72,59 @@ public class ValidateConfigurationsMojo extends AbstractPackagerConfigMojo {
 	@Parameter(property = "cielFile")
 	private File cielFile;
 	
+	// The directory in which to cache the checksums of CIEL files and the contents of CIEL archives.  Defaults to a
+	// directory within the local repository
+	@Parameter(property = "cielCacheDir")
+	private File cielCacheDir;
+	
 	// Extra Validator CLI options
 	@Parameter(property = "extraValidatorArgs")
 	private String extraValidatorArgs;
 	
+	// If greater than 1, the configuration is split into partitions of Initializer domains that do not depend on
+	// each other, and up to this many partitions are validated at once, each in its own JVM
+	@Parameter(property = "validatorForks", defaultValue = "1")
+	private int validatorForks;
+	
+	// JVM options for each forked validator, or for the validator daemon, eg. "-Xmx2g"
+	@Parameter(property = "validatorJvmArgs")
+	private String validatorJvmArgs;
+	
+	// Additional domains that each domain depends on, as a comma-separated list, eg. <mydomain>concepts,locations</mydomain>
+	@Parameter
+	private Map<String, String> domainDependencies;
+	
+	// If specified, a manifest of the domains last validated successfully is kept in this file, which allows validation
+	// to skip domains which have not changed, and which depend on no domain that has changed, since they were last
+	// validated.  All domains are validated if any domain is neither known nor given in domainDependencies.
+	@Parameter(property = "validationManifestFile")
+	private File validationManifestFile;
+	
+	// If true, all domains are validated, whether or not they have changed since they were last validated
+	@Parameter(property = "full", defaultValue = "false")
+	private boolean full;
+	
+	// If true, validation is done by a long-lived validator daemon, which is started if not already running, and which
+	// keeps the OpenMRS context of the Validator warm between builds.  Forked partitions do not use the daemon.  As the
+	// context is shared by every validation, metadata loaded by earlier validations may remain, so CI builds should
+	// validate without the daemon.
+	@Parameter(property = "useValidatorDaemon", defaultValue = "false")
+	private boolean useValidatorDaemon;
+	
+	// The file in which a running validator daemon records how to connect to it, by default in ~/.openmrs-packager
+	@Parameter(property = "validatorDaemonStateFile")
+	private File validatorDaemonStateFile;
+	
+	// The number of minutes without a request after which the validator daemon stops
+	@Parameter(property = "validatorDaemonIdleMinutes", defaultValue = "60")
+	private int validatorDaemonIdleMinutes;
+	
+	// The number of minutes to wait for the validator daemon to complete a validation, or 0 to wait indefinitely
+	@Parameter(property = "validatorDaemonTimeoutMinutes", defaultValue = "60")
+	private int validatorDaemonTimeoutMinutes;
+	
+	private ValidationReport report;
+	
 	protected File getSourceDir() {
 		return sourceDir;
 	}
@@ -94,12 +162,23 @@ public class ValidateConfigurationsMojo extends AbstractPackagerConfigMojo {
 		args.add("--" + ARG_CONFIG_DIR + "=" + getSourceDir().getAbsolutePath());
 		
 		// The build directory to be the default log directory.
+		String defaultLogDirArg = null;
 		if (extraValidatorArgs == null || !extraValidatorArgs.contains(ARG_LOG_DIR)) {
-			args.add("--" + ARG_LOG_DIR + "=" + getBuildDir().getAbsolutePath());
+			defaultLogDirArg = "--" + ARG_LOG_DIR + "=" + getBuildDir().getAbsolutePath();
+			args.add(defaultLogDirArg);
 		}
 		
+		String cielChecksum = null;
 		if (cielFile != null) {
-			args.add("--" + ARG_CIEL_FILE + "=" + cielFile.getAbsolutePath());
+			CielCache cielCache = new CielCache(getCielCacheDir(), getLog());
+			try {
+				cielChecksum = cielCache.getChecksum(cielFile);
+				args.add("--" + ARG_CIEL_FILE + "=" + cielCache.prepare(cielFile).getAbsolutePath());
+				cielCache.evict();
+			}
+			catch (IOException e) {
+				throw new MojoExecutionException("Unable to prepare CIEL file " + cielFile, e);
+			}
 		}
 		
 		if (!isEmpty(extraValidatorArgs)) {
@@ -107,19 +186,389 @@ public class ValidateConfigurationsMojo extends AbstractPackagerConfigMojo {
 			
 		}
 		
-		Result result;
-		try {
+		boolean incremental = (validationManifestFile != null && !full);
+		String settings = null;
+		ValidationManifest manifest = null;
+		Map<String, String> domainHashes = null;
+		List<String> domains = null;
+		report = new ValidationReport();
+		File reportDir = null;
+		try (BuildMetrics.Timer timer = getMetrics().time("validate")) {
 			args.add("--" + ARG_UNSAFE);
-			result = Validator.getJUnitResult(args.toArray(new String[0]));
+			if (incremental || validatorForks > 1) {
+				domains = getRequestedDomains(InizDomains.getDomains(getSourceDir()), args);
+			}
+			if (incremental && !getUnknownDomains(domains).isEmpty()) {
+				getLog().info("Validating all domains, as the dependencies of " + getUnknownDomains(domains) + " are not known. "
+						+ "Give these in domainDependencies to validate only the domains that have changed.");
+				incremental = false;
+			}
+			if (incremental) {
+				settings = getValidationSettings(args, cielChecksum);
+				manifest = ValidationManifest.load(validationManifestFile);
+				domainHashes = new TreeMap<>();
+				for (String domain : domains) {
+					domainHashes.put(domain, ValidationManifest.hashDomain(new File(getSourceDir(), domain)));
+				}
+				domains = getDomainsToValidate(domains, domainHashes, manifest, settings);
+				if (domains.isEmpty()) {
+					getLog().info("No domains have changed since they were last validated, use -Dfull=true to validate all domains");
+					saveValidationManifest(manifest, domains, domainHashes, settings);
+					return;
+				}
+			}
+			if (validatorForks <= 1 && cielFile != null) {
+				List<String> validated = (domains != null ? domains : getRequestedDomains(InizDomains.getDomains(getSourceDir()), new ArrayList<>(args)));
+				if (!needsConcepts(validated, new InizDomains(getDomainDependencies()))) {
+					getLog().info("Not importing CIEL, as none of the domains being validated refer to concepts");
+					args.removeIf(arg -> arg.startsWith("--" + ARG_CIEL_FILE + "="));
+				}
+			}
+			if (validatorForks > 1) {
+				validateByDomain(args, domains, defaultLogDirArg);
+			}
+			else {
+				if (domains != null) {
+					args.add("--" + ARG_DOMAINS + "=" + String.join(",", domains));
+				}
+				runValidator(args, domains);
+			}
+		}
+		catch (MojoExecutionException e) {
+			throw e;
 		}
 		catch (Exception e) {
 			throw new MojoExecutionException(e.getMessage(), e);
 		}
+		finally {
+			reportDir = writeValidationReport(args);
+			writeMetricsReport();
+		}
 		
-		if (!result.wasSuccessful()) {
-			throw new MojoExecutionException("The configuration could not be validated, scroll up the Maven build logs for details.");
+		if (!report.wasSuccessful()) {
+			List<Failure> failures = report.getFailures();
+			for (Failure failure : failures.subList(0, Math.min(failures.size(), MAX_LOGGED_FAILURES))) {
+				getLog().error(failure.getDescription().getDisplayName() + ": " + failure.getMessage());
+			}
+			if (failures.size() > MAX_LOGGED_FAILURES) {
+				getLog().error("... and " + (failures.size() - MAX_LOGGED_FAILURES) + " more failures");
+			}
+			String details = (reportDir != null ? "see the reports in " + reportDir : "scroll up the Maven build logs");
+			throw new MojoExecutionException("The configuration could not be validated with " + failures.size() + " failures, " + details + " for details.");
 		}
 		
+		if (incremental) {
+			saveValidationManifest(manifest, domains, domainHashes, settings);
+		}
+	}
+	
+	/**
+	 * Writes the JUnit XML report and json summary of the validation, including the time taken by each file as found
+	 * in the log files that the Validator wrote during this validation
+	 * @return the directory the reports were written to, or null if they could not be written
+	 */
+	protected File writeValidationReport(List<String> args) {
+		File reportDir = null;
+		try {
+			reportDir = new File(getPluginBuildDir(), "validation");
+			List<File> logDirs = new ArrayList<>();
+			for (String arg : args) {
+				if (arg.startsWith("--" + ARG_LOG_DIR + "=")) {
+					logDirs.add(new File(arg.substring(ARG_LOG_DIR.length() + 3).replace("'", "").replace("\"", "").trim()));
+				}
+			}
+			File[] partitionDirs = reportDir.listFiles(f -> f.isDirectory() && f.getName().startsWith("partition-"));
+			if (partitionDirs != null) {
+				logDirs.addAll(Arrays.asList(partitionDirs));
+			}
+			int numFiles = 0;
+			for (File logDir : logDirs) {
+				File[] logFiles = logDir.listFiles(f -> f.isFile() && f.getName().endsWith(".log") && f.lastModified() >= report.getStartTime());
+				if (logFiles != null) {
+					for (File logFile : logFiles) {
+						numFiles += report.addFileTimes(logFile, getSourceDir());
+					}
+				}
+			}
+			getLog().debug("Found the time taken by " + numFiles + " files in the validator logs");
+			report.write(reportDir);
+			getLog().info("Wrote validation reports to " + reportDir);
+			return reportDir;
+		}
+		catch (IOException | RuntimeException e) {
+			getLog().warn("Unable to write validation reports to " + reportDir + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * @return the given domains which have changed since they were last validated, or which depend on a domain that
+	 * has changed or been removed, along with all of the given domains that those depend on so that they are loaded.
+	 * All domains are returned if the validation settings have changed.
+	 */
+	protected List<String> getDomainsToValidate(List<String> domains, Map<String, String> domainHashes,
+												ValidationManifest manifest, String settings) {
+		if (!settings.equals(manifest.getSettings())) {
+			getLog().info("Validating all domains, as they have not been validated with the same settings before");
+			return domains;
+		}
+		List<String> existingDomains = InizDomains.getDomains(getSourceDir());
+		Set<String> changed = new TreeSet<>();
+		for (String domain : domains) {
+			if (!domainHashes.get(domain).equals(manifest.getDomains().get(domain))) {
+				changed.add(domain);
+			}
+		}
+		for (String domain : manifest.getDomains().keySet()) {
+			if (!existingDomains.contains(domain)) {
+				changed.add(domain);
+			}
+		}
+		InizDomains inizDomains = new InizDomains(getDomainDependencies());
+		List<String> affected = domains.stream()
+				.filter(d -> changed.stream().anyMatch(c -> inizDomains.dependsOn(d, c)))
+				.collect(Collectors.toList());
+		List<String> ret = domains.stream()
+				.filter(d -> affected.stream().anyMatch(a -> inizDomains.dependsOn(a, d)))
+				.collect(Collectors.toList());
+		getLog().info("Changed domains: " + changed + ", validating " + ret.size() + " of " + domains.size() + " domains: " + ret);
+		return ret;
+	}
+	
+	/**
+	 * Records the given domains as validated, removing any domains which no longer exist
+	 */
+	protected void saveValidationManifest(ValidationManifest manifest, List<String> validatedDomains,
+										  Map<String, String> domainHashes, String settings) throws MojoExecutionException {
+		if (!settings.equals(manifest.getSettings())) {
+			manifest = new ValidationManifest(settings);
+		}
+		for (String domain : validatedDomains) {
+			manifest.getDomains().put(domain, domainHashes.get(domain));
+		}
+		manifest.getDomains().keySet().retainAll(InizDomains.getDomains(getSourceDir()));
+		try {
+			manifest.save(validationManifestFile);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to save validation manifest to " + validationManifestFile, e);
+		}
+	}
+	
+	/**
+	 * @return the settings that affect the outcome of validation, other than the configuration itself
+	 */
+	protected String getValidationSettings(List<String> args, String cielChecksum) {
+		StringBuilder settings = new StringBuilder();
+		for (String arg : args) {
+			if (!arg.startsWith("--" + ARG_LOG_DIR + "=")) {
+				settings.append(arg).append(" ");
+			}
+		}
+		if (cielChecksum != null) {
+			settings.append(cielChecksum).append(" ");
+		}
+		settings.append(new TreeMap<>(getDomainDependencies()));
+		if (getPluginDescriptor() != null) {
+			settings.append(" ").append(getPluginDescriptor().getVersion());
+		}
+		return settings.toString();
+	}
+	
+	/**
+	 * Splits the configuration into partitions of domains that do not depend on each other, and validates each
+	 * partition in its own JVM, with up to validatorForks running at once
+	 * @param args the Validator arguments, without any domains argument
+	 * @param domains the domains to validate
+	 * @param defaultLogDirArg the log directory argument added by default, if any, which is replaced by a directory
+	 * for each partition so that their logs are kept apart
+	 */
+	protected void validateByDomain(List<String> args, List<String> domains, String defaultLogDirArg) throws Exception {
+		InizDomains inizDomains = new InizDomains(getDomainDependencies());
+		List<String> unknownDomains = getUnknownDomains(domains);
+		List<List<String>> partitions;
+		if (unknownDomains.isEmpty()) {
+			partitions = inizDomains.partition(domains);
+		}
+		else {
+			// An unknown domain may refer to any other domain, so all are validated together
+			getLog().warn("Validating all domains in this JVM, as the dependencies of " + unknownDomains + " are not known. "
+					+ "Give these in domainDependencies to validate independent partitions of domains in their own JVMs.");
+			partitions = Collections.singletonList(domains);
+		}
+		if (partitions.size() < 2) {
+			getLog().info("Configuration has " + partitions.size() + " independent partitions of domains, validating in this JVM");
+			List<String> domainArgs = new ArrayList<>(args);
+			if (!needsConcepts(domains, inizDomains)) {
+				domainArgs.removeIf(arg -> arg.startsWith("--" + ARG_CIEL_FILE + "="));
+			}
+			domainArgs.add("--" + ARG_DOMAINS + "=" + String.join(",", domains));
+			runValidator(domainArgs, domains);
+			return;
+		}
+		
+		int numForks = Math.min(validatorForks, partitions.size());
+		getLog().info("Validating " + partitions.size() + " independent partitions of domains using " + numForks + " JVMs");
+		File validationDir = new File(getPluginBuildDir(), "validation");
+		String classpath = getPluginClasspath();
+		ExecutorService executor = Executors.newFixedThreadPool(numForks);
+		try {
+			List<Future<File>> resultFiles = new ArrayList<>();
+			for (int i = 0; i < partitions.size(); i++) {
+				final List<String> partition = partitions.get(i);
+				final File partitionDir = new File(validationDir, "partition-" + (i + 1));
+				// Only partitions which may refer to concepts need the time taken to import CIEL
+				boolean needsConcepts = needsConcepts(partition, inizDomains);
+				final List<String> forkArgs = new ArrayList<>();
+				for (String arg : args) {
+					if (arg.equals(defaultLogDirArg)) {
+						forkArgs.add("--" + ARG_LOG_DIR + "=" + partitionDir.getAbsolutePath());
+					}
+					else if (needsConcepts || !arg.startsWith("--" + ARG_CIEL_FILE + "=")) {
+						forkArgs.add(arg);
+					}
+				}
+				forkArgs.add("--" + ARG_DOMAINS + "=" + String.join(",", partition));
+				resultFiles.add(executor.submit(() -> validatePartition(partition, partitionDir, forkArgs, classpath)));
+			}
+			for (int i = 0; i < partitions.size(); i++) {
+				Result result = new Result();
+				long millis = ValidatorLauncher.readResult(resultFiles.get(i).get(), result.createListener());
+				report.addRun(partitions.get(i), result, millis);
+				getMetrics().addPhase("validate:" + String.join(",", partitions.get(i)), millis);
+			}
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Unable to validate configuration", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * @return true if any of the given domains may refer to concepts, which is assumed of any domain that is not known
+	 * and whose dependencies are not given
+	 */
+	protected boolean needsConcepts(List<String> domains, InizDomains inizDomains) {
+		return domains.stream().anyMatch(d -> inizDomains.dependsOn(d, "concepts")) || !getUnknownDomains(domains).isEmpty();
+	}
+	
+	/**
+	 * @return the given domains which are not known, and whose dependencies are not given in domainDependencies
+	 */
+	protected List<String> getUnknownDomains(List<String> domains) {
+		return domains.stream().filter(d -> !InizDomains.isKnownDomain(d) && !getDomainDependencies().containsKey(d))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * @return the configured CIEL cache directory, or by default a directory within the local repository
+	 */
+	protected File getCielCacheDir() {
+		if (cielCacheDir != null) {
+			return cielCacheDir;
+		}
+		return new File(getLocalRepository().getBasedir(), ".cache/openmrs-packager/ciel");
+	}
+	
+	/**
+	 * Runs the Validator with the given arguments, either in this JVM or by the validator daemon, and adds its result
+	 * to the validation report
+	 * @param domains the domains being validated, or null if all domains are being validated
+	 */
+	protected Result runValidator(List<String> args, List<String> domains) throws Exception {
+		long startTime = System.currentTimeMillis();
+		Result result = (useValidatorDaemon ? runValidatorDaemon(args) : Validator.getJUnitResult(args.toArray(new String[0])));
+		report.addRun(domains, result, System.currentTimeMillis() - startTime);
+		return result;
+	}
+	
+	/**
+	 * Runs the Validator with the given arguments in the validator daemon, starting it if needed
+	 */
+	protected Result runValidatorDaemon(List<String> args) throws Exception {
+		ValidatorDaemonClient client = new ValidatorDaemonClient(ValidatorDaemonMojo.getValidatorDaemonStateFile(validatorDaemonStateFile));
+		client.setValidateTimeoutMillis((int) TimeUnit.MINUTES.toMillis(validatorDaemonTimeoutMinutes));
+		String classpath = getPluginClasspath();
+		List<String> jvmArgs = ValidatorDaemonMojo.getValidatorDaemonJvmArgs(validatorJvmArgs);
+		String version = ValidatorDaemonClient.getVersion(getPluginDescriptor().getVersion(), classpath, jvmArgs);
+		client.start(classpath, jvmArgs, validatorDaemonIdleMinutes, version, getLog());
+		getLog().info("Validating with the validator daemon, see " + client.getLogFile() + " for details");
+		return client.validate(args);
+	}
+	
+	/**
+	 * Validates the given partition of domains in a new JVM, logging its output in the given directory
+	 * @return the file that the result of the validation was written to
+	 */
+	protected File validatePartition(List<String> partition, File partitionDir, List<String> args, String classpath) throws Exception {
+		FileUtils.forceMkdir(partitionDir);
+		File resultFile = new File(partitionDir, "result.json");
+		File outputFile = new File(partitionDir, "validator.log");
+		FileUtils.deleteQuietly(resultFile);
+		
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+		if (!isEmpty(validatorJvmArgs)) {
+			command.addAll(Arrays.asList(validatorJvmArgs.trim().split("\\s+")));
+		}
+		command.add("-cp");
+		command.add(classpath);
+		command.add(ValidatorLauncher.class.getName());
+		command.add(resultFile.getAbsolutePath());
+		command.addAll(args);
+		
+		getLog().info("Validating " + partition + ", see " + outputFile + " for details");
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile).start();
+		try {
+			int exitCode = process.waitFor();
+			if (exitCode != 0 || !resultFile.exists()) {
+				throw new MojoExecutionException("Validation of " + partition + " did not complete, see " + outputFile + " for details.");
+			}
+		}
+		finally {
+			if (process.isAlive()) {
+				process.destroyForcibly();
+			}
+		}
+		return resultFile;
+	}
+	
+	/**
+	 * Restricts the given domains to those given by any domains argument, which is removed from the given arguments.
+	 * As for the Validator, the domains argument is either a list of domains to include, or to exclude if it starts
+	 * with "!", eg. --domains='!concepts,locations'
+	 */
+	protected List<String> getRequestedDomains(List<String> domains, List<String> args) {
+		String prefix = "--" + ARG_DOMAINS + "=";
+		for (String arg : new ArrayList<>(args)) {
+			if (arg.startsWith(prefix)) {
+				args.remove(arg);
+				String value = arg.substring(prefix.length()).replace("'", "").replace("\"", "").trim();
+				boolean exclude = value.startsWith("!");
+				Set<String> listed = Stream.of(value.substring(exclude ? 1 : 0).split(","))
+						.map(String::trim).filter(d -> !isEmpty(d)).collect(Collectors.toSet());
+				return domains.stream().filter(d -> listed.contains(d) != exclude).collect(Collectors.toList());
+			}
+		}
+		return domains;
+	}
+	
+	/**
+	 * @return the configured additional dependencies of each domain
+	 */
+	protected Map<String, List<String>> getDomainDependencies() {
+		Map<String, List<String>> ret = new HashMap<>();
+		if (domainDependencies != null) {
+			for (Map.Entry<String, String> e : domainDependencies.entrySet()) {
+				ret.put(e.getKey(), Stream.of(e.getValue().split(",")).map(String::trim).filter(d -> !isEmpty(d)).collect(Collectors.toList()));
+			}
+		}
+		return ret;
 	}
 	
 	/**
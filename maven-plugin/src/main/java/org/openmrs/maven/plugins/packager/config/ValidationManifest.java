@@ -0,0 +1,90 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records a hash of the files of each domain as of the last successful validation of that domain, so that a
+ * subsequent validation can skip domains which have not changed, and which depend on no domain that has changed
+ */
+public class ValidationManifest implements Serializable {
+
+	// The settings that the domains were validated with, which must match for any domain to be skipped
+	private String settings;
+
+	// The hash of the files of each domain, keyed on the domain
+	private Map<String, String> domains = new TreeMap<>();
+
+	public ValidationManifest() {}
+
+	public ValidationManifest(String settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @return the manifest read from the given file, or an empty manifest if the file does not exist or cannot be read
+	 */
+	public static ValidationManifest load(File file) {
+		if (file != null && file.exists()) {
+			try {
+				return new ObjectMapper().readValue(file, ValidationManifest.class);
+			}
+			catch (IOException e) {
+				// An unreadable manifest simply results in a full validation
+			}
+		}
+		return new ValidationManifest();
+	}
+
+	/**
+	 * Writes this manifest to the given file
+	 */
+	public void save(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
+		}
+		new ObjectMapper().writeValue(file, this);
+	}
+
+	/**
+	 * @return a hash of the paths and contents of all files within the given domain directory
+	 */
+	public static String hashDomain(File domainDir) throws IOException {
+		StringBuilder files = new StringBuilder();
+		for (String path : ResourceFilter.scanDirectory(domainDir)) {
+			files.append(path).append('\0').append(Checksums.sha256(new File(domainDir, path))).append('\n');
+		}
+		return Checksums.sha256(files.toString());
+	}
+
+	public String getSettings() {
+		return settings;
+	}
+
+	public void setSettings(String settings) {
+		this.settings = settings;
+	}
+
+	public Map<String, String> getDomains() {
+		return domains;
+	}
+
+	public void setDomains(Map<String, String> domains) {
+		this.domains = new TreeMap<>(domains);
+	}
+}
@@ -0,0 +1,328 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Collects the outcome of a validation, and writes it as a JUnit XML report and a json summary, so that failures can
+ * be found without searching the build log, and so that the slowest domains and files can be identified.
+ *   - each run of the Validator, which is either the whole configuration or a partition of its domains, is recorded
+ *     with its failures and run time, and becomes a test suite of the JUnit XML report
+ *   - the time taken by each file is estimated from the Validator's log files, as the time from the first line of the
+ *     log that mentions the file to the first line that mentions another file, and is summed by domain
+ */
+public class ValidationReport {
+
+	public static final String JUNIT_REPORT_FILE = "TEST-validate-configurations.xml";
+	public static final String JSON_REPORT_FILE = "validation-report.json";
+
+	private static final int NUM_SLOWEST_FILES = 50;
+
+	// A time of day at the start of a log line, optionally preceded by a date, eg. 2024-01-31 12:34:56,789
+	private static final Pattern TIMESTAMP = Pattern.compile("^\\W{0,3}(?:(\\d{4})-(\\d{2})-(\\d{2})[ T])?(\\d{2}):(\\d{2}):(\\d{2})[,.](\\d{3})");
+
+	// A path which may be that of a configuration file, eg. concepts/diagnoses.csv
+	private static final Pattern FILE_PATH = Pattern.compile("[\\w\\-./\\\\]+\\.(?:csv|json|xml|yml|yaml|properties|html|sql|txt)\\b");
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final List<Run> runs = new ArrayList<>();
+
+	private final Map<String, Long> fileMillis = new TreeMap<>();
+
+	/**
+	 * Records the outcome of a run of the Validator
+	 * @param domains the domains that were validated, or null if the whole configuration was validated
+	 * @param millis the time taken by the run
+	 */
+	public synchronized void addRun(List<String> domains, Result result, long millis) {
+		runs.add(new Run(domains, result, millis));
+	}
+
+	/**
+	 * Estimates the time taken to load each file of the given configuration directory from the given log file
+	 * @return the number of files for which a time was found
+	 */
+	public synchronized int addFileTimes(File logFile, File configDir) throws IOException {
+		Map<String, String> knownFiles = getKnownFiles(configDir);
+		Set<String> found = new HashSet<>();
+		String currentFile = null;
+		long currentStart = 0;
+		long lastTimestamp = 0;
+		try (BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				Long timestamp = parseTimestamp(line);
+				if (timestamp == null) {
+					continue;
+				}
+				lastTimestamp = timestamp;
+				String file = findFile(line, knownFiles);
+				if (file == null || file.equals(currentFile)) {
+					continue;
+				}
+				if (currentFile != null) {
+					fileMillis.merge(currentFile, Math.max(0, timestamp - currentStart), Long::sum);
+				}
+				found.add(file);
+				currentFile = file;
+				currentStart = timestamp;
+			}
+		}
+		if (currentFile != null) {
+			fileMillis.merge(currentFile, Math.max(0, lastTimestamp - currentStart), Long::sum);
+		}
+		return found.size();
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public synchronized boolean wasSuccessful() {
+		return runs.stream().allMatch(r -> r.successful);
+	}
+
+	public synchronized List<Failure> getFailures() {
+		List<Failure> failures = new ArrayList<>();
+		runs.forEach(r -> failures.addAll(r.failures));
+		return failures;
+	}
+
+	/**
+	 * Writes the JUnit XML report and json summary into the given directory
+	 */
+	public synchronized void write(File reportDir) throws IOException {
+		Files.createDirectories(reportDir.toPath());
+		writeJUnitXml(new File(reportDir, JUNIT_REPORT_FILE));
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(reportDir, JSON_REPORT_FILE), toJson());
+	}
+
+	/**
+	 * @return a summary of the validation, with its failures, and the slowest domains and files
+	 */
+	public synchronized Map<String, Object> toJson() {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("successful", wasSuccessful());
+		json.put("startTime", startTime);
+		json.put("totalMillis", System.currentTimeMillis() - startTime);
+		List<Map<String, Object>> runList = new ArrayList<>();
+		for (Run run : runs) {
+			Map<String, Object> r = new LinkedHashMap<>();
+			r.put("domains", run.domains);
+			r.put("successful", run.successful);
+			r.put("millis", run.runTime);
+			r.put("runCount", run.runCount);
+			r.put("failureCount", run.failures.size());
+			List<Map<String, Object>> failures = new ArrayList<>();
+			for (Failure failure : run.failures) {
+				Map<String, Object> f = new LinkedHashMap<>();
+				f.put("description", failure.getDescription().getDisplayName());
+				f.put("message", failure.getMessage());
+				failures.add(f);
+			}
+			r.put("failures", failures);
+			runList.add(r);
+		}
+		json.put("runs", runList);
+		Map<String, Long> domainMillis = new HashMap<>();
+		for (Map.Entry<String, Long> e : fileMillis.entrySet()) {
+			domainMillis.merge(getDomain(e.getKey()), e.getValue(), Long::sum);
+		}
+		json.put("domainMillis", sortByValueDescending(domainMillis, Integer.MAX_VALUE));
+		json.put("slowestFiles", sortByValueDescending(fileMillis, NUM_SLOWEST_FILES));
+		return json;
+	}
+
+	/**
+	 * Writes a test suite for each run, with a test case for each failure, or a single passing test case if none
+	 */
+	protected void writeJUnitXml(File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("testsuites");
+			for (Run run : runs) {
+				String name = "validate-configurations" + (run.domains == null ? "" : "[" + String.join(",", run.domains) + "]");
+				xml.writeStartElement("testsuite");
+				xml.writeAttribute("name", name);
+				xml.writeAttribute("tests", Integer.toString(Math.max(1, run.failures.size())));
+				xml.writeAttribute("failures", Integer.toString(run.failures.size()));
+				xml.writeAttribute("errors", "0");
+				xml.writeAttribute("skipped", Integer.toString(run.ignoreCount));
+				xml.writeAttribute("time", toSeconds(run.runTime));
+				if (run.failures.isEmpty()) {
+					xml.writeStartElement("testcase");
+					xml.writeAttribute("classname", name);
+					xml.writeAttribute("name", "validate");
+					xml.writeAttribute("time", toSeconds(run.runTime));
+					xml.writeEndElement();
+				}
+				for (Failure failure : run.failures) {
+					xml.writeStartElement("testcase");
+					xml.writeAttribute("classname", name);
+					xml.writeAttribute("name", failure.getDescription().getDisplayName());
+					xml.writeAttribute("time", "0");
+					xml.writeStartElement("failure");
+					if (failure.getMessage() != null) {
+						xml.writeAttribute("message", failure.getMessage());
+					}
+					// The type of a failure from another JVM is recorded only in its trace
+					if (failure.getException() != null && !(failure.getException() instanceof ValidatorLauncher.ValidationFailure)) {
+						xml.writeAttribute("type", failure.getException().getClass().getName());
+					}
+					xml.writeCharacters(failure.getTrace());
+					xml.writeEndElement();
+					xml.writeEndElement();
+				}
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Unable to write " + file, e);
+		}
+	}
+
+	/**
+	 * @return the relative paths of all files within the given configuration directory, keyed on both their relative
+	 * path and, where unique, their name alone, as the Validator may log either
+	 */
+	private Map<String, String> getKnownFiles(File configDir) {
+		Map<String, String> knownFiles = new HashMap<>();
+		Map<String, Integer> nameCounts = new HashMap<>();
+		for (String path : ResourceFilter.scanDirectory(configDir)) {
+			String relativePath = path.replace('\\', '/');
+			knownFiles.put(relativePath, relativePath);
+			String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+			if (nameCounts.merge(name, 1, Integer::sum) == 1) {
+				knownFiles.put(name, relativePath);
+			}
+			else {
+				knownFiles.remove(name);
+			}
+		}
+		return knownFiles;
+	}
+
+	/**
+	 * @return the relative path of the configuration file mentioned in the given line, if any
+	 */
+	private String findFile(String line, Map<String, String> knownFiles) {
+		Matcher m = FILE_PATH.matcher(line);
+		while (m.find()) {
+			String path = m.group().replace('\\', '/');
+			// Match the longest known suffix of the path, so that absolute paths are also recognized
+			for (int i = 0; i >= 0 && i < path.length(); i = path.indexOf('/', i + 1)) {
+				String candidate = (i == 0 ? path : path.substring(i + 1));
+				if (knownFiles.containsKey(candidate)) {
+					return knownFiles.get(candidate);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the time of the given log line in milliseconds, or null if it does not start with a timestamp
+	 */
+	private Long parseTimestamp(String line) {
+		Matcher m = TIMESTAMP.matcher(line);
+		if (!m.find()) {
+			return null;
+		}
+		int hour = Integer.parseInt(m.group(4));
+		int minute = Integer.parseInt(m.group(5));
+		int second = Integer.parseInt(m.group(6));
+		int millis = Integer.parseInt(m.group(7));
+		if (m.group(1) == null) {
+			return ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+		}
+		LocalDateTime time = LocalDateTime.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)),
+				Integer.parseInt(m.group(3)), hour, minute, second, millis * 1000000);
+		return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static String getDomain(String relativePath) {
+		int i = relativePath.indexOf('/');
+		return (i < 0 ? "" : relativePath.substring(0, i));
+	}
+
+	private static Map<String, Long> sortByValueDescending(Map<String, Long> map, int limit) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<>(map.entrySet());
+		entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+		Map<String, Long> ret = new LinkedHashMap<>();
+		for (Map.Entry<String, Long> e : entries.subList(0, Math.min(limit, entries.size()))) {
+			ret.put(e.getKey(), e.getValue());
+		}
+		return ret;
+	}
+
+	private static String toSeconds(long millis) {
+		return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+	}
+
+	/**
+	 * The outcome of a single run of the Validator
+	 */
+	private static class Run {
+
+		private final List<String> domains;
+
+		private final boolean successful;
+
+		private final long runTime;
+
+		private final int runCount;
+
+		private final int ignoreCount;
+
+		private final List<Failure> failures;
+
+		Run(List<String> domains, Result result, long runTime) {
+			this.domains = domains;
+			this.successful = result.wasSuccessful();
+			this.runTime = runTime;
+			this.runCount = result.getRunCount();
+			this.ignoreCount = result.getIgnoreCount();
+			this.failures = new ArrayList<>(result.getFailures());
+		}
+	}
+}
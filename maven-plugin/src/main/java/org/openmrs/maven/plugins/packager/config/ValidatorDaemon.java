@@ -0,0 +1,274 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.runner.Result;
+import org.openmrs.module.initializer.validator.Validator;
+
+/**
+ * A long-lived process which validates configurations on request, so that the OpenMRS context started by the
+ * Validator is kept warm between validations rather than started again for each one.
+ *   - it listens on a socket bound to the loopback address, on a port chosen by the system
+ *   - the port, a secret token, and the version of the plugin are written to a state file, which is readable only by
+ *     its owner, and which a client must read in order to make requests
+ *   - each request and response is a single line of json, eg. {"token": "...", "command": "validate", "args": [...]}
+ *   - validations run one at a time, while status and stop requests are answered immediately
+ *   - the daemon stops after it has been idle for the given number of minutes, and removes its state file
+ * The daemon keeps no state between requests, but every validation runs in the same OpenMRS context, so it is only
+ * isolated from earlier validations as far as the Validator makes it.  Metadata loaded by an earlier validation may
+ * remain, so a validation may pass in the daemon that would fail in a new JVM.
+ * Arguments are the state file, the idle timeout in minutes, and the version of the plugin.
+ */
+public class ValidatorDaemon {
+
+	public static final String COMMAND_VALIDATE = "validate";
+	public static final String COMMAND_STATUS = "status";
+	public static final String COMMAND_STOP = "stop";
+
+	private static final long ACCEPT_TIMEOUT_MILLIS = 10000;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final File stateFile;
+
+	private final long idleTimeoutMillis;
+
+	private final String version;
+
+	private final String token;
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final AtomicLong lastActive = new AtomicLong(startTime);
+
+	private final AtomicBoolean busy = new AtomicBoolean();
+
+	private final AtomicBoolean stopped = new AtomicBoolean();
+
+	private final AtomicInteger numValidations = new AtomicInteger();
+
+	private final Object validationLock = new Object();
+
+	private volatile ServerSocket serverSocket;
+
+	public ValidatorDaemon(File stateFile, long idleTimeoutMillis, String version) {
+		this.stateFile = stateFile;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.version = version;
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		this.token = Checksums.toHex(bytes);
+	}
+
+	public static void main(String[] args) {
+		int status = 0;
+		try {
+			File stateFile = new File(args[0]);
+			long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(args[1]));
+			new ValidatorDaemon(stateFile, idleTimeoutMillis, args[2]).run();
+		}
+		catch (Throwable t) {
+			t.printStackTrace();
+			status = 1;
+		}
+		// The validator may leave non-daemon threads running, which would otherwise keep this JVM alive
+		System.exit(status);
+	}
+
+	/**
+	 * Accepts requests until stopped or idle for longer than the idle timeout
+	 */
+	public void run() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			this.serverSocket = serverSocket;
+			serverSocket.setSoTimeout((int) Math.min(ACCEPT_TIMEOUT_MILLIS, idleTimeoutMillis));
+			writeStateFile(serverSocket.getLocalPort());
+			log("Validator daemon listening on port " + serverSocket.getLocalPort() + ", state in " + stateFile);
+			while (!stopped.get()) {
+				try {
+					Socket socket = serverSocket.accept();
+					Thread handler = new Thread(() -> handle(socket), "validator-daemon-request");
+					handler.setDaemon(true);
+					handler.start();
+				}
+				catch (SocketTimeoutException e) {
+					if (!busy.get() && System.currentTimeMillis() - lastActive.get() > idleTimeoutMillis) {
+						log("Validator daemon idle for " + TimeUnit.MILLISECONDS.toMinutes(idleTimeoutMillis) + " minutes, stopping");
+						stopped.set(true);
+					}
+				}
+				catch (SocketException e) {
+					// The socket is closed when a stop is requested
+					if (!stopped.get()) {
+						throw e;
+					}
+				}
+			}
+		}
+		finally {
+			removeStateFile();
+		}
+		// Wait for any validation in progress to complete
+		synchronized (validationLock) {
+			log("Validator daemon stopped after " + numValidations.get() + " validations");
+		}
+	}
+
+	/**
+	 * Reads a single request from the given socket, and writes its response
+	 */
+	protected void handle(Socket socket) {
+		Map<String, Object> response = new LinkedHashMap<>();
+		boolean stop = false;
+		try (Socket s = socket) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			String line = reader.readLine();
+			JsonNode request = (line == null ? null : mapper.readTree(line));
+			if (request == null || !request.hasNonNull("token") || !isToken(request.get("token").asText())) {
+				response.put("status", "error");
+				response.put("message", "Invalid request");
+			}
+			else {
+				lastActive.set(System.currentTimeMillis());
+				String command = request.path("command").asText();
+				if (COMMAND_VALIDATE.equals(command)) {
+					List<String> args = mapper.convertValue(request.get("args"), new TypeReference<List<String>>() {});
+					try {
+						Map<String, Object> result = validate(args);
+						response.put("status", "ok");
+						response.put("result", result);
+					}
+					catch (Exception e) {
+						log("Validation failed to run: " + e);
+						e.printStackTrace();
+						response.put("status", "error");
+						response.put("message", "Validation failed to run: " + e);
+					}
+				}
+				else if (COMMAND_STATUS.equals(command)) {
+					response.put("status", "ok");
+					response.putAll(getStatus());
+				}
+				else if (COMMAND_STOP.equals(command)) {
+					log("Validator daemon stopping on request");
+					response.put("status", "ok");
+					stop = true;
+				}
+				else {
+					response.put("status", "error");
+					response.put("message", "Unknown command: " + command);
+				}
+				lastActive.set(System.currentTimeMillis());
+			}
+			OutputStream out = s.getOutputStream();
+			out.write(mapper.writeValueAsBytes(response));
+			out.write('\n');
+			out.flush();
+		}
+		catch (Exception e) {
+			log("Validator daemon unable to handle request: " + e);
+			e.printStackTrace();
+		}
+		if (stop) {
+			stopped.set(true);
+			try {
+				serverSocket.close();
+			}
+			catch (IOException e) {
+				// The daemon stops on its next timeout regardless
+			}
+		}
+	}
+
+	/**
+	 * Validates with the given Validator arguments, waiting for any validation already running to complete
+	 */
+	protected Map<String, Object> validate(List<String> args) throws Exception {
+		synchronized (validationLock) {
+			busy.set(true);
+			try {
+				log("Validating with " + args);
+				Result result = Validator.getJUnitResult(args.toArray(new String[0]));
+				numValidations.incrementAndGet();
+				log("Validation completed in " + result.getRunTime() + "ms with " + result.getFailureCount() + " failures");
+				return ValidatorLauncher.toJson(result);
+			}
+			finally {
+				busy.set(false);
+			}
+		}
+	}
+
+	protected Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("version", version);
+		status.put("pid", getPid());
+		status.put("startTime", startTime);
+		status.put("idleTimeoutMillis", idleTimeoutMillis);
+		status.put("busy", busy.get());
+		status.put("validations", numValidations.get());
+		return status;
+	}
+
+	private boolean isToken(String candidate) {
+		return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), candidate.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void writeStateFile(int port) throws IOException {
+		ValidatorDaemonClient.State state = new ValidatorDaemonClient.State();
+		state.setPort(port);
+		state.setToken(token);
+		state.setVersion(version);
+		state.setPid(getPid());
+		state.save(stateFile);
+	}
+
+	private void removeStateFile() {
+		// Only remove the state file if it has not since been replaced by another daemon
+		ValidatorDaemonClient.State state = ValidatorDaemonClient.State.load(stateFile);
+		if (state != null && token.equals(state.getToken())) {
+			stateFile.delete();
+		}
+	}
+
+	private static String getPid() {
+		return ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+	}
+
+	private static void log(String message) {
+		System.out.println("[" + new Date() + "] " + message);
+	}
+}
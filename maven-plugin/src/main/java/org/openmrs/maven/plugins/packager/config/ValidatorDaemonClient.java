@@ -0,0 +1,369 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.runner.Result;
+
+/**
+ * Starts, stops, and makes requests of a {@link ValidatorDaemon}, found by way of the state file that it writes
+ */
+public class ValidatorDaemonClient {
+
+	private static final long START_TIMEOUT_MILLIS = 60000;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	// Status and stop requests are answered immediately, even while a validation is running
+	private static final int COMMAND_TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * The time to wait for a validation to complete if no other is configured
+	 */
+	public static final int DEFAULT_VALIDATE_TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(60);
+
+	// Serializes starts within this JVM, as a file lock is held by the JVM rather than by a thread
+	private static final Object START_LOCK = new Object();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final File stateFile;
+
+	private int validateTimeoutMillis = DEFAULT_VALIDATE_TIMEOUT_MILLIS;
+
+	public ValidatorDaemonClient(File stateFile) {
+		this.stateFile = stateFile;
+	}
+
+	/**
+	 * @return the state file used when none is configured, which is shared by all builds of the current user
+	 */
+	public static File getDefaultStateFile() {
+		return new File(System.getProperty("user.home"), ".openmrs-packager" + File.separator + "validator-daemon.json");
+	}
+
+	/**
+	 * @return the file that the daemon outputs to, alongside its state file
+	 */
+	public File getLogFile() {
+		return new File(stateFile.getAbsoluteFile().getParentFile(), "validator-daemon.log");
+	}
+
+	/**
+	 * @return the file locked while a daemon is started, alongside its state file
+	 */
+	public File getLockFile() {
+		return new File(stateFile.getAbsoluteFile().getParentFile(), stateFile.getName() + ".lock");
+	}
+
+	/**
+	 * @return a version identifying a daemon started with the given plugin version, classpath, and JVM arguments, so
+	 * that a daemon is restarted if any of these change, including when a snapshot of the plugin is rebuilt
+	 */
+	public static String getVersion(String pluginVersion, String classpath, List<String> jvmArgs) {
+		StringBuilder launch = new StringBuilder();
+		for (String entry : classpath.split(File.pathSeparator)) {
+			launch.append(entry).append(':').append(new File(entry).lastModified()).append('\n');
+		}
+		if (jvmArgs != null) {
+			launch.append(jvmArgs);
+		}
+		return pluginVersion + "-" + Checksums.sha256(launch.toString()).substring(0, 12);
+	}
+
+	/**
+	 * @return the status of the running daemon, or null if no daemon is running
+	 */
+	public JsonNode status() {
+		State state = State.load(stateFile);
+		if (state == null) {
+			return null;
+		}
+		try {
+			return request(state, ValidatorDaemon.COMMAND_STATUS, null, COMMAND_TIMEOUT_MILLIS);
+		}
+		catch (IOException e) {
+			// The daemon has stopped without removing its state file, or is not responding
+			return null;
+		}
+	}
+
+	/**
+	 * Validates with the given Validator arguments using the running daemon
+	 * @return the result of the validation, with failures that print the stack traces recorded by the daemon
+	 */
+	public Result validate(List<String> args) throws Exception {
+		State state = State.load(stateFile);
+		if (state == null) {
+			throw new IOException("No validator daemon is running with state file " + stateFile);
+		}
+		JsonNode response;
+		try {
+			response = request(state, ValidatorDaemon.COMMAND_VALIDATE, args, validateTimeoutMillis);
+		}
+		catch (SocketTimeoutException e) {
+			throw new IOException("Validator daemon did not complete the validation within " + validateTimeoutMillis + "ms", e);
+		}
+		Result result = new Result();
+		ValidatorLauncher.readResult(response.get("result"), result.createListener());
+		return result;
+	}
+
+	/**
+	 * Stops the running daemon, if any
+	 * @return true if a daemon was stopped
+	 */
+	public boolean stop() {
+		State state = State.load(stateFile);
+		if (state == null) {
+			return false;
+		}
+		try {
+			request(state, ValidatorDaemon.COMMAND_STOP, null, COMMAND_TIMEOUT_MILLIS);
+			return true;
+		}
+		catch (IOException e) {
+			stateFile.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Ensures that a daemon of the given version is running, stopping any daemon of another version, and starting a new
+	 * daemon if needed.  A lock file is held while doing so, so that builds which start at the same time share the one
+	 * daemon that the first of them starts, rather than each starting its own.
+	 */
+	public void start(String classpath, List<String> jvmArgs, int idleMinutes, String version, Log log)
+			throws MojoExecutionException {
+		File lockFile = getLockFile();
+		synchronized (START_LOCK) {
+			try {
+				Files.createDirectories(lockFile.getParentFile().toPath());
+			}
+			catch (IOException e) {
+				throw new MojoExecutionException("Unable to create " + lockFile.getParentFile(), e);
+			}
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				 FileLock lock = channel.lock()) {
+				startLocked(classpath, jvmArgs, idleMinutes, version, log);
+			}
+			catch (IOException e) {
+				throw new MojoExecutionException("Unable to lock " + lockFile, e);
+			}
+		}
+	}
+
+	private void startLocked(String classpath, List<String> jvmArgs, int idleMinutes, String version, Log log)
+			throws MojoExecutionException {
+		JsonNode status = status();
+		if (status != null) {
+			if (version.equals(status.path("version").asText())) {
+				log.debug("Validator daemon already running with pid " + status.path("pid").asText());
+				return;
+			}
+			log.info("Stopping validator daemon of version " + status.path("version").asText());
+			stop();
+		}
+		File logFile = getLogFile();
+		logFile.getParentFile().mkdirs();
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+		if (jvmArgs != null) {
+			command.addAll(jvmArgs);
+		}
+		command.add("-cp");
+		command.add(classpath);
+		command.add(ValidatorDaemon.class.getName());
+		command.add(stateFile.getAbsolutePath());
+		command.add(Integer.toString(idleMinutes));
+		command.add(version);
+		log.info("Starting validator daemon, logging to " + logFile);
+		Process process;
+		try {
+			ProcessBuilder pb = new ProcessBuilder(command);
+			pb.redirectErrorStream(true);
+			pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+			process = pb.start();
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Unable to start validator daemon", e);
+		}
+		long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+		while (System.currentTimeMillis() < deadline) {
+			status = status();
+			if (status != null && version.equals(status.path("version").asText())) {
+				log.info("Validator daemon started with pid " + status.path("pid").asText());
+				return;
+			}
+			if (!process.isAlive()) {
+				throw new MojoExecutionException("Validator daemon exited on startup, see " + logFile);
+			}
+			try {
+				Thread.sleep(250);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while starting validator daemon", e);
+			}
+		}
+		process.destroy();
+		throw new MojoExecutionException("Validator daemon did not start within " + START_TIMEOUT_MILLIS + "ms, see " + logFile);
+	}
+
+	/**
+	 * Makes the given request of the daemon, waiting up to the given time for its response
+	 */
+	private JsonNode request(State state, String command, List<String> args, int timeoutMillis) throws IOException {
+		Map<String, Object> request = new LinkedHashMap<>();
+		request.put("token", state.getToken());
+		request.put("command", command);
+		if (args != null) {
+			request.put("args", args);
+		}
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), state.getPort()), CONNECT_TIMEOUT_MILLIS);
+			socket.setSoTimeout(timeoutMillis);
+			OutputStream out = socket.getOutputStream();
+			out.write(mapper.writeValueAsBytes(request));
+			out.write('\n');
+			out.flush();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String line = reader.readLine();
+			if (line == null) {
+				throw new IOException("Validator daemon closed the connection without responding");
+			}
+			JsonNode response = mapper.readTree(line);
+			if (!"ok".equals(response.path("status").asText())) {
+				throw new IOException("Validator daemon responded with error: " + response.path("message").asText());
+			}
+			return response;
+		}
+	}
+
+	public int getValidateTimeoutMillis() {
+		return validateTimeoutMillis;
+	}
+
+	/**
+	 * @param validateTimeoutMillis the time to wait for a validation to complete, or 0 to wait indefinitely
+	 */
+	public void setValidateTimeoutMillis(int validateTimeoutMillis) {
+		this.validateTimeoutMillis = validateTimeoutMillis;
+	}
+
+	/**
+	 * What a client needs to know to make requests of a running daemon
+	 */
+	public static class State implements Serializable {
+
+		private int port;
+
+		private String token;
+
+		private String version;
+
+		private String pid;
+
+		/**
+		 * @return the state read from the given file, or null if the file does not exist or cannot be read
+		 */
+		public static State load(File file) {
+			if (file != null && file.exists()) {
+				try {
+					return new ObjectMapper().readValue(file, State.class);
+				}
+				catch (IOException e) {
+					// A partially written or corrupt state file is treated as no daemon running
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Writes this state to the given file, readable only by its owner where the file system supports it
+		 */
+		public void save(File file) throws IOException {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (!parent.exists()) {
+				parent.mkdirs();
+			}
+			File tmp = new File(parent, file.getName() + ".tmp");
+			Files.deleteIfExists(tmp.toPath());
+			Files.createFile(tmp.toPath());
+			try {
+				Files.setPosixFilePermissions(tmp.toPath(), PosixFilePermissions.fromString("rw-------"));
+			}
+			catch (UnsupportedOperationException e) {
+				tmp.setReadable(false, false);
+				tmp.setReadable(true, true);
+			}
+			new ObjectMapper().writeValue(tmp, this);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		public int getPort() {
+			return port;
+		}
+
+		public void setPort(int port) {
+			this.port = port;
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+		public void setToken(String token) {
+			this.token = token;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		public void setVersion(String version) {
+			this.version = version;
+		}
+
+		public String getPid() {
+			return pid;
+		}
+
+		public void setPid(String pid) {
+			this.pid = pid;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import static org.apache.commons.lang.StringUtils.isEmpty;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Starts, stops, or reports the status of the validator daemon used by validate-configurations when
+ * useValidatorDaemon is true, eg. mvn openmrs-packager:validator-daemon -DdaemonCommand=stop
+ */
+@Mojo(name = "validator-daemon", requiresProject = false)
+public class ValidatorDaemonMojo extends AbstractPackagerConfigMojo {
+
+	public static final String START = "start";
+	public static final String STOP = "stop";
+	public static final String STATUS = "status";
+
+	// One of start, stop, or status
+	@Parameter(property = "daemonCommand", defaultValue = STATUS)
+	private String command;
+
+	// The file in which a running validator daemon records how to connect to it, by default in ~/.openmrs-packager
+	@Parameter(property = "validatorDaemonStateFile")
+	private File validatorDaemonStateFile;
+
+	// JVM options for the validator daemon, eg. "-Xmx2g"
+	@Parameter(property = "validatorJvmArgs")
+	private String validatorJvmArgs;
+
+	// The number of minutes without a request after which the validator daemon stops
+	@Parameter(property = "validatorDaemonIdleMinutes", defaultValue = "60")
+	private int validatorDaemonIdleMinutes;
+
+	public void execute() throws MojoExecutionException {
+		File stateFile = getValidatorDaemonStateFile(validatorDaemonStateFile);
+		ValidatorDaemonClient client = new ValidatorDaemonClient(stateFile);
+		if (START.equals(command)) {
+			String classpath = getPluginClasspath();
+			List<String> jvmArgs = getValidatorDaemonJvmArgs(validatorJvmArgs);
+			String version = ValidatorDaemonClient.getVersion(getPluginDescriptor().getVersion(), classpath, jvmArgs);
+			client.start(classpath, jvmArgs, validatorDaemonIdleMinutes, version, getLog());
+		}
+		else if (STOP.equals(command)) {
+			if (client.stop()) {
+				getLog().info("Validator daemon stopped");
+			}
+			else {
+				getLog().info("No validator daemon is running");
+			}
+		}
+		else if (STATUS.equals(command)) {
+			JsonNode status = client.status();
+			if (status == null) {
+				getLog().info("No validator daemon is running");
+			}
+			else {
+				getLog().info("Validator daemon running with pid " + status.path("pid").asText() + ", state in " + stateFile);
+				getLog().info("Version: " + status.path("version").asText());
+				getLog().info("Started: " + new Date(status.path("startTime").asLong()));
+				getLog().info("Validations: " + status.path("validations").asInt() + (status.path("busy").asBoolean() ? ", validating now" : ""));
+				getLog().info("Idle timeout: " + status.path("idleTimeoutMillis").asLong() / 60000 + " minutes");
+			}
+		}
+		else {
+			throw new MojoExecutionException("Unknown daemonCommand: " + command + ", must be one of start, stop, or status");
+		}
+	}
+
+	/**
+	 * @return the given state file, or the default state file if none is given
+	 */
+	static File getValidatorDaemonStateFile(File stateFile) {
+		return (stateFile != null ? stateFile : ValidatorDaemonClient.getDefaultStateFile());
+	}
+
+	/**
+	 * @return the given JVM arguments as a list
+	 */
+	static List<String> getValidatorDaemonJvmArgs(String jvmArgs) {
+		return (isEmpty(jvmArgs) ? Collections.emptyList() : Arrays.asList(jvmArgs.trim().split("\\s+")));
+	}
+}
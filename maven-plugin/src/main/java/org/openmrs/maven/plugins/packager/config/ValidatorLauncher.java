@@ -0,0 +1,129 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.openmrs.module.initializer.validator.Validator;
+
+/**
+ * Runs the Initializer validator in its own JVM, so that several validations can run at once, each with its own
+ * OpenMRS context.  The first argument is the file to write the result to, and the rest are passed to the validator.
+ * The result is written as json, as validation failures may hold exceptions that cannot be serialized.
+ */
+public class ValidatorLauncher {
+
+	public static void main(String[] args) {
+		int status = 0;
+		try {
+			File resultFile = new File(args[0]);
+			Result result = Validator.getJUnitResult(Arrays.copyOfRange(args, 1, args.length));
+			writeResult(result, resultFile);
+		}
+		catch (Throwable t) {
+			t.printStackTrace();
+			status = 1;
+		}
+		// The validator may leave non-daemon threads running, which would otherwise keep this JVM alive
+		System.exit(status);
+	}
+
+	/**
+	 * Writes the counts and failures of the given result as json
+	 */
+	public static void writeResult(Result result, File resultFile) throws IOException {
+		new ObjectMapper().writeValue(resultFile, toJson(result));
+	}
+
+	/**
+	 * @return the counts and failures of the given result, in a form suitable for writing as json
+	 */
+	public static Map<String, Object> toJson(Result result) {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("runCount", result.getRunCount());
+		json.put("ignoreCount", result.getIgnoreCount());
+		json.put("runTime", result.getRunTime());
+		List<Map<String, Object>> failures = new ArrayList<>();
+		for (Failure failure : result.getFailures()) {
+			Map<String, Object> f = new LinkedHashMap<>();
+			f.put("description", failure.getDescription().getDisplayName());
+			f.put("message", failure.getMessage());
+			f.put("trace", failure.getTrace());
+			failures.add(f);
+		}
+		json.put("failures", failures);
+		return json;
+	}
+
+	/**
+	 * Reads a result written by {@link #writeResult(Result, File)}, and replays it into the given listener, such as
+	 * one created by a Result, so that the results of several validations can be merged into one
+	 * @return the run time of the validation in milliseconds
+	 */
+	public static long readResult(File resultFile, RunListener listener) throws Exception {
+		return readResult(new ObjectMapper().readTree(resultFile), listener);
+	}
+
+	/**
+	 * Replays a result read as json into the given listener
+	 * @return the run time of the validation in milliseconds
+	 */
+	public static long readResult(JsonNode json, RunListener listener) throws Exception {
+		for (JsonNode f : json.get("failures")) {
+			Description description = Description.createSuiteDescription(f.get("description").asText());
+			String message = (f.hasNonNull("message") ? f.get("message").asText() : null);
+			listener.testFailure(new Failure(description, new ValidationFailure(message, f.get("trace").asText())));
+		}
+		for (int i = 0; i < json.get("runCount").asInt(); i++) {
+			listener.testFinished(Description.EMPTY);
+		}
+		for (int i = 0; i < json.get("ignoreCount").asInt(); i++) {
+			listener.testIgnored(Description.EMPTY);
+		}
+		return json.get("runTime").asLong();
+	}
+
+	/**
+	 * A failure that occurred in another JVM, which prints the stack trace recorded there
+	 */
+	public static class ValidationFailure extends Exception {
+
+		private final String trace;
+
+		public ValidationFailure(String message, String trace) {
+			super(message, null, false, false);
+			this.trace = trace;
+		}
+
+		@Override
+		public void printStackTrace(PrintWriter s) {
+			s.print(trace);
+		}
+
+		@Override
+		public void printStackTrace(PrintStream s) {
+			s.print(trace);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A variant of the configuration, such as for a particular site, which differs only in the values of its constants.
+ * The constants of a variant are those of the project, overridden by those in each of its source files in order.
+ */
+public class Variant {
+
+	private String id;
+
+	private List<File> sourceFiles = new ArrayList<>();
+
+	public Variant() {}
+
+	public Variant(String id, List<File> sourceFiles) {
+		this.id = id;
+		this.sourceFiles = sourceFiles;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public List<File> getSourceFiles() {
+		return sourceFiles;
+	}
+
+	public void setSourceFiles(List<File> sourceFiles) {
+		this.sourceFiles = sourceFiles;
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+}
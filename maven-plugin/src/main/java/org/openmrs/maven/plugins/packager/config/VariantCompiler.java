@@ -0,0 +1,177 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Compiles variants of an already compiled configuration, where each variant differs only in the values of its
+ * constants.  The constants referenced by each source file are found once, and shared by all variants.  For each
+ * variant, only those files that reference a constant whose value differs from the compiled configuration are
+ * filtered again.  All other files are transferred from the compiled configuration, hard-linking where possible.
+ */
+public class VariantCompiler {
+
+	private final File compiledDir;
+	private final Map<String, File> sources;
+	private final ResourceFilter compiledFilter;
+	private final CompileManifest manifest;
+	private final Log log;
+
+	private Map<String, Set<String>> references;
+
+	/**
+	 * @param compiledDir the directory containing the compiled configuration
+	 * @param sources the source file for each path in the compiled configuration, keyed on the relative path
+	 * @param compiledFilter the filter with which the compiled configuration was filtered
+	 * @param manifest the manifest of the compiled configuration if it was compiled incrementally, or null
+	 */
+	public VariantCompiler(File compiledDir, Map<String, File> sources, ResourceFilter compiledFilter,
+						   CompileManifest manifest, Log log) {
+		this.compiledDir = compiledDir;
+		this.sources = sources;
+		this.compiledFilter = compiledFilter;
+		this.manifest = manifest;
+		this.log = log;
+	}
+
+	/**
+	 * Compiles a variant into the given output directory, replacing anything already there
+	 * @param filter the filter containing the constants of the variant
+	 * @return the result of compiling the variant
+	 */
+	public Result compile(File outputDir, ResourceFilter filter) throws IOException {
+		Set<String> differingConstants = getDifferingConstants(compiledFilter.getValues(), filter.getValues());
+		FileTransfer transfer = new FileTransfer(true);
+		Result result = new Result(differingConstants.size());
+		FileUtils.deleteDirectory(outputDir);
+		Files.createDirectories(outputDir.toPath());
+		for (Map.Entry<String, File> e : sources.entrySet()) {
+			String path = e.getKey();
+			File compiledFile = new File(compiledDir, path);
+			File outputFile = new File(outputDir, path);
+			if (compiledFile.isFile() && Collections.disjoint(getReferences(path), differingConstants)) {
+				transfer.transfer(compiledFile, outputFile);
+				result.numShared++;
+			}
+			else {
+				filter.copyFile(e.getValue(), outputFile);
+				result.numFiltered++;
+			}
+		}
+		log.debug("Compiled variant into " + outputDir + ": " + result);
+		return result;
+	}
+
+	/**
+	 * @return the keys of all constants that are in either of the given constants, but with a different value
+	 */
+	protected Set<String> getDifferingConstants(Properties compiledConstants, Properties variantConstants) {
+		Set<String> ret = new HashSet<>();
+		for (String key : compiledConstants.stringPropertyNames()) {
+			if (!Objects.equals(compiledConstants.getProperty(key), variantConstants.getProperty(key))) {
+				ret.add(key);
+			}
+		}
+		for (String key : variantConstants.stringPropertyNames()) {
+			if (!compiledConstants.containsKey(key)) {
+				ret.add(key);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the keys of the expressions found in the source of the given path, which is empty if it is not filtered
+	 */
+	protected synchronized Set<String> getReferences(String path) throws IOException {
+		if (references == null) {
+			references = findReferences();
+		}
+		Set<String> ret = references.get(path);
+		return ret == null ? Collections.emptySet() : ret;
+	}
+
+	/**
+	 * Finds the keys referenced by each source file, taking these from the manifest where the source is unchanged,
+	 * and otherwise by filtering the source without writing the result
+	 */
+	private Map<String, Set<String>> findReferences() throws IOException {
+		Map<String, Set<String>> ret = new HashMap<>();
+		int numRead = 0;
+		for (Map.Entry<String, File> e : sources.entrySet()) {
+			File source = e.getValue();
+			if (!compiledFilter.isFiltered(source.getName())) {
+				continue;
+			}
+			CompileManifest.Entry entry = (manifest == null ? null : manifest.getEntries().get(e.getKey()));
+			if (entry != null && entry.isSameSource(source)) {
+				ret.put(e.getKey(), entry.getReferences());
+			}
+			else {
+				Set<String> keys = new HashSet<>();
+				try (Reader in = new InputStreamReader(Files.newInputStream(source.toPath()), compiledFilter.getEncoding())) {
+					compiledFilter.filter(in, new NullWriter(), keys);
+				}
+				ret.put(e.getKey(), keys);
+				numRead++;
+			}
+		}
+		log.debug("Found referenced constants in " + ret.size() + " files, reading " + numRead + " of them");
+		return ret;
+	}
+
+	/**
+	 * Summarizes the compilation of a single variant
+	 */
+	public static class Result {
+
+		private final int numDifferingConstants;
+		private int numShared = 0;
+		private int numFiltered = 0;
+
+		public Result(int numDifferingConstants) {
+			this.numDifferingConstants = numDifferingConstants;
+		}
+
+		public int getNumDifferingConstants() {
+			return numDifferingConstants;
+		}
+
+		public int getNumShared() {
+			return numShared;
+		}
+
+		public int getNumFiltered() {
+			return numFiltered;
+		}
+
+		@Override
+		public String toString() {
+			return numDifferingConstants + " differing constants, " + numFiltered + " files filtered, "
+					+ numShared + " files shared";
+		}
+	}
+}
@@ -9,29 +9,16 @@
  */
 package org.openmrs.maven.plugins.packager.config;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -44,7 +31,10 @@ import org.apache.maven.plugins.annotations.Parameter;
 
 /**
  * The purpose of this Mojo is to watch the project for changes and execute
- * the specified goals if any files are changed
+ * the specified goals if any files are changed.
+ * In hot mode, changes to the configuration are instead compiled incrementally within the watching JVM, and applied
+ * directly to the compiled configuration and any SDK server configuration.  A full build is still executed when
+ * the project, its dependencies, or its constants change.
  */
 @Mojo(name = "watch", defaultPhase = LifecyclePhase.NONE)
 public class WatchConfigurationsMojo extends AbstractPackagerConfigMojo {
@@ -52,31 +42,89 @@ public class WatchConfigurationsMojo extends AbstractPackagerConfigMojo {
 	@Parameter(property = "dependencyFile", defaultValue = "dependencies.yml")
 	private File dependenciesFile;
 
+	// Configuration Directory
+	@Parameter(property = "sourceDir", defaultValue = "configuration")
+	private File sourceDir;
+
+	// If true, changes within the configuration directory are compiled in this JVM rather than by a new Maven build
+	@Parameter(property = "hot", defaultValue = "false")
+	private boolean hot;
+
+	// Patterns of files and directories to ignore when watching, in addition to hidden files and the build directory
+	@Parameter(property = "watchExcludes")
+	private List<String> watchExcludes;
+
+	// Patterns of files to watch.  If specified, changes to files that do not match any of these are ignored
+	@Parameter(property = "watchIncludes")
+	private List<String> watchIncludes;
+
+	// If true, files and directories that are ignored by any .gitignore file within the project are not watched
+	@Parameter(property = "useGitignore", defaultValue = "false")
+	private boolean useGitignore;
+
+	// The layered constants files of the project, as configured for generate-resource-filters.  A change to any of
+	// these requires a full build in hot mode.
+	@Parameter(property = "sourceFiles")
+	private List<File> sourceFiles;
+
+	// The variants of the project, as configured for generate-resource-filters.  A change to any of their constants
+	// files requires a full build in hot mode.
+	@Parameter
+	private List<Variant> variants;
+
+	// The directory of variant constants files, as configured for generate-resource-filters.  A change to anything
+	// within it requires a full build in hot mode.
+	@Parameter(property = "variantsSourceDir")
+	private File variantsSourceDir;
+
+	public static final String WATCHER_NATIVE = "native";
+	public static final String WATCHER_POLLING = "polling";
+
+	// Files in the project directory which require a full build when they change in hot mode
+	private static final String[] FULL_BUILD_FILES = { "pom.xml", "constants.yml", "constants.yaml", "constants.properties" };
+
+	private List<ConfigDependency> configDependencies = new ArrayList<>();
+
+	private IncrementalCompiler hotCompiler;
+
+	private ResourceFilter hotFilter;
+
+	private boolean hotBuildFailed = false;
+
 	/**
 	 * @throws MojoExecutionException if an error occurs
 	 */
 	public void execute() throws MojoExecutionException {
 		try {
 			// Get configuration options off of runtime arguments
-			// DelaySeconds is the amount of time to wait after the last changes is made before executing goal (default 5)
+			// DelaySeconds is the maximum amount of time to wait after the last change is made before executing goal (default 5)
+			// MinDelayMillis is the minimum amount of time to wait after the last change, for a single change (default 250)
+			// DelayMillisPerChange is the amount the wait is extended for each change made since the last build (default 10)
 			final int delaySeconds = Integer.parseInt(System.getProperty("delaySeconds", "5"));
+			final long minDelayMillis = Long.parseLong(System.getProperty("minDelayMillis", "250"));
+			final long delayMillisPerChange = Long.parseLong(System.getProperty("delayMillisPerChange", "10"));
 			final String goalToRun = System.getProperty("goal", "install");
+			// Watcher is either "native", to use file system notifications, or "polling", to scan for changes (default native)
+			// PollIntervalMillis is the amount of time between scans when polling (default 1000)
+			final String watcherType = System.getProperty("watcher", WATCHER_NATIVE);
+			final long pollIntervalMillis = Long.parseLong(System.getProperty("pollIntervalMillis", "1000"));
 
-			// Set up a watch service that will look for file changes
-			WatchService watchService = FileSystems.getDefault().newWatchService();
-			Map<WatchKey, Path> registeredKeys = new HashMap<>();
+			// Set up a watcher that will look for file changes, ignoring the build directory, hidden files, and any configured patterns
+			IgnoreRules ignoreRules = createIgnoreRules();
+			FileWatcher watcher = createWatcher(watcherType, pollIntervalMillis, ignoreRules);
 
-			// Register the source directory (recursively)
-			registerDirectoryToWatch(watchService, registeredKeys, getBaseDir());
+			// Watch the source directory (recursively)
+			watcher.watch(getBaseDir().toPath());
 
 			// Also watch any dependencies that change in the local repository
 			if (dependenciesFile != null && dependenciesFile.exists()) {
 				ObjectMapper m = getYamlMapper();
-				List<ConfigDependency> configDependencies = m.readValue(dependenciesFile, new TypeReference<List<ConfigDependency>>() {});
-				if (configDependencies != null) {
+				List<ConfigDependency> dependencies = m.readValue(dependenciesFile, new TypeReference<List<ConfigDependency>>() {});
+				if (dependencies != null) {
+					configDependencies = dependencies;
 					for (ConfigDependency d : configDependencies) {
 						File dependencyDir = d.getPathInRepository(getLocalRepository().getBasedir());
-						registerDirectoryToWatch(watchService, registeredKeys, dependencyDir);
+						watcher.watch(dependencyDir.toPath());
 					}
 				}
 			}
@@ -88,6 +136,16 @@ public class WatchConfigurationsMojo extends AbstractPackagerConfigMojo {
 			if (openmrsServerId != null) {
 				verifier.addCliOption("-DserverId="+openmrsServerId);
 			}
+			// Full builds use the same constants files and variants as given to the watcher
+			for (String property : new String[] { "sourceFiles", "variantsSourceDir" }) {
+				if (System.getProperty(property) != null) {
+					verifier.addCliOption("-D" + property + "=" + System.getProperty(property));
+				}
+			}
+			// In hot mode, full builds also compile incrementally, so that they share the manifest used for hot builds
+			if (hot) {
+				verifier.addCliOption("-Dincremental=true");
+			}
 
 			// Initializer log file for the watcher
 			String watcherLogFileName = "watcher.log";
@@ -95,68 +153,47 @@ public class WatchConfigurationsMojo extends AbstractPackagerConfigMojo {
 			FileUtils.touch(watcherLog);
 			verifier.setLogFileName("target/" + watcherLogFileName);
 
-			long lastMojoExecutionTime = System.currentTimeMillis();
-			long lastModificationTime = -1;
+			// In hot mode, a full build is needed up front to establish the compiled configuration
+			if (hot) {
+				getLog().info("Hot mode enabled, running initial build");
+				runFullBuild(verifier, goalToRun);
+			}
 
-			// Setup an infinite loop to continuously check for new change notifications
-			while (true) {
-				WatchKey key = null;
-				try {
-					key = watchService.poll(delaySeconds, TimeUnit.SECONDS);
-
-					// If key is null then no changes have been detected in the specified time to wait.
-					// If modifications have been made since the last time the Mojo was executed, then execute it here
-					if (key == null) {
-						if (lastModificationTime > lastMojoExecutionTime) {
-							Long startTime = timingInfoLog("Changes detected, running: " + goalToRun, null);
-							try {
-								verifier.executeGoal(goalToRun);
-								timingInfoLog("Successfully completed " + goalToRun, startTime);
-							}
-							catch (Exception e) {
-								getLog().warn("Error executing " + goalToRun + ". See " + verifier.getLogFileName() + " for details.");
-							}
-							lastMojoExecutionTime = System.currentTimeMillis();
-						}
+			// Builds run in the background once changes have been quiet for long enough
+			DebounceScheduler scheduler = new DebounceScheduler(new DebounceScheduler.Build() {
+				public void build(ChangeSet changes, BooleanSupplier cancelled) {
+					getLog().info("Changes detected: " + changes);
+					if (isHotBuild(changes)) {
+						runHotBuild(openmrsServerId, changes, cancelled);
 					}
-					// If key is not null, then changes have been detected, so active work is ongoing, do not copy over
 					else {
-						boolean isModificationMade = false;
-						Path path = registeredKeys.get(key);
-						for (WatchEvent<?> event : key.pollEvents()) {
-							if (event.context() instanceof Path) {
-								Path eventContextPath = (Path) event.context();
-								Path resolvedEventContextPath = path.resolve(eventContextPath);
-
-								getLog().debug(event.kind().name() + " " + event.context() + " in " + path);
-
-								// If a new directory is created, ensure we watch this to pick up file changes within
-								// Only mark this as a modification if there are non-ignored paths created
-								// This mainly serves to ensure that the build doesn't run when the target directory is initially created
-								if (Files.isDirectory(resolvedEventContextPath) && event.kind() == ENTRY_CREATE) {
-									boolean isRegistered = registerDirectoryToWatch(watchService, registeredKeys, resolvedEventContextPath.toFile());
-									isModificationMade = isModificationMade || isRegistered;
-								}
-								else {
-									isModificationMade = true;
-								}
-
-								if (isModificationMade) {
-									lastModificationTime = System.currentTimeMillis();
-								}
-							}
-						}
+						runFullBuild(verifier, goalToRun);
 					}
 				}
-				catch (InterruptedException x) {
-					return;
+				public boolean isCancellable(ChangeSet changes) {
+					return isHotBuild(changes);
 				}
-				finally {
-					if (key != null) {
-						key.reset();
+			}, minDelayMillis, delaySeconds * 1000L, delayMillisPerChange, getLog());
+
+			// Setup an infinite loop to continuously check for new change notifications
+			ChangeSet changes = new ChangeSet();
+			try {
+				while (true) {
+					if (watcher.poll(scheduler.getMillisUntilNextCheck(delaySeconds * 1000L), changes)) {
+						scheduler.changed(changes);
+						changes.clear();
 					}
+					// If no changes have been detected within the quiet period, and no build is running, build now
+					scheduler.dispatchIfDue();
 				}
 			}
+			catch (InterruptedException x) {
+				scheduler.shutdown();
+				return;
+			}
+			finally {
+				watcher.close();
+			}
 		}
 		catch (Exception e) {
 			throw new MojoExecutionException("An error occurred while watching configurations", e);
@@ -164,64 +201,179 @@ public class WatchConfigurationsMojo extends AbstractPackagerConfigMojo {
 	}
 
 	/**
-	 * Register the passed sourceDirectory to watch recursively.  All subdirectories will be registered to watch as well.
-	 * The build directory and any hidden files are excluded from the watch
-	 * This does not actually start the watcher, it only configures it with specific files or directories, and it can be
-	 * called as many times as needed with specific directories to add with exclusions.
-	 * @return true if any new directories are registered to watch
+	 * @return true if the given changes can be built in hot mode, without running a new Maven build
 	 */
-	public boolean registerDirectoryToWatch(final WatchService watchService, final Map<WatchKey, Path> registeredKeys, File sourceDirectory) {
-		int numInitialKeys = registeredKeys.size();
-		final Set<Path> pathsIgnored = new HashSet<>();
-		pathsIgnored.add(getBuildDir().toPath());
-		try {
-			Files.walkFileTree(sourceDirectory.toPath(), new SimpleFileVisitor<Path>() {
-				public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
-					if (isConfiguredToIgnore(path, pathsIgnored)) {
-						getLog().debug("Ignored new path: " + path);
-					}
-					else {
-						WatchKey watchKey = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
-						registeredKeys.put(watchKey, path);
-						getLog().info("Registered watcher with new path: " + path);
-					}
-					return FileVisitResult.CONTINUE;
-				}
-			});
+	protected boolean isHotBuild(ChangeSet changes) {
+		if (!hot || hotBuildFailed || changes.isOverflow()) {
+			return false;
 		}
-		catch (IOException e) {
-			throw new IllegalStateException("Error setting directories to watch", e);
+		for (Path path : changes.getPaths()) {
+			if (isFullBuildRequired(path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Executes the goal to run in a new Maven build.
+	 * In hot mode, any state held from previous builds is discarded so that it is reloaded from the new build
+	 */
+	protected void runFullBuild(Verifier verifier, String goalToRun) {
+		Long startTime = timingInfoLog("Changes detected, running: " + goalToRun, null);
+		try (BuildMetrics.Timer timer = getMetrics().time("fullBuild")) {
+			verifier.executeGoal(goalToRun);
+			timingInfoLog("Successfully completed " + goalToRun, startTime);
+		}
+		catch (Exception e) {
+			getLog().warn("Error executing " + goalToRun + ". See " + verifier.getLogFileName() + " for details.");
 		}
-		int numNewKeys = registeredKeys.size() - numInitialKeys;
-		return numNewKeys > 0;
+		hotCompiler = null;
+		hotFilter = null;
+		hotBuildFailed = false;
+		writeMetricsReport();
 	}
 
 	/**
-	 * Helper method to check if a path is one that should be ignored, or it or its parent has previously been marked as ignored
-	 * @return true if the passed path should be ignored, false otherwise
+	 * Compiles the changed paths within the configuration in this JVM, using the dependencies and constants that were
+	 * compiled by the last full build, and applies the resulting changes to the SDK server configuration if a server
+	 * is given.  Changes outside of the configuration directory do not affect the compiled configuration.
+	 * Compilation stops once cancelled returns true, leaving the changed paths to be compiled by the next build.
 	 */
-	protected boolean isConfiguredToIgnore(Path pathToCheck, Set<Path> pathsIgnored) {
-		// If the pathToCheck is already in the pathsIgnored list, return true to ignore
-		if (pathsIgnored.contains(pathToCheck)) {
+	protected void runHotBuild(String serverId, ChangeSet changeSet, BooleanSupplier cancelled) {
+		Path sourcePath = sourceDir.toPath().toAbsolutePath();
+		List<String> changedPaths = new ArrayList<>();
+		for (Path path : changeSet.getPaths()) {
+			Path changedPath = path.toAbsolutePath();
+			if (changedPath.startsWith(sourcePath) && !changedPath.equals(sourcePath)) {
+				changedPaths.add(sourcePath.relativize(changedPath).toString().replace(File.separatorChar, '/'));
+			}
+			else {
+				getLog().debug("Ignoring change outside of " + sourceDir + ": " + path);
+			}
+		}
+		if (changedPaths.isEmpty()) {
+			getLog().info("No changes to the configuration to compile");
+			return;
+		}
+		Long startTime = timingInfoLog("Compiling " + changedPaths.size() + " changed paths", null);
+		try (BuildMetrics.Timer timer = getMetrics().time("hotBuild")) {
+			if (hotCompiler == null) {
+				hotCompiler = new IncrementalCompiler(getCompiledConfigurationDir(), getCompileManifestFile(), getLog());
+				hotFilter = createResourceFilter(loadPropertiesFromFile(getCompiledConstantsFile()));
+			}
+			List<File> unpackDirs = new ArrayList<>();
+			for (ConfigDependency d : configDependencies) {
+				unpackDirs.add(new File(getPluginBuildDir(), "dependencies/" + d.toString("_")));
+			}
+			hotCompiler.setCancelled(cancelled);
+			IncrementalCompiler.Result result = hotCompiler.compile(changedPaths, unpackDirs, sourceDir, hotFilter);
+			if (serverId != null && result.hasChanges()) {
+				applyToServer(serverId, result);
+			}
+			timingInfoLog("Successfully compiled configuration (" + changeSet.getNumCoalesced() + " events coalesced)", startTime);
+		}
+		catch (InterruptedIOException e) {
+			getLog().info("Compilation of configuration cancelled");
+		}
+		catch (Exception e) {
+			getLog().warn("Error compiling configuration, a full build will run on the next change", e);
+			hotCompiler = null;
+			hotFilter = null;
+			hotBuildFailed = true;
+		}
+		writeMetricsReport();
+	}
+
+	/**
+	 * Synchronizes the added and updated files from the compiled configuration into the SDK server configuration,
+	 * and removes any files that were removed from the compiled configuration
+	 */
+	protected void applyToServer(String serverId, IncrementalCompiler.Result result) throws IOException {
+		File serverConfigurationDir = new File(new File(new File(System.getProperty("user.home"), "openmrs"), serverId), "configuration");
+		List<String> changedPaths = new ArrayList<>(result.getAdded());
+		changedPaths.addAll(result.getUpdated());
+		changedPaths.addAll(result.getRemoved());
+		DirectorySync.Result syncResult = new DirectorySync(hotFilter).sync(getCompiledConfigurationDir(), serverConfigurationDir, changedPaths);
+		getLog().info("Synchronized " + serverConfigurationDir + ": " + syncResult);
+	}
+
+	/**
+	 * @return true if a change to the given path cannot be compiled in hot mode, as it affects the project model,
+	 * its dependencies, its constants, or its variants.  Any change outside of the project directory is to a dependency.
+	 */
+	protected boolean isFullBuildRequired(Path path) {
+		Path baseDir = getBaseDir().toPath().toAbsolutePath();
+		Path changedPath = path.toAbsolutePath();
+		if (!changedPath.startsWith(baseDir)) {
 			return true;
 		}
-		// Ignore all hidden files and files whose parent directories are configured to ignore
-		if (isHiddenFile(pathToCheck) || pathsIgnored.contains(pathToCheck.getParent())) {
-			pathsIgnored.add(pathToCheck);
+		if (dependenciesFile != null && changedPath.equals(dependenciesFile.toPath().toAbsolutePath())) {
 			return true;
 		}
-		return false;
+		for (String fileName : FULL_BUILD_FILES) {
+			if (changedPath.equals(baseDir.resolve(fileName))) {
+				return true;
+			}
+		}
+		for (File constantsFile : getConstantsSourceFiles()) {
+			if (changedPath.equals(baseDir.resolve(constantsFile.toPath()))) {
+				return true;
+			}
+		}
+		return variantsSourceDir != null && changedPath.startsWith(baseDir.resolve(variantsSourceDir.toPath()));
 	}
 
 	/**
-	 * Return true if the path is considered hidden
+	 * @return the layered constants files of the project and of each of its configured variants
 	 */
-	private boolean isHiddenFile(Path path) {
-		if (path == null) {
-			return false;
+	protected List<File> getConstantsSourceFiles() {
+		List<File> ret = new ArrayList<>();
+		if (sourceFiles != null) {
+			ret.addAll(sourceFiles);
+		}
+		if (variants != null) {
+			for (Variant variant : variants) {
+				if (variant.getSourceFiles() != null) {
+					ret.addAll(variant.getSourceFiles());
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the rules which determine which paths are ignored when watching
+	 */
+	protected IgnoreRules createIgnoreRules() {
+		IgnoreRules ignoreRules = new IgnoreRules();
+		ignoreRules.addIgnoredPath(getBuildDir().toPath());
+		ignoreRules.setUseGitignore(useGitignore);
+		if (watchExcludes != null) {
+			for (String exclude : watchExcludes) {
+				ignoreRules.addExclude(exclude);
+			}
+		}
+		if (watchIncludes != null) {
+			for (String include : watchIncludes) {
+				ignoreRules.addInclude(include);
+			}
+		}
+		return ignoreRules;
+	}
+
+	/**
+	 * @return a new watcher of the given type, which applies the given ignore rules
+	 */
+	protected FileWatcher createWatcher(String watcherType, long pollIntervalMillis, IgnoreRules ignoreRules) throws IOException {
+		if (WATCHER_POLLING.equalsIgnoreCase(watcherType)) {
+			getLog().info("Watching for changes by polling every " + pollIntervalMillis + " ms");
+			return new PollingFileWatcher(pollIntervalMillis, ignoreRules, getLog());
+		}
+		if (!WATCHER_NATIVE.equalsIgnoreCase(watcherType)) {
+			throw new IllegalArgumentException("Unknown watcher '" + watcherType + "', expected " + WATCHER_NATIVE + " or " + WATCHER_POLLING);
 		}
-		File f = path.toFile();
-		return f.isHidden() || f.getName().startsWith(".");
+		return new NativeFileWatcher(ignoreRules, getLog());
 	}
 
 	/**
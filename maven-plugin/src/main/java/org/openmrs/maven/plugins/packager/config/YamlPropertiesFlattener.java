@@ -0,0 +1,152 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Flattens a yml (or json) document into properties, reading it as a stream of tokens rather than as a tree, so that
+ * the document is never held in memory as a tree.  Besides the properties themselves, only the enclosing objects and
+ * arrays are held, along with the names read so far of the members of each enclosing object, which are needed to
+ * detect a name given more than once, and the sorted names of the properties read from the document, so that the
+ * values of a repeated name can be found and replaced without scanning every property.  Property names use:
+ *   - dot notation (eg. object1.nestedObject2.property)
+ *   - array notation (eg. object1.nestedArray2[0].property)
+ * Only text values are added.  Any other values are skipped with a warning, and empty objects and arrays produce
+ * no properties.  As when reading a tree, only the first document is read, and where an object contains the same
+ * name more than once, the last value replaces any earlier value.
+ */
+public class YamlPropertiesFlattener {
+
+	private final Log log;
+
+	public YamlPropertiesFlattener(Log log) {
+		this.log = log;
+	}
+
+	/**
+	 * Adds the flattened contents of the given file to the given properties
+	 * @return the number of text values that were read
+	 */
+	public int flatten(JsonFactory factory, File file, Properties properties) throws IOException {
+		try (JsonParser parser = factory.createParser(file)) {
+			return flatten(parser, properties);
+		}
+	}
+
+	/**
+	 * Adds the flattened contents of the first document in the given parser to the given properties
+	 * @return the number of text values that were read
+	 */
+	public int flatten(JsonParser parser, Properties properties) throws IOException {
+		JsonToken token = parser.nextToken();
+		if (token == null) {
+			return 0;
+		}
+		StringBuilder path = new StringBuilder();
+		Deque<Container> containers = new ArrayDeque<>();
+		NavigableSet<String> added = new TreeSet<>();
+		int numAdded = 0;
+		while (true) {
+			// Handle the value at the current token, at the current path
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				containers.push(new Container(token == JsonToken.START_OBJECT, path.length()));
+			}
+			else if (token == JsonToken.VALUE_STRING) {
+				String name = path.toString();
+				properties.put(name, parser.getText());
+				added.add(name);
+				numAdded++;
+			}
+			else {
+				log.warn("Value is null");
+			}
+
+			// Move to the next value, updating the path and closing any containers that end along the way
+			token = null;
+			while (token == null && !containers.isEmpty()) {
+				Container container = containers.peek();
+				JsonToken next = parser.nextToken();
+				if (next == null) {
+					throw new IOException("Unexpected end of content at " + path);
+				}
+				path.setLength(container.pathLength);
+				if (next == JsonToken.END_OBJECT || next == JsonToken.END_ARRAY) {
+					containers.pop();
+				}
+				else if (container.object) {
+					String name = parser.getCurrentName();
+					if (container.pathLength > 0) {
+						path.append('.');
+					}
+					path.append(name);
+					if (!container.names.add(name)) {
+						removeValues(properties, added, path.toString());
+					}
+					token = parser.nextToken();
+				}
+				else {
+					path.append('[').append(container.nextIndex++).append(']');
+					token = next;
+				}
+			}
+			if (token == null) {
+				return numAdded;
+			}
+		}
+	}
+
+	/**
+	 * Removes the value at the given path, and any values within it, so that they can be replaced by a later value.
+	 * Only the values added from the document are removed, which are found among the names that begin with the path.
+	 */
+	private void removeValues(Properties properties, NavigableSet<String> added, String path) {
+		Iterator<String> names = added.subSet(path, true, path + Character.MAX_VALUE, true).iterator();
+		while (names.hasNext()) {
+			String name = names.next();
+			if (name.equals(path) || name.startsWith(path + ".") || name.startsWith(path + "[")) {
+				properties.remove(name);
+				names.remove();
+			}
+		}
+	}
+
+	/**
+	 * An object or array that is being read, the length of the path up to it, and for an object, the names of its
+	 * members read so far
+	 */
+	private static class Container {
+
+		private final boolean object;
+		private final int pathLength;
+		private final Set<String> names;
+		private int nextIndex = 0;
+
+		Container(boolean object, int pathLength) {
+			this.object = object;
+			this.pathLength = pathLength;
+			this.names = object ? new HashSet<>() : null;
+		}
+	}
+}
@@ -0,0 +1,588 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.maven.plugins.packager.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Writes the contents of a directory into a zip file, in place of the maven-assembly-plugin.
+ *   - entries are streamed directly into the zip file, with a configurable compression level
+ *   - files that are already compressed, such as zip, xlsx, png, and pdf files, are stored without recompression
+ *   - files may be deflated on several threads, while entries are still written in the order they are found.  Small
+ *     files are deflated into memory, while larger files are deflated into temporary files beside the zip file, so
+ *     that the memory used does not depend on the size of the files.
+ * As with the assembly plugin, the default excludes are applied, the directory itself is not included, and an
+ * entry is written for each directory that contains files.
+ * The output is reproducible, so that the same files always produce a byte-for-byte identical zip file.  Entries
+ * are sorted by path, every entry has the same last modified time, and permissions are normalized.
+ * If a manifest file is given, the zip file is written incrementally.  The compressed contents of any file with the
+ * same size, CRC, and checksum as in the previous zip file and its manifest are copied from the previous zip file
+ * rather than compressed again.  Files with the same size and last modified date as in the manifest are assumed to
+ * be unchanged without being read.  As deflating the same contents at the same level gives the same output, the
+ * result is identical to writing the zip file in full.
+ * An archiver writes one zip file at a time.
+ */
+public class ZipArchiver {
+
+	/**
+	 * The file extensions of formats which are already compressed, and so are stored rather than deflated
+	 */
+	public static final List<String> DEFAULT_STORED_FILE_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(
+			"zip", "jar", "gz", "tgz", "bz2", "xz", "7z", "xlsx", "xlsm", "docx", "pptx", "odt", "ods",
+			"png", "jpg", "jpeg", "gif", "webp", "pdf", "mp3", "mp4"
+	));
+
+	/**
+	 * The last modified time given to every entry if no other is configured, 1980-02-01T00:00:00Z
+	 */
+	public static final long DEFAULT_TIMESTAMP = 318211200000L;
+
+	/**
+	 * The size in bytes above which a file is deflated into a temporary file rather than into memory, if no other
+	 * is configured
+	 */
+	public static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+	// Permissions of files and directories, read and write for the owner and read for all others
+	private static final int FILE_MODE = 0100644;
+	private static final int DIRECTORY_MODE = 040755;
+
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	private long timestamp = DEFAULT_TIMESTAMP;
+
+	private int threads = 1;
+
+	private long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+	private Set<String> storedFileExtensions = new HashSet<>(DEFAULT_STORED_FILE_EXTENSIONS);
+
+	private File manifestFile;
+
+	// The previous zip file and its manifest, and the manifest being built, while writing incrementally
+	private ZipFile previousZip;
+	private PackageManifest previousManifest;
+	private PackageManifest manifest;
+
+	// The directory in which large files are deflated while writing
+	private File spillDir;
+
+	/**
+	 * Writes all files within the given directory into the given zip file, replacing any existing zip file
+	 * @return the number of files written, and the number reused from the previous zip file
+	 */
+	public Result archive(File dir, File zipFile) throws IOException {
+		List<String> paths = ResourceFilter.scanDirectory(dir);
+		Files.createDirectories(zipFile.getAbsoluteFile().getParentFile().toPath());
+		File outputFile = zipFile;
+		if (manifestFile != null) {
+			openPrevious(zipFile);
+			manifest = new PackageManifest(getSettings());
+			Files.deleteIfExists(manifestFile.toPath());
+			if (previousZip != null) {
+				outputFile = new File(zipFile.getPath() + ".tmp");
+			}
+		}
+		Files.deleteIfExists(outputFile.toPath());
+		spillDir = zipFile.getAbsoluteFile().getParentFile();
+		Result result = new Result();
+		ExecutorService executor = (threads > 1 ? Executors.newFixedThreadPool(threads) : null);
+		Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+		try {
+			try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(outputFile)) {
+				Set<String> directories = new HashSet<>();
+				for (String path : paths) {
+					File file = new File(dir, path);
+					if (executor == null) {
+						writeDirectories(out, path, directories);
+						write(out, compress(path, file), result);
+					}
+					else {
+						// Keep a bounded number of compressed entries in memory, writing them in the order submitted
+						pending.add(executor.submit(() -> compress(path, file)));
+						if (pending.size() > threads * 4) {
+							writeNext(out, pending, directories, result);
+						}
+					}
+				}
+				while (!pending.isEmpty()) {
+					writeNext(out, pending, directories, result);
+				}
+				out.finish();
+			}
+			if (previousZip != null) {
+				previousZip.close();
+				previousZip = null;
+				Files.move(outputFile.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			if (manifest != null) {
+				Files.createDirectories(manifestFile.getAbsoluteFile().getParentFile().toPath());
+				manifest.save(manifestFile);
+			}
+		}
+		finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				deleteSpilled(executor, pending);
+			}
+			if (previousZip != null) {
+				previousZip.close();
+				Files.deleteIfExists(outputFile.toPath());
+			}
+			previousZip = null;
+			previousManifest = null;
+			manifest = null;
+			spillDir = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Deletes the temporary files of any entries which were deflated but not written, as when writing fails.  This
+	 * waits for the entries being deflated to finish, while those not yet started never are.
+	 */
+	private void deleteSpilled(ExecutorService executor, Deque<Future<CompressedEntry>> pending) {
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Future<CompressedEntry> future : pending) {
+			if (future.isDone()) {
+				try {
+					CompressedEntry entry = future.get();
+					if (entry.spilled) {
+						Files.deleteIfExists(entry.file.toPath());
+					}
+				}
+				catch (Exception e) {
+					// Entries which failed to deflate have already deleted their temporary file
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens the given zip file to reuse its entries, if it was written with the same settings as its manifest records
+	 */
+	private void openPrevious(File zipFile) {
+		PackageManifest loaded = PackageManifest.load(manifestFile);
+		if (zipFile.isFile() && getSettings().equals(loaded.getSettings())) {
+			try {
+				previousZip = new ZipFile(zipFile);
+				previousManifest = loaded;
+			}
+			catch (IOException e) {
+				// An unreadable zip file simply results in a full packaging
+			}
+		}
+	}
+
+	/**
+	 * @return a description of the settings which affect the compressed contents of each entry
+	 */
+	protected String getSettings() {
+		return "level=" + compressionLevel + ";stored=" + new TreeSet<>(storedFileExtensions);
+	}
+
+	private void writeNext(ZipArchiveOutputStream out, Deque<Future<CompressedEntry>> pending, Set<String> directories,
+						   Result result) throws IOException {
+		try {
+			CompressedEntry entry = pending.remove().get();
+			writeDirectories(out, entry.entry.getName(), directories);
+			write(out, entry, result);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing entries");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Unable to compress entry", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes an entry for each directory containing the given path that has not already been written
+	 */
+	private void writeDirectories(ZipArchiveOutputStream out, String path, Set<String> directories) throws IOException {
+		int index = path.indexOf('/');
+		while (index > 0) {
+			String directory = path.substring(0, index + 1);
+			if (directories.add(directory)) {
+				ZipArchiveEntry entry = new ZipArchiveEntry(directory);
+				entry.setTime(getDosTime());
+				entry.setUnixMode(DIRECTORY_MODE);
+				out.putArchiveEntry(entry);
+				out.closeArchiveEntry();
+			}
+			index = path.indexOf('/', index + 1);
+		}
+	}
+
+	/**
+	 * Prepares the entry for the given file.  Its compressed contents are taken from the previous zip file if they
+	 * are unchanged, and otherwise the file is deflated into memory, or into a temporary file if it is larger than
+	 * the spill threshold, unless it is to be stored.
+	 */
+	protected CompressedEntry compress(String path, File file) throws IOException {
+		ZipArchiveEntry entry = new ZipArchiveEntry(path);
+		entry.setTime(getDosTime());
+		entry.setUnixMode(FILE_MODE);
+		entry.setSize(file.length());
+		entry.setMethod(isStored(path) ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+		PackageManifest.Entry manifestEntry = new PackageManifest.Entry(file);
+
+		ZipArchiveEntry previousEntry = findPrevious(path, file, entry.getMethod(), manifestEntry);
+		if (previousEntry != null) {
+			entry.setCompressedSize(previousEntry.getCompressedSize());
+			entry.setCrc(previousEntry.getCrc());
+			return new CompressedEntry(entry, manifestEntry, previousEntry);
+		}
+
+		CRC32 crc = new CRC32();
+		MessageDigest digest = (manifest != null ? Checksums.newDigest() : null);
+		byte[] buffer = new byte[8192];
+		ByteArrayOutputStream compressed = null;
+		File spillFile = null;
+		OutputStream deflate = null;
+		Deflater deflater = null;
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			if (entry.getMethod() == ZipArchiveEntry.DEFLATED) {
+				OutputStream target;
+				if (file.length() > spillThreshold) {
+					spillFile = File.createTempFile("zip-entry", ".deflated", spillDir);
+					target = new BufferedOutputStream(Files.newOutputStream(spillFile.toPath()));
+				}
+				else {
+					compressed = new ByteArrayOutputStream();
+					target = compressed;
+				}
+				deflater = new Deflater(compressionLevel, true);
+				deflate = new DeflaterOutputStream(target, deflater, 8192);
+			}
+			for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+				crc.update(buffer, 0, n);
+				if (digest != null) {
+					digest.update(buffer, 0, n);
+				}
+				if (deflate != null) {
+					deflate.write(buffer, 0, n);
+				}
+			}
+			if (deflate != null) {
+				deflate.close();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			if (deflate != null) {
+				try {
+					deflate.close();
+				}
+				catch (IOException closeFailure) {
+					e.addSuppressed(closeFailure);
+				}
+			}
+			if (spillFile != null) {
+				Files.deleteIfExists(spillFile.toPath());
+			}
+			throw e;
+		}
+		finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+		entry.setCrc(crc.getValue());
+		manifestEntry.setCrc(crc.getValue());
+		if (digest != null) {
+			manifestEntry.setChecksum(Checksums.toHex(digest.digest()));
+		}
+		if (spillFile != null) {
+			entry.setCompressedSize(spillFile.length());
+			return new CompressedEntry(entry, manifestEntry, spillFile, true);
+		}
+		if (compressed == null) {
+			entry.setCompressedSize(file.length());
+			return new CompressedEntry(entry, manifestEntry, file, false);
+		}
+		entry.setCompressedSize(compressed.size());
+		return new CompressedEntry(entry, manifestEntry, compressed.toByteArray());
+	}
+
+	/**
+	 * Finds the entry for the given file in the previous zip file, if its contents are unchanged and it was written
+	 * with the given method.  The given manifest entry is completed with the CRC and checksum of the file if found.
+	 * @return the previous entry, or null if the file must be compressed again
+	 */
+	private ZipArchiveEntry findPrevious(String path, File file, int method, PackageManifest.Entry manifestEntry) throws IOException {
+		if (previousZip == null) {
+			return null;
+		}
+		ZipArchiveEntry previousEntry = previousZip.getEntry(path);
+		PackageManifest.Entry previous = previousManifest.getEntries().get(path);
+		if (previousEntry == null || previous == null || previousEntry.getMethod() != method
+				|| previousEntry.getSize() != file.length() || previousEntry.getCrc() != previous.getCrc()) {
+			return null;
+		}
+		if (!previous.isSameFile(manifestEntry)) {
+			CRC32 crc = new CRC32();
+			MessageDigest digest = Checksums.newDigest();
+			byte[] buffer = new byte[8192];
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+					crc.update(buffer, 0, n);
+					digest.update(buffer, 0, n);
+				}
+			}
+			if (crc.getValue() != previous.getCrc() || !Checksums.toHex(digest.digest()).equals(previous.getChecksum())) {
+				return null;
+			}
+		}
+		manifestEntry.setCrc(previous.getCrc());
+		manifestEntry.setChecksum(previous.getChecksum());
+		return previousEntry;
+	}
+
+	/**
+	 * Writes the given entry into the zip file without compressing it further
+	 */
+	protected void write(ZipArchiveOutputStream out, CompressedEntry entry, Result result) throws IOException {
+		if (entry.data != null) {
+			out.addRawArchiveEntry(entry.entry, new ByteArrayInputStream(entry.data));
+		}
+		else if (entry.previousEntry != null) {
+			try (InputStream in = previousZip.getRawInputStream(entry.previousEntry)) {
+				out.addRawArchiveEntry(entry.entry, in);
+			}
+			result.numReused++;
+		}
+		else {
+			try (InputStream in = Files.newInputStream(entry.file.toPath())) {
+				out.addRawArchiveEntry(entry.entry, in);
+			}
+			finally {
+				if (entry.spilled) {
+					Files.deleteIfExists(entry.file.toPath());
+				}
+			}
+		}
+		if (manifest != null) {
+			manifest.getEntries().put(entry.entry.getName(), entry.manifestEntry);
+		}
+		result.numFiles++;
+	}
+
+	/**
+	 * Zip files store times in local time, so the timestamp is shifted by the time zone offset in order that the
+	 * zip file records the same time, and so is identical, whatever the time zone in which it is built.  The time is
+	 * also rounded down to the two second precision of a zip file.
+	 * @return the time to give to each entry
+	 */
+	protected long getDosTime() {
+		long time = timestamp - TimeZone.getDefault().getOffset(timestamp);
+		return time - Math.floorMod(time, 2000L);
+	}
+
+	/**
+	 * @return the timestamp represented by the given value, as either an ISO-8601 date and time with an offset,
+	 * such as 2021-01-01T00:00:00Z, or a number of seconds since the epoch, or null if no value is given.
+	 * This follows the format of the project.build.outputTimestamp property used by Maven for reproducible builds.
+	 */
+	public static Long parseTimestamp(String value) {
+		if (value == null || value.trim().length() < 2) {
+			return null;
+		}
+		value = value.trim();
+		if (value.chars().allMatch(Character::isDigit)) {
+			return Long.parseLong(value) * 1000;
+		}
+		try {
+			return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid timestamp '" + value + "', expected an ISO-8601 date and time "
+					+ "with an offset, such as 2021-01-01T00:00:00Z, or a number of seconds since the epoch", e);
+		}
+	}
+
+	/**
+	 * @return true if the file at the given path has an extension that indicates it is already compressed
+	 */
+	public boolean isStored(String path) {
+		return storedFileExtensions.contains(FilenameUtils.getExtension(path).toLowerCase(Locale.ENGLISH));
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * @param compressionLevel the level at which to deflate entries, from 0 to 9, or -1 for the default level
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if (compressionLevel < -1 || compressionLevel > 9) {
+			throw new IllegalArgumentException("Compression level must be between 0 and 9, or -1 for the default");
+		}
+		this.compressionLevel = compressionLevel;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @param timestamp the last modified time, in milliseconds since the epoch, to give to every entry
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public File getManifestFile() {
+		return manifestFile;
+	}
+
+	/**
+	 * @param manifestFile the file in which to record the state of the zip file, so that it can be written
+	 * incrementally, or null to always write the zip file in full
+	 */
+	public void setManifestFile(File manifestFile) {
+		this.manifestFile = manifestFile;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public long getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * @param spillThreshold the size in bytes above which a file is deflated into a temporary file rather than into
+	 * memory, which limits the memory used to deflate files on several threads
+	 */
+	public void setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	public Set<String> getStoredFileExtensions() {
+		return storedFileExtensions;
+	}
+
+	public void setStoredFileExtensions(Collection<String> storedFileExtensions) {
+		this.storedFileExtensions = new HashSet<>();
+		for (String extension : storedFileExtensions) {
+			this.storedFileExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+		}
+	}
+
+	/**
+	 * An entry whose contents are ready to be written, either deflated in memory, read from a file, or copied from
+	 * the previous zip file.  The file is either the source file, if it is stored, or a temporary file into which it
+	 * was deflated, which is deleted once written.
+	 */
+	protected static class CompressedEntry {
+
+		private final ZipArchiveEntry entry;
+		private final PackageManifest.Entry manifestEntry;
+		private final File file;
+		private final boolean spilled;
+		private final byte[] data;
+		private final ZipArchiveEntry previousEntry;
+
+		CompressedEntry(ZipArchiveEntry entry, PackageManifest.Entry manifestEntry, byte[] data) {
+			this(entry, manifestEntry, null, false, data, null);
+		}
+
+		CompressedEntry(ZipArchiveEntry entry, PackageManifest.Entry manifestEntry, File file, boolean spilled) {
+			this(entry, manifestEntry, file, spilled, null, null);
+		}
+
+		CompressedEntry(ZipArchiveEntry entry, PackageManifest.Entry manifestEntry, ZipArchiveEntry previousEntry) {
+			this(entry, manifestEntry, null, false, null, previousEntry);
+		}
+
+		private CompressedEntry(ZipArchiveEntry entry, PackageManifest.Entry manifestEntry, File file, boolean spilled,
+								byte[] data, ZipArchiveEntry previousEntry) {
+			this.entry = entry;
+			this.manifestEntry = manifestEntry;
+			this.file = file;
+			this.spilled = spilled;
+			this.data = data;
+			this.previousEntry = previousEntry;
+		}
+	}
+
+	/**
+	 * Summarizes the writing of a zip file
+	 */
+	public static class Result {
+
+		private int numFiles = 0;
+		private int numReused = 0;
+
+		public int getNumFiles() {
+			return numFiles;
+		}
+
+		public int getNumReused() {
+			return numReused;
+		}
+
+		@Override
+		public String toString() {
+			return numFiles + " files, " + numReused + " reused from the previous archive";
+		}
+	}
+}